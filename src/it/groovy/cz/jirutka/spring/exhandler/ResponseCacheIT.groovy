@@ -0,0 +1,62 @@
+/*
+ * Copyright 2016 Jakub Jirutka <jakub@jirutka.cz>.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package cz.jirutka.spring.exhandler
+
+import org.springframework.beans.factory.annotation.Autowired
+import org.springframework.test.context.ContextConfiguration
+import org.springframework.test.context.web.WebAppConfiguration
+import org.springframework.test.web.servlet.MockMvc
+import org.springframework.test.web.servlet.setup.MockMvcBuilders
+import org.springframework.web.context.WebApplicationContext
+import spock.lang.Specification
+
+import static org.springframework.http.MediaType.APPLICATION_JSON
+import static org.springframework.http.MediaType.APPLICATION_XML
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get
+
+@WebAppConfiguration
+@ContextConfiguration('/responseCacheContext.xml')
+class ResponseCacheIT extends Specification {
+
+    @Autowired WebApplicationContext context
+
+    MockMvc mockMvc
+
+    void setup() {
+        mockMvc = MockMvcBuilders.webAppContextSetup(context).build()
+    }
+
+
+    def 'Perform the same request repeatedly with a handler producing cacheable response'() {
+
+        when: 'perform the same request on resource that throws ZuulException twice'
+            def responses = (1..2).collect {
+                mockMvc.perform(get('/dana').accept(acceptType)).andReturn().response
+            }
+
+        then: 'both responses are the same'
+            responses.every { it.status == 404 }
+            responses.every { it.contentType == expectedType }
+            responses[0].contentAsString == responses[1].contentAsString
+            responses[1].contentAsString.contains("There's no Dana, only Zuul!")
+            responses[1].contentLength == responses[1].contentAsByteArray.length
+
+        where:
+            acceptType       | expectedType
+            APPLICATION_JSON | 'application/json;charset=UTF-8'
+            APPLICATION_XML  | 'application/xml'
+    }
+}
@@ -0,0 +1,101 @@
+/*
+ * Copyright 2016 Jakub Jirutka <jakub@jirutka.cz>.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package cz.jirutka.spring.exhandler;
+
+import cz.jirutka.spring.exhandler.handlers.RestExceptionHandler;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.core.MethodParameter;
+import org.springframework.http.ResponseEntity;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+import org.springframework.web.HttpMediaTypeNotAcceptableException;
+import org.springframework.web.bind.MissingServletRequestParameterException;
+import org.springframework.web.context.request.ServletWebRequest;
+import org.springframework.web.method.support.ModelAndViewContainer;
+import org.springframework.web.servlet.ModelAndView;
+
+import javax.servlet.http.HttpServletRequest;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares the upfront content negotiation check in {@link RestHandlerExceptionResolver} with
+ * the former approach that relied on catching {@link HttpMediaTypeNotAcceptableException} to
+ * fall back to the default content type. The interesting case is <tt>Accept: text/html</tt>,
+ * which is typically sent by browsers and bots.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ContentNegotiationFallbackBenchmark {
+
+    @Param({"application/json", "text/html"})
+    public String accept;
+
+    private RestHandlerExceptionResolver resolver;
+    private MethodParameter returnType;
+    private MockHttpServletRequest request;
+    private Exception exception;
+
+
+    @Setup
+    public void setup() throws NoSuchMethodException {
+        resolver = RestHandlerExceptionResolver.builder().build();
+        returnType = new MethodParameter(RestExceptionHandler.class.getMethod(
+                "handleException", Exception.class, HttpServletRequest.class), -1);
+
+        request = new MockHttpServletRequest("GET", "/foo");
+        request.addHeader("Accept", accept);
+
+        exception = new MissingServletRequestParameterException("id", "long");
+    }
+
+
+    @Benchmark
+    public ModelAndView upfrontCheck() {
+        return resolver.doResolveException(request, new MockHttpServletResponse(), null, exception);
+    }
+
+    /**
+     * Reproduces the former exception-driven fallback.
+     */
+    @Benchmark
+    public MockHttpServletResponse exceptionDrivenFallback() throws Exception {
+        MockHttpServletResponse response = new MockHttpServletResponse();
+        ServletWebRequest webRequest = new ServletWebRequest(request, response);
+        ResponseEntity<?> entity = resolver.resolveExceptionHandler(exception.getClass())
+                .handleException(exception, request);
+        try {
+            resolver.responseProcessor.handleReturnValue(entity, returnType, new ModelAndViewContainer(), webRequest);
+
+        } catch (HttpMediaTypeNotAcceptableException ex) {
+            resolver.fallbackResponseProcessor.handleReturnValue(entity, returnType, new ModelAndViewContainer(), webRequest);
+        }
+        return response;
+    }
+}
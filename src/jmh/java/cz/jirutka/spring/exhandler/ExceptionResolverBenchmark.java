@@ -0,0 +1,101 @@
+/*
+ * Copyright 2016 Jakub Jirutka <jakub@jirutka.cz>.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package cz.jirutka.spring.exhandler;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+import org.springframework.http.HttpHeaders;
+import org.springframework.web.bind.MissingServletRequestParameterException;
+import org.springframework.web.servlet.NoHandlerFoundException;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures {@link RestHandlerExceptionResolver#doResolveException doResolveException} end to end,
+ * i.e. handler lookup, building the error message and its serialization into the response.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ExceptionResolverBenchmark {
+
+    @Param({"application/json", "application/xml"})
+    public String accept;
+
+    @Param({"false", "true"})
+    public boolean useResponseEntityWriter;
+
+    @Param({"0", "16"})
+    public int responseCacheLimit;
+
+    private RestHandlerExceptionResolver resolver;
+    private MockHttpServletRequest request;
+    private Exception expressionException;
+    private Exception literalException;
+
+
+    @Setup
+    public void setup() {
+        resolver = RestHandlerExceptionResolver.builder()
+                .useResponseEntityWriter(useResponseEntityWriter)
+                .responseCacheLimit(responseCacheLimit)
+                .build();
+
+        request = new MockHttpServletRequest("GET", "/foo");
+        request.addHeader("Accept", accept);
+
+        expressionException = new MissingServletRequestParameterException("id", "long");
+        literalException = new NoHandlerFoundException("GET", "/foo", new HttpHeaders());
+    }
+
+
+    /**
+     * Exception with message templates that contain SpEL expressions.
+     */
+    @Benchmark
+    public MockHttpServletResponse resolveWithExpressions() {
+        return resolve(expressionException);
+    }
+
+    /**
+     * Exception with literal message templates, i.e. with a cacheable response.
+     */
+    @Benchmark
+    public MockHttpServletResponse resolveWithLiterals() {
+        return resolve(literalException);
+    }
+
+    private MockHttpServletResponse resolve(Exception exception) {
+        MockHttpServletResponse response = new MockHttpServletResponse();
+        resolver.doResolveException(request, response, null, exception);
+
+        return response;
+    }
+}
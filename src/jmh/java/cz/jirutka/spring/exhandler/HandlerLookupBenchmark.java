@@ -0,0 +1,83 @@
+/*
+ * Copyright 2016 Jakub Jirutka <jakub@jirutka.cz>.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package cz.jirutka.spring.exhandler;
+
+import cz.jirutka.spring.exhandler.handlers.RestExceptionHandler;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.http.HttpStatus;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures {@link RestHandlerExceptionResolver#resolveExceptionHandler resolveExceptionHandler}
+ * for an exception with a directly registered handler and for an exception that is deep
+ * in the class hierarchy below the closest registered handler.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class HandlerLookupBenchmark {
+
+    private RestHandlerExceptionResolver resolver;
+
+
+    @Setup
+    public void setup() {
+        resolver = RestHandlerExceptionResolver.builder()
+                .addErrorMessageHandler(ShallowException.class, HttpStatus.BAD_REQUEST)
+                .build();
+    }
+
+
+    @Benchmark
+    public RestExceptionHandler shallow() {
+        return resolver.resolveExceptionHandler(ShallowException.class);
+    }
+
+    @Benchmark
+    public RestExceptionHandler deep() {
+        return resolver.resolveExceptionHandler(DeepException.class);
+    }
+
+    @Benchmark
+    public RestExceptionHandler notFound() {
+        return resolver.resolveExceptionHandler(UnhandledException.class);
+    }
+
+
+    //////// Inner classes ////////
+
+    static class ShallowException extends RuntimeException { }
+    static class Level1Exception extends ShallowException { }
+    static class Level2Exception extends Level1Exception { }
+    static class Level3Exception extends Level2Exception { }
+    static class Level4Exception extends Level3Exception { }
+    static class DeepException extends Level4Exception { }
+
+    static class UnhandledException extends IllegalStateException { }
+}
@@ -0,0 +1,108 @@
+/*
+ * Copyright 2016 Jakub Jirutka <jakub@jirutka.cz>.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package cz.jirutka.spring.exhandler;
+
+import cz.jirutka.spring.exhandler.messages.ErrorMessage;
+import cz.jirutka.spring.exhandler.support.ProblemJsonHttpMessageConverter;
+import cz.jirutka.spring.exhandler.support.ProblemXmlHttpMessageConverter;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.http.converter.json.MappingJackson2HttpMessageConverter;
+import org.springframework.http.converter.xml.Jaxb2RootElementHttpMessageConverter;
+import org.springframework.mock.http.MockHttpOutputMessage;
+
+import java.io.IOException;
+import java.net.URI;
+import java.util.concurrent.TimeUnit;
+
+import static org.springframework.http.MediaType.APPLICATION_JSON;
+import static org.springframework.http.MediaType.APPLICATION_XML;
+
+/**
+ * Compares serialization of {@link ErrorMessage} into JSON and XML using the message converters
+ * that are registered by default.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class SerializationBenchmark {
+
+    private MappingJackson2HttpMessageConverter jsonConverter;
+    private ProblemJsonHttpMessageConverter problemJsonConverter;
+    private Jaxb2RootElementHttpMessageConverter xmlConverter;
+    private ProblemXmlHttpMessageConverter problemXmlConverter;
+    private ErrorMessage message;
+
+
+    @Setup
+    public void setup() {
+        jsonConverter = new MappingJackson2HttpMessageConverter();
+        problemJsonConverter = new ProblemJsonHttpMessageConverter();
+        xmlConverter = new Jaxb2RootElementHttpMessageConverter();
+        problemXmlConverter = new ProblemXmlHttpMessageConverter();
+
+        message = new ErrorMessage();
+        message.setType(URI.create("http://httpstatus.es/404"));
+        message.setTitle("Not Found");
+        message.setStatus(404);
+        message.setDetail("Unable to determine a corresponding handler for your request.");
+        message.setInstance(URI.create("/foo/123"));
+    }
+
+
+    @Benchmark
+    public MockHttpOutputMessage json() throws IOException {
+        MockHttpOutputMessage output = new MockHttpOutputMessage();
+        jsonConverter.write(message, APPLICATION_JSON, output);
+
+        return output;
+    }
+
+    @Benchmark
+    public MockHttpOutputMessage problemJson() throws IOException {
+        MockHttpOutputMessage output = new MockHttpOutputMessage();
+        problemJsonConverter.write(message, APPLICATION_JSON, output);
+
+        return output;
+    }
+
+    @Benchmark
+    public MockHttpOutputMessage xml() throws IOException {
+        MockHttpOutputMessage output = new MockHttpOutputMessage();
+        xmlConverter.write(message, APPLICATION_XML, output);
+
+        return output;
+    }
+
+    @Benchmark
+    public MockHttpOutputMessage problemXml() throws IOException {
+        MockHttpOutputMessage output = new MockHttpOutputMessage();
+        problemXmlConverter.write(message, APPLICATION_XML, output);
+
+        return output;
+    }
+}
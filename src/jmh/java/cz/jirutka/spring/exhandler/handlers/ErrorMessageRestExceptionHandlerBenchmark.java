@@ -0,0 +1,91 @@
+/*
+ * Copyright 2016 Jakub Jirutka <jakub@jirutka.cz>.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package cz.jirutka.spring.exhandler.handlers;
+
+import cz.jirutka.spring.exhandler.messages.ErrorMessage;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.context.support.StaticMessageSource;
+import org.springframework.mock.web.MockHttpServletRequest;
+
+import java.util.Locale;
+import java.util.concurrent.TimeUnit;
+
+import static org.springframework.http.HttpStatus.BAD_REQUEST;
+
+/**
+ * Measures {@link ErrorMessageRestExceptionHandler#createBody createBody} with message templates
+ * that contain SpEL expressions and with literal templates.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ErrorMessageRestExceptionHandlerBenchmark {
+
+    private ErrorMessageRestExceptionHandler<IllegalArgumentException> expressionHandler;
+    private ErrorMessageRestExceptionHandler<IllegalStateException> literalHandler;
+
+    private MockHttpServletRequest request;
+    private IllegalArgumentException illegalArgument;
+    private IllegalStateException illegalState;
+
+
+    @Setup
+    public void setup() {
+        StaticMessageSource messages = new StaticMessageSource();
+        String prefix = IllegalArgumentException.class.getName();
+        messages.addMessage(prefix + ".type", Locale.getDefault(), "http://example.org/errors/#{ex.class.simpleName}");
+        messages.addMessage(prefix + ".title", Locale.getDefault(), "Illegal Argument");
+        messages.addMessage(prefix + ".detail", Locale.getDefault(), "#{ex.message} in #{req.requestURI}");
+
+        prefix = IllegalStateException.class.getName();
+        messages.addMessage(prefix + ".type", Locale.getDefault(), "http://example.org/errors/illegal-state");
+        messages.addMessage(prefix + ".title", Locale.getDefault(), "Illegal State");
+        messages.addMessage(prefix + ".detail", Locale.getDefault(), "Something went wrong.");
+
+        expressionHandler = new ErrorMessageRestExceptionHandler<>(IllegalArgumentException.class, BAD_REQUEST);
+        expressionHandler.setMessageSource(messages);
+
+        literalHandler = new ErrorMessageRestExceptionHandler<>(IllegalStateException.class, BAD_REQUEST);
+        literalHandler.setMessageSource(messages);
+
+        request = new MockHttpServletRequest("GET", "/foo");
+        illegalArgument = new IllegalArgumentException("Invalid id");
+        illegalState = new IllegalStateException();
+    }
+
+
+    @Benchmark
+    public ErrorMessage createBodyWithExpressions() {
+        return expressionHandler.createBody(illegalArgument, request);
+    }
+
+    @Benchmark
+    public ErrorMessage createBodyWithLiterals() {
+        return literalHandler.createBody(illegalState, request);
+    }
+}
@@ -0,0 +1,68 @@
+/*
+ * Copyright 2016 Jakub Jirutka <jakub@jirutka.cz>.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package cz.jirutka.spring.exhandler.interpolators;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures {@link SpelMessageInterpolator#interpolate interpolate} with a template containing
+ * expressions and with a literal template.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class SpelMessageInterpolatorBenchmark {
+
+    private SpelMessageInterpolator interpolator;
+    private Map<String, Object> variables;
+
+
+    @Setup
+    public void setup() {
+        interpolator = new SpelMessageInterpolator();
+
+        variables = new HashMap<>(2);
+        variables.put("ex", new IllegalArgumentException("Invalid id"));
+        variables.put("name", "foo");
+    }
+
+
+    @Benchmark
+    public String interpolateExpressions() {
+        return interpolator.interpolate("Parameter #{name} is invalid: #{ex.message}.", variables);
+    }
+
+    @Benchmark
+    public String interpolateLiteral() {
+        return interpolator.interpolate("Parameter is invalid.", variables);
+    }
+}
@@ -0,0 +1,138 @@
+/*
+ * Copyright 2016 Jakub Jirutka <jakub@jirutka.cz>.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package cz.jirutka.spring.exhandler;
+
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.server.ServerHttpResponse;
+import org.springframework.util.LinkedCaseInsensitiveMap;
+
+import javax.servlet.http.HttpServletResponse;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import static java.util.Collections.unmodifiableList;
+import static java.util.Collections.unmodifiableMap;
+
+/**
+ * An immutable snapshot of a serialized HTTP response (status, headers and body) that can be
+ * written into any number of {@link HttpServletResponse HttpServletResponses}.
+ *
+ * @see Recorder
+ */
+final class BufferedResponse {
+
+    private static final String
+            CONTENT_TYPE = "Content-Type",
+            CONTENT_LENGTH = "Content-Length";
+
+    private final int status;
+    private final Map<String, List<String>> headers;
+    private final String contentType;
+    private final byte[] body;
+
+
+    private BufferedResponse(Recorder recorder) {
+        Map<String, List<String>> headers = new LinkedCaseInsensitiveMap<>(recorder.headers.size());
+
+        for (Map.Entry<String, List<String>> entry : recorder.headers.entrySet()) {
+            // these are written using the dedicated methods of the servlet response
+            if (!CONTENT_TYPE.equalsIgnoreCase(entry.getKey())
+                    && !CONTENT_LENGTH.equalsIgnoreCase(entry.getKey())) {
+                headers.put(entry.getKey(), unmodifiableList(new ArrayList<>(entry.getValue())));
+            }
+        }
+        MediaType contentType = recorder.headers.getContentType();
+
+        this.status = recorder.status.value();
+        this.headers = unmodifiableMap(headers);
+        this.contentType = contentType != null ? contentType.toString() : null;
+        this.body = recorder.body.toByteArray();
+    }
+
+
+    public int getStatus() {
+        return status;
+    }
+
+    /**
+     * Writes the status, headers and body into the given response and flushes it.
+     */
+    public void writeTo(HttpServletResponse response) throws IOException {
+
+        response.setStatus(status);
+
+        for (Map.Entry<String, List<String>> entry : headers.entrySet()) {
+            for (String value : entry.getValue()) {
+                response.addHeader(entry.getKey(), value);
+            }
+        }
+        if (contentType != null) {
+            response.setContentType(contentType);
+        }
+        response.setContentLength(body.length);
+
+        if (body.length > 0) {
+            response.getOutputStream().write(body);
+        }
+        response.flushBuffer();
+    }
+
+
+    //////// Inner classes ////////
+
+    /**
+     * An output message that records the status, headers and body written into it. Unlike a
+     * servlet response wrapper, it doesn't depend on any particular version of the Servlet API.
+     */
+    static final class Recorder implements ServerHttpResponse {
+
+        private final HttpHeaders headers = new HttpHeaders();
+        private final ByteArrayOutputStream body = new ByteArrayOutputStream(256);
+
+        private HttpStatus status = HttpStatus.OK;
+
+
+        public BufferedResponse toBufferedResponse() {
+            return new BufferedResponse(this);
+        }
+
+        public void setStatusCode(HttpStatus status) {
+            this.status = status;
+        }
+
+        public HttpHeaders getHeaders() {
+            return headers;
+        }
+
+        public OutputStream getBody() {
+            return body;
+        }
+
+        public void flush() {
+            // nothing to flush
+        }
+
+        public void close() {
+            // nothing to close
+        }
+    }
+}
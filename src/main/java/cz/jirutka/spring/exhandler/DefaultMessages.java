@@ -0,0 +1,108 @@
+/*
+ * Copyright 2016 Jakub Jirutka <jakub@jirutka.cz>.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package cz.jirutka.spring.exhandler;
+
+import cz.jirutka.spring.exhandler.support.PreloadedMessageSource;
+import org.springframework.context.MessageSource;
+
+import java.nio.charset.Charset;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * The default messages, i.e. the content of the {@code messages.properties} file compiled into
+ * a class, so the default message source doesn't have to parse the file. It must be kept in sync
+ * with the file; this is verified by a test. The localized files
+ * ({@code messages_*.properties}) are still loaded from the classpath, but lazily, on the first
+ * lookup of a message in their locale.
+ */
+final class DefaultMessages {
+
+    private DefaultMessages() {}
+
+
+    /**
+     * Creates a {@link MessageSource} with the default messages and the localized messages
+     * found on the classpath under the
+     * {@link RestHandlerExceptionResolverBuilder#DEFAULT_MESSAGES_BASENAME default basename}.
+     * No resources are loaded until a message is looked up in a non-root locale.
+     */
+    static MessageSource createMessageSource() {
+        return new PreloadedMessageSource(RestHandlerExceptionResolverBuilder.DEFAULT_MESSAGES_BASENAME,
+                Charset.forName("UTF-8"), getMessages());
+    }
+
+    /**
+     * Returns a new map of the default messages mapped by the code.
+     */
+    static Map<String, String> getMessages() {
+
+        Map<String, String> map = new HashMap<>(32);
+
+        map.put("org.springframework.web.bind.MissingServletRequestParameterException.title",
+                "Missing Query Parameter");
+        map.put("org.springframework.web.bind.MissingServletRequestParameterException.detail",
+                "This resource requires the query parameter #{ex.parameterName} to be set.");
+
+        map.put("org.springframework.web.multipart.support.MissingServletRequestPartException.title",
+                "Multipart Malformed");
+
+        map.put("org.springframework.web.servlet.NoHandlerFoundException.type",
+                "http://httpstatus.es/404");
+        map.put("org.springframework.web.servlet.NoHandlerFoundException.title",
+                "Not Found");
+        map.put("org.springframework.web.servlet.NoHandlerFoundException.detail",
+                "Unable to determine a corresponding handler for your request.");
+
+        map.put("org.springframework.web.HttpRequestMethodNotSupportedException.type",
+                "http://httpstatus.es/405");
+        map.put("org.springframework.web.HttpRequestMethodNotSupportedException.title",
+                "Method Not Allowed");
+        map.put("org.springframework.web.HttpRequestMethodNotSupportedException.detail",
+                "This resource supports only #{ex.supportedMethods}, but you've sent #{ex.method}.");
+
+        map.put("org.springframework.web.HttpMediaTypeNotAcceptableException.type",
+                "http://httpstatus.es/406");
+        map.put("org.springframework.web.HttpMediaTypeNotAcceptableException.title",
+                "Not Acceptable");
+        map.put("org.springframework.web.HttpMediaTypeNotAcceptableException.detail",
+                "This resource provides only #{ex.supportedMediaTypes}, but you've sent request with Accept #{req.getHeader('Accept')}.");
+
+        map.put("org.springframework.web.HttpMediaTypeNotSupportedException.type",
+                "http://httpstatus.es/415");
+        map.put("org.springframework.web.HttpMediaTypeNotSupportedException.title",
+                "Unsupported Media Type");
+        map.put("org.springframework.web.HttpMediaTypeNotSupportedException.detail",
+                "This resource supports only #{ex.supportedMediaTypes}, but you've sent request with Content-Type #{ex.contentType}.");
+
+        map.put("org.springframework.web.bind.MethodArgumentNotValidException.title",
+                "Validation Failed");
+        map.put("org.springframework.web.bind.MethodArgumentNotValidException.detail",
+                "The content you've sent contains #{ex.bindingResult.errorCount} validation errors.");
+
+        map.put("javax.validation.ConstraintViolationException.title",
+                "Validation Failed");
+        map.put("javax.validation.ConstraintViolationException.detail",
+                "The content you've sent contains #{ex.constraintViolations.size()} validation errors.");
+
+        map.put("org.springframework.http.converter.HttpMessageNotReadableException.title",
+                "Conversion Failed");
+        map.put("org.springframework.http.converter.HttpMessageNotReadableException.detail",
+                "The content you've sent is probably malformed.");
+
+        return map;
+    }
+}
@@ -0,0 +1,391 @@
+/*
+ * Copyright 2016 Jakub Jirutka <jakub@jirutka.cz>.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package cz.jirutka.spring.exhandler;
+
+import cz.jirutka.spring.exhandler.handlers.RestExceptionHandler;
+import org.springframework.http.ResponseEntity;
+import org.springframework.util.Assert;
+import org.springframework.util.ConcurrentReferenceHashMap;
+
+import javax.servlet.http.HttpServletRequest;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import static java.util.Collections.unmodifiableMap;
+
+/**
+ * An immutable registry of {@link RestExceptionHandler RestExceptionHandlers} mapped by the
+ * exception type they handle.
+ *
+ * <p>The handler for a registered exception type is found by a single lookup. The handler for
+ * a subtype is resolved on the first request and then cached in this registry, including
+ * a negative result. Since the registry never changes, the cache never has to be invalidated;
+ * the "mutators" {@link #withHandler(Class, RestExceptionHandler) withHandler()} and
+ * {@link #withoutHandler(Class) withoutHandler()} return a new registry instead
+ * (copy-on-write).</p>
+ *
+ * <p>The handlers may be registered also for interfaces (e.g. marker interfaces implemented by
+ * exceptions). The handler for an exception type is resolved by walking its superclasses,
+ * starting from the type itself; on each level, the handler registered for the class wins over
+ * the handlers registered for the interfaces it implements (in the declaration order, then
+ * their superinterfaces).</p>
+ *
+ * <p>The registry can also resolve which exception of the cause chain should be handled, see
+ * {@link #resolveHandledException(Exception)}.</p>
+ *
+ * <p>The default handlers registered by {@link RestHandlerExceptionResolverBuilder} are created
+ * lazily, on the first resolution of an exception type they handle (or by {@link #asMap()}).</p>
+ */
+public final class ExceptionHandlerRegistry {
+
+    /**
+     * Marker stored in the {@link #resolvedHandlers} cache for exception types that have no
+     * handler, so that the negative result is cached as well.
+     */
+    private static final RestExceptionHandler NO_HANDLER_FOUND = new RestExceptionHandler() {
+        public ResponseEntity handleException(Exception exception, HttpServletRequest request) {
+            throw new UnsupportedOperationException();
+        }
+    };
+
+    /**
+     * The maximum number of causes to consider in {@link #resolveHandledException(Exception)}.
+     */
+    static final int MAX_CAUSE_DEPTH = 16;
+
+    private static final Integer NO_CAUSE_FOUND = -1;
+
+    private static final ExceptionHandlerRegistry EMPTY =
+            new ExceptionHandlerRegistry(Collections.<Class<? extends Exception>, RestExceptionHandler>emptyMap());
+
+    private final Map<Class<? extends Exception>, RestExceptionHandler> handlers;
+
+    /**
+     * Cache of handlers resolved for the concrete exception types, pre-filled with the registered
+     * ones. The entries are held by soft references, so they don't prevent unloading of the
+     * exception classes (e.g. on redeploy).
+     */
+    private final Map<Class<? extends Exception>, RestExceptionHandler> resolvedHandlers;
+
+    /**
+     * Cache of the exceptions to handle resolved by {@link #resolveHandledException(Exception)},
+     * i.e. the index in the cause chain, stored in a tree of the exception class and the classes
+     * of its causes, see {@link CauseNode}.
+     */
+    private final CauseNode resolvedCauses = new CauseNode(16);
+
+    private final boolean hasInterfaceHandlers;
+
+    private final boolean hasLazyHandlers;
+
+    /** The registered handlers with the lazy ones created, see {@link #asMap()}. */
+    private volatile Map<Class<? extends Exception>, RestExceptionHandler> createdHandlers;
+
+
+    /**
+     * Returns an empty registry.
+     */
+    public static ExceptionHandlerRegistry empty() {
+        return EMPTY;
+    }
+
+    /**
+     * @param handlers The handlers mapped by the exception type; the map is copied, so any later
+     *                 modification of it does not affect this registry.
+     */
+    @SuppressWarnings("unchecked")
+    public ExceptionHandlerRegistry(Map<Class<? extends Exception>, ? extends RestExceptionHandler> handlers) {
+        Assert.notNull(handlers, "handlers must not be null");
+
+        this.handlers = unmodifiableMap(new LinkedHashMap<>((Map) handlers));
+        this.resolvedHandlers = new ConcurrentReferenceHashMap<>(Math.max(16, handlers.size() * 2));
+
+        boolean hasInterfaceHandlers = false;
+        boolean hasLazyHandlers = false;
+
+        for (Map.Entry<Class<? extends Exception>, RestExceptionHandler> entry : this.handlers.entrySet()) {
+            hasInterfaceHandlers |= entry.getKey().isInterface();
+
+            // the lazy handlers are put into the cache on the first resolution
+            if (entry.getValue() instanceof LazyRestExceptionHandler) {
+                hasLazyHandlers = true;
+            } else {
+                resolvedHandlers.put(entry.getKey(), entry.getValue());
+            }
+        }
+        this.hasInterfaceHandlers = hasInterfaceHandlers;
+        this.hasLazyHandlers = hasLazyHandlers;
+        this.createdHandlers = hasLazyHandlers ? null : this.handlers;
+    }
+
+
+    /**
+     * Returns the handler registered for the given exception type or the nearest superclass (or
+     * interface) of it, or <tt>null</tt> if there's no such handler.
+     */
+    public RestExceptionHandler resolveHandler(Class<? extends Exception> exceptionClass) {
+
+        RestExceptionHandler handler = resolvedHandlers.get(exceptionClass);
+        if (handler == null) {
+            handler = findHandler(exceptionClass);
+            resolvedHandlers.put(exceptionClass, handler != null ? handler : NO_HANDLER_FOUND);
+        }
+        return handler != NO_HANDLER_FOUND ? handler : null;
+    }
+
+    /**
+     * Returns the exception that should be handled instead of the given one: either the given
+     * exception itself, or one of its causes (that is an {@link Exception}). A cause wins only
+     * when the outer exception has no handler, or when its handler is registered for a supertype
+     * of the type the cause's handler is registered for, i.e. the cause's handler is more
+     * specific. The outer exception is handled when both are handled by the same (e.g. catch-all)
+     * handler, or by handlers of unrelated types. For example, when handlers are registered for
+     * {@code Exception} and {@code IOException}, then for {@code UndeclaredThrowableException}
+     * caused by {@code IOException} it returns the {@code IOException}, but for
+     * {@code UndeclaredThrowableException} caused by {@code SQLException} it returns the
+     * {@code UndeclaredThrowableException}. When handlers are registered for
+     * {@code RuntimeException} and {@code Exception}, then for {@code NumberFormatException}
+     * caused by {@code IOException} it returns the {@code NumberFormatException}.
+     *
+     * <p>The decision is cached per the exception class and the classes of its causes; a cached
+     * decision costs one lookup per exception in the cause chain, without any allocation.</p>
+     *
+     * @return The exception to handle, or <tt>null</tt> if there's no handler for the exception,
+     *         nor any of its causes.
+     */
+    public Exception resolveHandledException(Exception exception) {
+
+        CauseNode node = resolvedCauses;
+        int length = 0;
+        for (Throwable ex = exception; ex != null && length < MAX_CAUSE_DEPTH; ex = nextCause(ex), length++) {
+            node = node.child(ex.getClass());
+        }
+
+        Integer index = node.index;
+        if (index == null) {
+            node.index = index = findHandledCause(exception);
+        }
+        if (index.equals(NO_CAUSE_FOUND)) {
+            return null;
+        }
+        Throwable handled = exception;
+        for (int i = 0; i < index; i++) {
+            handled = handled.getCause();
+        }
+        return (Exception) handled;
+    }
+
+    /**
+     * Returns a new registry with the given handler registered for the given exception type
+     * (replacing the existing one, if any).
+     */
+    public ExceptionHandlerRegistry withHandler(Class<? extends Exception> exceptionClass, RestExceptionHandler handler) {
+        Assert.notNull(exceptionClass, "exceptionClass must not be null");
+        Assert.notNull(handler, "handler must not be null");
+
+        Map<Class<? extends Exception>, RestExceptionHandler> map = new LinkedHashMap<>(handlers);
+        map.put(exceptionClass, handler);
+
+        return new ExceptionHandlerRegistry(map);
+    }
+
+    /**
+     * Returns a new registry without the handler for the given exception type, or this registry
+     * if there's no handler registered for exactly this type.
+     */
+    public ExceptionHandlerRegistry withoutHandler(Class<? extends Exception> exceptionClass) {
+
+        if (!handlers.containsKey(exceptionClass)) {
+            return this;
+        }
+        Map<Class<? extends Exception>, RestExceptionHandler> map = new LinkedHashMap<>(handlers);
+        map.remove(exceptionClass);
+
+        return new ExceptionHandlerRegistry(map);
+    }
+
+    /**
+     * Returns an unmodifiable map of the registered handlers. The handlers that are created
+     * lazily are created by this method.
+     */
+    public Map<Class<? extends Exception>, RestExceptionHandler> asMap() {
+
+        Map<Class<? extends Exception>, RestExceptionHandler> map = createdHandlers;
+        if (map == null) {
+            map = new LinkedHashMap<>(handlers.size() * 2);
+            for (Map.Entry<Class<? extends Exception>, RestExceptionHandler> entry : handlers.entrySet()) {
+                map.put(entry.getKey(), create(entry.getValue()));
+            }
+            createdHandlers = map = unmodifiableMap(map);
+        }
+        return map;
+    }
+
+    public int size() {
+        return handlers.size();
+    }
+
+    @Override
+    public String toString() {
+        return "ExceptionHandlerRegistry" + handlers;
+    }
+
+
+    /**
+     * Returns the given handler, or the created handler if it's a lazy one.
+     */
+    private RestExceptionHandler create(RestExceptionHandler handler) {
+
+        if (hasLazyHandlers && handler instanceof LazyRestExceptionHandler) {
+            return ((LazyRestExceptionHandler) handler).get();
+        }
+        return handler;
+    }
+
+
+    private RestExceptionHandler findHandler(Class<?> exceptionClass) {
+
+        for (Class<?> clazz = exceptionClass; clazz != Throwable.class; clazz = clazz.getSuperclass()) {
+            RestExceptionHandler handler = findHandlerOnLevel(clazz);
+            if (handler != null) {
+                return create(handler);
+            }
+        }
+        return null;
+    }
+
+    private RestExceptionHandler findHandlerOnLevel(Class<?> clazz) {
+
+        Class<?> handledType = findHandledTypeOnLevel(clazz);
+        return handledType != null ? handlers.get(handledType) : null;
+    }
+
+    /**
+     * Returns the type (the given class or one of its interfaces) that has a handler registered,
+     * or <tt>null</tt> if there's no such type.
+     */
+    private Class<?> findHandledTypeOnLevel(Class<?> clazz) {
+
+        if (handlers.containsKey(clazz)) {
+            return clazz;
+        }
+        return hasInterfaceHandlers ? findHandledInterface(clazz.getInterfaces()) : null;
+    }
+
+    private Class<?> findHandledInterface(Class<?>[] interfaces) {
+
+        for (Class<?> iface : interfaces) {
+            if (handlers.containsKey(iface)) {
+                return iface;
+            }
+        }
+        for (Class<?> iface : interfaces) {
+            Class<?> handledType = findHandledInterface(iface.getInterfaces());
+            if (handledType != null) {
+                return handledType;
+            }
+        }
+        return null;
+    }
+
+    private Integer findHandledCause(Exception exception) {
+
+        int bestIndex = NO_CAUSE_FOUND;
+        Class<?> bestType = null;
+        int index = 0;
+
+        for (Throwable ex = exception; ex != null && index < MAX_CAUSE_DEPTH; ex = nextCause(ex), index++) {
+            if (!(ex instanceof Exception)) {
+                continue;
+            }
+            Class<?> handledType = findHandledType(ex.getClass());
+
+            if (handledType != null && (bestType == null || isMoreSpecific(handledType, bestType))) {
+                bestIndex = index;
+                bestType = handledType;
+            }
+        }
+        return bestIndex;
+    }
+
+    /**
+     * Returns the type that the handler for the given exception type is registered for, or
+     * <tt>null</tt> if there's no handler.
+     */
+    private Class<?> findHandledType(Class<?> exceptionClass) {
+
+        for (Class<?> clazz = exceptionClass; clazz != Throwable.class; clazz = clazz.getSuperclass()) {
+            Class<?> handledType = findHandledTypeOnLevel(clazz);
+            if (handledType != null) {
+                return handledType;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Whether the handler registered for the given type is more specific than the one registered
+     * for the other type, i.e. the type is a subtype of the other one and it's handled by another
+     * handler (the same handler would handle the outer exception as well).
+     */
+    private boolean isMoreSpecific(Class<?> type, Class<?> otherType) {
+
+        return type != otherType
+                && otherType.isAssignableFrom(type)
+                && handlers.get(type) != handlers.get(otherType);
+    }
+
+    private static Throwable nextCause(Throwable ex) {
+        Throwable cause = ex.getCause();
+        return cause != ex ? cause : null;
+    }
+
+
+    //////// Inner classes ////////
+
+    /**
+     * A node in the tree of the exception classes and the classes of their causes, used as the
+     * {@link #resolvedCauses} cache. The path from the root node is the class of the exception
+     * and its causes; the node at the end of the path holds the resolved index. Unlike a key
+     * composed of all the classes, it can be looked up without any allocation.
+     */
+    private static final class CauseNode {
+
+        private final ConcurrentReferenceHashMap<Class<?>, CauseNode> children;
+
+        /** The resolved index for the cause chain ending at this node, or <tt>null</tt>. */
+        volatile Integer index;
+
+        CauseNode(int initialCapacity) {
+            // the nodes are held by soft references, so they don't prevent unloading of the classes
+            this.children = new ConcurrentReferenceHashMap<>(initialCapacity, 1);
+        }
+
+        CauseNode child(Class<?> exceptionClass) {
+
+            CauseNode child = children.get(exceptionClass);
+            if (child == null) {
+                child = new CauseNode(1);
+                CauseNode existing = children.putIfAbsent(exceptionClass, child);
+                if (existing != null) {
+                    child = existing;
+                }
+            }
+            return child;
+        }
+    }
+}
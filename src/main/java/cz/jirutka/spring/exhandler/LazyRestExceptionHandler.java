@@ -0,0 +1,82 @@
+/*
+ * Copyright 2016 Jakub Jirutka <jakub@jirutka.cz>.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package cz.jirutka.spring.exhandler;
+
+import cz.jirutka.spring.exhandler.handlers.RestExceptionHandler;
+import org.springframework.http.ResponseEntity;
+
+import javax.servlet.http.HttpServletRequest;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * A placeholder for a {@link RestExceptionHandler} that is created on the first use. It's used
+ * for the default handlers, so only the handlers for the exceptions that are actually thrown are
+ * ever instantiated. {@link ExceptionHandlerRegistry} unwraps it, so the resolver always works
+ * with the created handler.
+ */
+abstract class LazyRestExceptionHandler implements RestExceptionHandler<Exception, Object> {
+
+    /**
+     * Guards creation of the handler; it's not a monitor (<tt>synchronized</tt>), so a virtual
+     * thread waiting for it or creating the handler doesn't pin its carrier thread.
+     */
+    private final Lock lock = new ReentrantLock();
+
+    private volatile RestExceptionHandler handler;
+
+
+    /**
+     * Creates and initializes the handler; called at most once.
+     */
+    protected abstract RestExceptionHandler createHandler();
+
+
+    /**
+     * Returns the handler, creating it if not created yet.
+     */
+    public RestExceptionHandler get() {
+
+        RestExceptionHandler result = handler;
+        if (result == null) {
+            lock.lock();
+            try {
+                result = handler;
+                if (result == null) {
+                    handler = result = createHandler();
+                }
+            } finally {
+                lock.unlock();
+            }
+        }
+        return result;
+    }
+
+    public boolean isCreated() {
+        return handler != null;
+    }
+
+    @SuppressWarnings("unchecked")
+    public ResponseEntity<Object> handleException(Exception exception, HttpServletRequest request) {
+        return get().handleException(exception, request);
+    }
+
+    @Override
+    public String toString() {
+        RestExceptionHandler result = handler;
+        return result != null ? result.toString() : "LazyRestExceptionHandler[not created]";
+    }
+}
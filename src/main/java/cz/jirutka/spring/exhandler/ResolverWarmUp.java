@@ -0,0 +1,339 @@
+/*
+ * Copyright 2016 Jakub Jirutka <jakub@jirutka.cz>.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package cz.jirutka.spring.exhandler;
+
+import cz.jirutka.spring.exhandler.handlers.AbstractRestExceptionHandler;
+import cz.jirutka.spring.exhandler.handlers.RestExceptionHandler;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.context.i18n.LocaleContext;
+import org.springframework.context.i18n.LocaleContextHolder;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.http.converter.HttpMessageConverter;
+import org.springframework.validation.BindingResult;
+import org.springframework.validation.Errors;
+import org.springframework.validation.MapBindingResult;
+import org.springframework.web.context.request.ServletWebRequest;
+
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.lang.reflect.Array;
+import java.lang.reflect.Constructor;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+
+import static java.util.Collections.enumeration;
+
+/**
+ * Renders a synthetic error response for each exception handler of the resolver, each of the
+ * given locales and each media type the response body can be written as (and without the
+ * Accept header), so that the lazily initialized parts of the error path are initialized before
+ * the first real error.
+ *
+ * <p>The synthetic exceptions are created using the simplest public constructor that accepts
+ * placeholder arguments (a message, empty collections, ...); a handler for an exception that
+ * can't be created this way is skipped. The handlers that extend
+ * {@link AbstractRestExceptionHandler} don't log them. A handler that fails on the synthetic
+ * exception (e.g. because of its missing properties) is skipped as well.</p>
+ *
+ * @see RestHandlerExceptionResolver#warmUp()
+ */
+final class ResolverWarmUp {
+
+    private static final Logger LOG = LoggerFactory.getLogger(ResolverWarmUp.class);
+
+    private static final String SYNTHETIC_MESSAGE = "Synthetic exception for warm-up";
+
+    private static final Map<Class<?>, Object> DEFAULT_PRIMITIVE_VALUES = new HashMap<>(16);
+
+    static {
+        DEFAULT_PRIMITIVE_VALUES.put(boolean.class, false);
+        DEFAULT_PRIMITIVE_VALUES.put(byte.class, (byte) 0);
+        DEFAULT_PRIMITIVE_VALUES.put(char.class, (char) 0);
+        DEFAULT_PRIMITIVE_VALUES.put(short.class, (short) 0);
+        DEFAULT_PRIMITIVE_VALUES.put(int.class, 0);
+        DEFAULT_PRIMITIVE_VALUES.put(long.class, 0L);
+        DEFAULT_PRIMITIVE_VALUES.put(float.class, 0f);
+        DEFAULT_PRIMITIVE_VALUES.put(double.class, 0d);
+    }
+
+    private final RestHandlerExceptionResolver resolver;
+    private final List<Locale> locales;
+
+
+    ResolverWarmUp(RestHandlerExceptionResolver resolver, List<Locale> locales) {
+        this.resolver = resolver;
+        this.locales = locales;
+    }
+
+
+    /**
+     * @return The number of rendered responses.
+     */
+    public int run() {
+
+        int rendered = 0;
+        LocaleContext previousLocaleContext = LocaleContextHolder.getLocaleContext();
+        try {
+            for (Map.Entry<Class<? extends Exception>, RestExceptionHandler> entry
+                    : resolver.getExceptionHandlers().entrySet()) {
+
+                Exception exception = createException(entry.getKey());
+                if (exception == null) {
+                    LOG.debug("Skipping warm-up of handler for {}, unable to instantiate it", entry.getKey().getName());
+                    continue;
+                }
+                for (Locale locale : locales) {
+                    LocaleContextHolder.setLocale(locale);
+                    rendered += warmUp(entry.getValue(), exception, locale);
+                }
+            }
+        } finally {
+            LocaleContextHolder.setLocaleContext(previousLocaleContext);
+        }
+        return rendered;
+    }
+
+
+    @SuppressWarnings("unchecked")
+    private int warmUp(RestExceptionHandler handler, Exception exception, Locale locale) {
+
+        ResponseEntity<?> entity;
+        try {
+            HttpServletRequest request = createRequest(null, locale);
+
+            entity = handler instanceof AbstractRestExceptionHandler
+                    ? ((AbstractRestExceptionHandler) handler).createResponse(exception, request)
+                    : handler.handleException(exception, request);
+
+        } catch (RuntimeException ex) {
+            LOG.debug("Skipping warm-up of handler for {}, it failed on synthetic exception: {}",
+                    exception.getClass().getName(), ex.toString());
+            return 0;
+        }
+        int rendered = 0;
+        for (String accept : getAcceptHeaders(entity)) {
+            try {
+                ServletWebRequest webRequest = new ServletWebRequest(createRequest(accept, locale), createResponse(locale));
+
+                if (resolver.isResponseCacheable(handler)) {
+                    resolver.getOrCreateCachedResponse(handler, entity, webRequest);
+                } else {
+                    resolver.responseEntityWriter.write(entity, webRequest, new BufferedResponse.Recorder());
+                }
+                rendered++;
+
+            } catch (Exception ex) {
+                LOG.debug("Failed to warm up response for {} with Accept: {}",
+                        exception.getClass().getName(), accept, ex);
+            }
+        }
+        return rendered;
+    }
+
+    /**
+     * Returns <tt>null</tt> (i.e. no Accept header) and the first concrete media type of each
+     * message converter that can write the body of the given entity.
+     */
+    private List<String> getAcceptHeaders(ResponseEntity<?> entity) {
+
+        Set<String> result = new LinkedHashSet<>();
+        result.add(null);
+
+        if (entity.getBody() != null) {
+            Class<?> bodyClass = entity.getBody().getClass();
+
+            for (HttpMessageConverter<?> converter : resolver.getMessageConverters()) {
+                if (converter.canWrite(bodyClass, null)) {
+                    for (MediaType mediaType : converter.getSupportedMediaTypes()) {
+                        if (mediaType.isConcrete()) {
+                            result.add(mediaType.getType() + '/' + mediaType.getSubtype());
+                            break;
+                        }
+                    }
+                }
+            }
+        }
+        return new ArrayList<>(result);
+    }
+
+
+    static Exception createException(Class<?> exceptionClass) {
+
+        if (!Exception.class.isAssignableFrom(exceptionClass)
+                || exceptionClass.isInterface() || Modifier.isAbstract(exceptionClass.getModifiers())) {
+            return null;
+        }
+        Constructor<?>[] ctors = exceptionClass.getConstructors();
+        // prefer the simplest constructor
+        Arrays.sort(ctors, new Comparator<Constructor<?>>() {
+            public int compare(Constructor<?> a, Constructor<?> b) {
+                return Integer.compare(a.getParameterTypes().length, b.getParameterTypes().length);
+            }
+        });
+        for (Constructor<?> ctor : ctors) {
+            Class<?>[] paramTypes = ctor.getParameterTypes();
+            Object[] args = new Object[paramTypes.length];
+
+            for (int i = 0; i < paramTypes.length; i++) {
+                args[i] = syntheticArgument(paramTypes[i]);
+            }
+            try {
+                return (Exception) ctor.newInstance(args);
+            } catch (Exception | LinkageError ex) {
+                LOG.trace("Failed to instantiate {} using {}", exceptionClass.getName(), ctor, ex);
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Returns a placeholder value of the given constructor parameter type: the synthetic message
+     * for a String, an empty collection, map or array, an empty binding result, zero, or
+     * <tt>null</tt> for any other type.
+     */
+    private static Object syntheticArgument(Class<?> type) {
+
+        if (type == String.class) {
+            return SYNTHETIC_MESSAGE;
+        } else if (type == Set.class) {
+            return Collections.emptySet();
+        } else if (type == List.class || type == Collection.class) {
+            return Collections.emptyList();
+        } else if (type == Map.class) {
+            return Collections.emptyMap();
+        } else if (type == BindingResult.class || type == Errors.class) {
+            return new MapBindingResult(Collections.emptyMap(), "object");
+        } else if (type.isArray()) {
+            return Array.newInstance(type.getComponentType(), 0);
+        } else if (type.isPrimitive()) {
+            return DEFAULT_PRIMITIVE_VALUES.get(type);
+        } else {
+            return null;
+        }
+    }
+
+    static HttpServletRequest createRequest(String accept, Locale locale) {
+        return (HttpServletRequest) Proxy.newProxyInstance(ResolverWarmUp.class.getClassLoader(),
+                new Class<?>[]{ HttpServletRequest.class }, new SyntheticServletObject(accept, locale));
+    }
+
+    static HttpServletResponse createResponse(Locale locale) {
+        return (HttpServletResponse) Proxy.newProxyInstance(ResolverWarmUp.class.getClassLoader(),
+                new Class<?>[]{ HttpServletResponse.class }, new SyntheticServletObject(null, locale));
+    }
+
+
+    //////// Inner classes ////////
+
+    /**
+     * Implementation of a synthetic GET request to "/" with the given Accept header and locale,
+     * or a response; the other methods return <tt>null</tt>, <tt>false</tt> or 0.
+     */
+    private static final class SyntheticServletObject implements InvocationHandler {
+
+        private final String accept;
+        private final Locale locale;
+        private final Map<Object, Object> attributes = new HashMap<>();
+
+        SyntheticServletObject(String accept, Locale locale) {
+            this.accept = accept;
+            this.locale = locale;
+        }
+
+        public Object invoke(Object proxy, Method method, Object[] args) {
+
+            switch (method.getName()) {
+                case "getHeader":
+                    return isAccept(args[0]) ? accept : null;
+                case "getHeaders":
+                    return enumeration(isAccept(args[0]) ? acceptList() : Collections.<String>emptyList());
+                case "getHeaderNames":
+                    return enumeration(accept != null ? Collections.singletonList(HttpHeaders.ACCEPT) : Collections.<String>emptyList());
+                case "getLocale":
+                    return locale;
+                case "getLocales":
+                    return enumeration(Collections.singletonList(locale));
+                case "getMethod":
+                    return "GET";
+                case "getRequestURI":
+                    return "/";
+                case "getRequestURL":
+                    return new StringBuffer("http://localhost/");
+                case "getContextPath":
+                case "getServletPath":
+                    return "";
+                case "getScheme":
+                    return "http";
+                case "getServerName":
+                    return "localhost";
+                case "getServerPort":
+                    return 80;
+                case "getProtocol":
+                    return "HTTP/1.1";
+                case "getAttribute":
+                    return attributes.get(args[0]);
+                case "setAttribute":
+                    if (args[1] != null) {
+                        attributes.put(args[0], args[1]);
+                    } else {
+                        attributes.remove(args[0]);
+                    }
+                    return null;
+                case "removeAttribute":
+                    attributes.remove(args[0]);
+                    return null;
+                case "getAttributeNames":
+                    return enumeration(new ArrayList<>(attributes.keySet()));
+                case "getParameterMap":
+                    return Collections.emptyMap();
+                case "getParameterNames":
+                    return enumeration(Collections.emptyList());
+                case "equals":
+                    return proxy == args[0];
+                case "hashCode":
+                    return System.identityHashCode(proxy);
+                case "toString":
+                    return "SyntheticServletObject[Accept: " + accept + "]";
+                default:
+                    return DEFAULT_PRIMITIVE_VALUES.get(method.getReturnType());
+            }
+        }
+
+        private boolean isAccept(Object headerName) {
+            return HttpHeaders.ACCEPT.equalsIgnoreCase((String) headerName);
+        }
+
+        private List<String> acceptList() {
+            return accept != null ? Collections.singletonList(accept) : Collections.<String>emptyList();
+        }
+    }
+}
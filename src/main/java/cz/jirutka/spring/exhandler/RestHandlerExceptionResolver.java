@@ -15,18 +15,27 @@
  */
 package cz.jirutka.spring.exhandler;
 
+import cz.jirutka.spring.exhandler.handlers.AbstractRestExceptionHandler;
+import cz.jirutka.spring.exhandler.handlers.CacheableRestExceptionHandler;
 import cz.jirutka.spring.exhandler.handlers.RestExceptionHandler;
+import cz.jirutka.spring.exhandler.metrics.ExceptionMetrics;
+import cz.jirutka.spring.exhandler.support.ResponseEntityWriter;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.DisposableBean;
 import org.springframework.beans.factory.InitializingBean;
+import org.springframework.context.i18n.LocaleContextHolder;
 import org.springframework.core.MethodParameter;
+import org.springframework.http.HttpStatus;
 import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.http.converter.HttpMessageConverter;
 import org.springframework.util.Assert;
 import org.springframework.util.ClassUtils;
+import org.springframework.util.ObjectUtils;
 import org.springframework.web.HttpMediaTypeNotAcceptableException;
 import org.springframework.web.accept.ContentNegotiationManager;
+import org.springframework.web.accept.ContentNegotiationStrategy;
 import org.springframework.web.accept.FixedContentNegotiationStrategy;
 import org.springframework.web.accept.HeaderContentNegotiationStrategy;
 import org.springframework.web.context.request.NativeWebRequest;
@@ -39,13 +48,19 @@ import org.springframework.web.servlet.mvc.method.annotation.HttpEntityMethodPro
 
 import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
+import java.io.IOException;
 import java.lang.reflect.Method;
-import java.util.LinkedHashMap;
+import java.util.Collections;
 import java.util.List;
+import java.util.Locale;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
 
 import static cz.jirutka.spring.exhandler.support.HttpMessageConverterUtils.getDefaultHttpMessageConverters;
 import static org.springframework.http.MediaType.APPLICATION_XML;
+import static org.springframework.web.context.request.RequestAttributes.SCOPE_REQUEST;
 import static org.springframework.web.servlet.HandlerMapping.PRODUCIBLE_MEDIA_TYPES_ATTRIBUTE;
 
 /**
@@ -57,26 +72,59 @@ import static org.springframework.web.servlet.HandlerMapping.PRODUCIBLE_MEDIA_TY
  * @see RestHandlerExceptionResolverBuilder
  * @see RestHandlerExceptionResolverFactoryBean
  */
-public class RestHandlerExceptionResolver extends AbstractHandlerExceptionResolver implements InitializingBean {
+public class RestHandlerExceptionResolver extends AbstractHandlerExceptionResolver
+        implements InitializingBean, DisposableBean {
 
     private static final Logger LOG = LoggerFactory.getLogger(RestHandlerExceptionResolver.class);
 
+    private static final String NEGOTIATED_MEDIA_TYPE_ATTRIBUTE =
+            RestHandlerExceptionResolver.class.getName() + ".negotiatedMediaType";
+
     private final MethodParameter returnTypeMethodParam;
 
     private List<HttpMessageConverter<?>> messageConverters = getDefaultHttpMessageConverters();
 
-    private Map<Class<? extends Exception>, RestExceptionHandler> handlers = new LinkedHashMap<>();
+    private volatile ExceptionHandlerRegistry handlerRegistry = ExceptionHandlerRegistry.empty();
 
     private MediaType defaultContentType = APPLICATION_XML;
 
     private ContentNegotiationManager contentNegotiationManager;
 
+    /**
+     * Whether the {@link #contentNegotiationManager} resolves media types only from the Accept
+     * header (and the fixed default content type).
+     */
+    private boolean acceptHeaderOnlyNegotiation = false;
+
+    private int responseCacheLimit = 0;
+
+    /**
+     * Cache of serialized responses produced by {@link CacheableRestExceptionHandler
+     * CacheableRestExceptionHandlers}.
+     */
+    private final ConcurrentMap<ResponseCacheKey, BufferedResponse> responseCache = new ConcurrentHashMap<>(16);
+
     // package visibility for tests
     HandlerMethodReturnValueHandler responseProcessor;
 
     // package visibility for tests
     HandlerMethodReturnValueHandler fallbackResponseProcessor;
 
+    private boolean useResponseEntityWriter = false;
+
+    // package visibility for tests
+    ResponseEntityWriter responseEntityWriter;
+
+    private ExceptionMetrics exceptionMetrics;
+
+    private boolean matchCauses = false;
+
+    private boolean warmUp = false;
+
+    private List<Locale> warmUpLocales;
+
+    private List<? extends DisposableBean> ownedResources = Collections.emptyList();
+
 
     /**
      * Returns a builder to build and configure instance of {@code RestHandlerExceptionResolver}.
@@ -100,35 +148,148 @@ public class RestHandlerExceptionResolver extends AbstractHandlerExceptionResolv
 
     @Override
     public void afterPropertiesSet() {
+        ContentNegotiationManager processorNegotiationManager = contentNegotiationManager;
+
         if (contentNegotiationManager == null) {
-            contentNegotiationManager = new ContentNegotiationManager(
-                    new HeaderContentNegotiationStrategy(), new FixedContentNegotiationStrategy(defaultContentType));
+            ContentNegotiationStrategy headerStrategy = new HeaderContentNegotiationStrategy();
+            ContentNegotiationStrategy defaultStrategy = new FixedContentNegotiationStrategy(defaultContentType);
+
+            contentNegotiationManager = new ContentNegotiationManager(headerStrategy, defaultStrategy);
+            acceptHeaderOnlyNegotiation = true;
+
+            // prefers the media type negotiated upfront in processResponse
+            processorNegotiationManager = new ContentNegotiationManager(
+                    new NegotiatedMediaTypeStrategy(), headerStrategy, defaultStrategy);
         }
-        responseProcessor = new HttpEntityMethodProcessor(messageConverters, contentNegotiationManager);
+        responseProcessor = new HttpEntityMethodProcessor(messageConverters, processorNegotiationManager);
         fallbackResponseProcessor = new HttpEntityMethodProcessor(messageConverters,
                 new ContentNegotiationManager(new FixedContentNegotiationStrategy(defaultContentType)));
+
+        // used also to negotiate the media type upfront for the responseProcessor
+        responseEntityWriter = new ResponseEntityWriter(messageConverters, contentNegotiationManager, defaultContentType);
+        responseEntityWriter.setAcceptHeaderOnly(acceptHeaderOnlyNegotiation);
+        responseCache.clear();
+
+        if (warmUp) {
+            warmUp();
+        }
+    }
+
+    /**
+     * Destroys the {@link #setOwnedResources(List) owned resources}, e.g. stops the worker thread
+     * of the {@link cz.jirutka.spring.exhandler.logging.AsyncExceptionLogger AsyncExceptionLogger}.
+     */
+    @Override
+    public void destroy() {
+        for (DisposableBean resource : ownedResources) {
+            try {
+                resource.destroy();
+            } catch (Exception ex) {
+                LOG.warn("Failed to destroy {}", resource, ex);
+            }
+        }
+    }
+
+    /**
+     * Renders a synthetic error response for each of the registered exception handlers, each of
+     * the {@link #setWarmUpLocales(List) warmUpLocales} and each media type the response body
+     * can be written as. This initializes the lazily initialized parts of the error path (message
+     * templates, message converters, response cache, ...), so the first real error after startup
+     * doesn't have to wait for it. The synthetic exceptions are not recorded into the metrics.
+     * It must be called after {@link #afterPropertiesSet()}; it's called automatically when
+     * {@link #setWarmUp(boolean) warmUp} is enabled.
+     *
+     * @return The time it took in milliseconds.
+     */
+    public long warmUp() {
+
+        long startTime = System.nanoTime();
+        List<Locale> locales = warmUpLocales != null && !warmUpLocales.isEmpty()
+                ? warmUpLocales
+                : Collections.singletonList(Locale.getDefault());
+
+        int rendered = new ResolverWarmUp(this, locales).run();
+
+        long duration = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startTime);
+        LOG.info("Warmed up {} exception handlers by rendering {} responses in {} ms",
+                handlerRegistry.size(), rendered, duration);
+
+        return duration;
     }
 
     @Override
     protected ModelAndView doResolveException(
             HttpServletRequest request, HttpServletResponse response, Object handler, Exception exception) {
 
-        ResponseEntity<?> entity;
+        ExceptionMetrics metrics = exceptionMetrics;
+        long startTime = metrics != null ? System.nanoTime() : 0;
+
+        // the exception itself, or its cause if matchCauses is enabled
+        Exception handled = resolveHandledException(exception);
+
+        RestExceptionHandler<Exception, ?> exceptionHandler;
         try {
-            entity = handleException(exception, request);
+            exceptionHandler = resolveExceptionHandler(handled.getClass());
+
         } catch (NoExceptionHandlerFoundException ex) {
-            LOG.warn("No exception handler found to handle exception: {}", exception.getClass().getName());
+            LOG.warn("No exception handler found to handle exception: {}", handled.getClass().getName());
+            if (metrics != null) {
+                metrics.recordUnhandled(handled.getClass());
+            }
             return null;
         }
+        ServletWebRequest webRequest = new ServletWebRequest(request, response);
+
+        boolean cacheable = isResponseCacheable(exceptionHandler);
+        BufferedResponse cached = cacheable ? getCachedResponse(exceptionHandler, webRequest) : null;
+        ResponseEntity<?> entity = null;
+
+        if (cached != null) {
+            // the body is not needed, the response is already serialized
+            handleCachedException(handled, exceptionHandler, request);
+        } else {
+            entity = handleException(handled, request);
+        }
+        long handledTime = metrics != null ? System.nanoTime() : 0;
         try {
-            processResponse(entity, new ServletWebRequest(request, response));
+            if (cached != null) {
+                cached.writeTo(response);
+            } else if (cacheable) {
+                processCacheableResponse(exceptionHandler, entity, webRequest);
+            } else {
+                processResponse(entity, webRequest);
+            }
         } catch (Exception ex) {
-            LOG.error("Failed to process error response: {}", entity, ex);
+            LOG.error("Failed to process error response: {}", entity != null ? entity : cached, ex);
+            if (metrics != null) {
+                metrics.recordFailed(handled.getClass(), exceptionHandler);
+            }
             return null;
         }
+        if (metrics != null) {
+            HttpStatus status = entity != null ? entity.getStatusCode() : HttpStatus.valueOf(cached.getStatus());
+            metrics.recordHandled(handled.getClass(), exceptionHandler,
+                    status, handledTime - startTime, System.nanoTime() - handledTime);
+        }
         return new ModelAndView();
     }
 
+    /**
+     * Handles the exception whose response has been found in the response cache, i.e. it does
+     * everything as {@link #handleException(Exception, HttpServletRequest) handleException()},
+     * except creating the response (if the handler supports it).
+     */
+    @SuppressWarnings("unchecked")
+    protected void handleCachedException(Exception exception, RestExceptionHandler<Exception, ?> handler,
+                                         HttpServletRequest request) {
+
+        if (handler instanceof AbstractRestExceptionHandler) {
+            ((AbstractRestExceptionHandler<Exception, ?>) handler).handleExceptionWithoutResponse(exception, request);
+        } else {
+            handleException(exception, request);
+        }
+    }
+
     protected ResponseEntity<?> handleException(Exception exception, HttpServletRequest request) {
         // See http://stackoverflow.com/a/12979543/2217862
         // This attribute is never set in MockMvc, so it's not covered in integration test.
@@ -140,30 +301,155 @@ public class RestHandlerExceptionResolver extends AbstractHandlerExceptionResolv
         return handler.handleException(exception, request);
     }
 
+    /**
+     * Returns the exception to be handled, i.e. the given exception, or one of its causes if
+     * {@link #setMatchCauses(boolean) matchCauses} is enabled.
+     */
+    protected Exception resolveHandledException(Exception exception) {
+
+        if (!matchCauses) {
+            return exception;
+        }
+        Exception handled = handlerRegistry.resolveHandledException(exception);
+
+        return handled != null ? handled : exception;
+    }
+
     @SuppressWarnings("unchecked")
     protected RestExceptionHandler<Exception, ?> resolveExceptionHandler(Class<? extends Exception> exceptionClass) {
 
-        for (Class clazz = exceptionClass; clazz != Throwable.class; clazz = clazz.getSuperclass()) {
-            if (handlers.containsKey(clazz)) {
-                return handlers.get(clazz);
-            }
+        RestExceptionHandler handler = handlerRegistry.resolveHandler(exceptionClass);
+        if (handler == null) {
+            throw new NoExceptionHandlerFoundException();
         }
-        throw new NoExceptionHandlerFoundException();
+        return handler;
     }
 
     protected void processResponse(ResponseEntity<?> entity, NativeWebRequest webRequest) throws Exception {
 
+        if (useResponseEntityWriter && responseEntityWriter != null) {
+            if (responseEntityWriter.write(entity, webRequest)) {
+                return;
+            }
+            LOG.debug("Failed to write response directly, falling back to response processor");
+        }
         // XXX: Create MethodParameter from the actually used subclass of RestExceptionHandler?
         MethodParameter methodParameter = new MethodParameter(returnTypeMethodParam);
         ModelAndViewContainer mavContainer = new ModelAndViewContainer();
 
+        // Negotiate the media type upfront using the cache of the responseEntityWriter, so the
+        // processor doesn't have to parse the Accept header and we don't have to pay for throwing
+        // HttpMediaTypeNotAcceptableException on every request with unsupported Accept.
+        // This is done only when the cache is keyed by the raw Accept header; with a custom
+        // ContentNegotiationManager, it would negotiate once more than the processor.
+        MediaType negotiatedMediaType = null;
+        Object body = entity.getBody();
+
+        if (body != null && acceptHeaderOnlyNegotiation && responseEntityWriter != null) {
+            negotiatedMediaType = responseEntityWriter.getRequestedMediaType(body.getClass(), webRequest);
+
+            if (negotiatedMediaType == null) {
+                LOG.debug("Requested media type is not supported, falling back to default one");
+                fallbackResponseProcessor.handleReturnValue(entity, methodParameter, mavContainer, webRequest);
+                return;
+            }
+            webRequest.setAttribute(NEGOTIATED_MEDIA_TYPE_ATTRIBUTE, negotiatedMediaType, SCOPE_REQUEST);
+        }
         try {
             responseProcessor.handleReturnValue(entity, methodParameter, mavContainer, webRequest);
 
         } catch (HttpMediaTypeNotAcceptableException ex) {
             LOG.debug("Requested media type is not supported, falling back to default one");
             fallbackResponseProcessor.handleReturnValue(entity, methodParameter, mavContainer, webRequest);
+
+        } finally {
+            if (negotiatedMediaType != null) {
+                webRequest.removeAttribute(NEGOTIATED_MEDIA_TYPE_ATTRIBUTE, SCOPE_REQUEST);
+            }
+        }
+    }
+
+
+    /**
+     * Returns <tt>true</tt> if the response cache is enabled and the given exception handler
+     * produces a response that does not depend on the exception nor request.
+     */
+    protected boolean isResponseCacheable(RestExceptionHandler<?, ?> handler) {
+
+        return responseCacheLimit > 0
+                && handler instanceof CacheableRestExceptionHandler
+                && ((CacheableRestExceptionHandler) handler).isResponseCacheable(LocaleContextHolder.getLocale());
+    }
+
+    /**
+     * Writes the serialized response from the cache, if the response of the given handler has
+     * been already serialized for the current locale and the same requested media types.
+     * Otherwise it serializes the response, stores it into the cache and then writes it. The
+     * handler must be {@link #isResponseCacheable(RestExceptionHandler) cacheable}.
+     */
+    protected void processCacheableResponse(RestExceptionHandler<?, ?> handler, ResponseEntity<?> entity,
+                                            ServletWebRequest webRequest) throws Exception {
+
+        BufferedResponse cached = getOrCreateCachedResponse(handler, entity, webRequest);
+        if (cached != null) {
+            cached.writeTo(webRequest.getResponse());
+        } else {
+            processResponse(entity, webRequest);
+        }
+    }
+
+    /**
+     * Returns the serialized response from the cache, or serializes the given entity and stores
+     * it into the cache (if it's not full). Returns <tt>null</tt> if the requested media types
+     * cannot be resolved or the entity cannot be written.
+     */
+    BufferedResponse getOrCreateCachedResponse(RestExceptionHandler<?, ?> handler, ResponseEntity<?> entity,
+                                               NativeWebRequest webRequest) throws IOException {
+
+        ResponseCacheKey key = createResponseCacheKey(handler, webRequest);
+        if (key == null || responseEntityWriter == null) {
+            return null;
+        }
+        BufferedResponse cached = responseCache.get(key);
+
+        if (cached == null) {
+            BufferedResponse.Recorder recorder = new BufferedResponse.Recorder();
+            if (!responseEntityWriter.write(entity, webRequest, recorder)) {
+                return null;
+            }
+            cached = recorder.toBufferedResponse();
+
+            if (responseCache.size() < responseCacheLimit) {
+                responseCache.put(key, cached);
+            }
+        }
+        return cached;
+    }
+
+    private BufferedResponse getCachedResponse(RestExceptionHandler<?, ?> handler, NativeWebRequest webRequest) {
+        ResponseCacheKey key = createResponseCacheKey(handler, webRequest);
+        return key != null ? responseCache.get(key) : null;
+    }
+
+    /**
+     * Returns the key of the response cache, or <tt>null</tt> if the requested media types cannot
+     * be resolved. The response of a cacheable handler depends only on the locale, and its
+     * serialized form on the requested media types. When they're resolved only from the Accept
+     * header, the key contains the raw value of the header, so it doesn't have to be parsed.
+     */
+    private ResponseCacheKey createResponseCacheKey(RestExceptionHandler<?, ?> handler, NativeWebRequest webRequest) {
+
+        Object requestedMediaTypes;
+        if (acceptHeaderOnlyNegotiation) {
+            requestedMediaTypes = ResponseEntityWriter.getAcceptHeader(webRequest);
+        } else {
+            try {
+                requestedMediaTypes = contentNegotiationManager.resolveMediaTypes(webRequest);
+            } catch (HttpMediaTypeNotAcceptableException ex) {
+                return null;
+            }
         }
+        return new ResponseCacheKey(handler, LocaleContextHolder.getLocale(), requestedMediaTypes);
     }
 
 
@@ -187,6 +473,8 @@ public class RestHandlerExceptionResolver extends AbstractHandlerExceptionResolv
     public void setContentNegotiationManager(ContentNegotiationManager contentNegotiationManager) {
         this.contentNegotiationManager = contentNegotiationManager != null
                 ? contentNegotiationManager : new ContentNegotiationManager();
+        // the default ContentNegotiationManager uses just HeaderContentNegotiationStrategy
+        this.acceptHeaderOnlyNegotiation = contentNegotiationManager == null;
     }
 
     public MediaType getDefaultContentType() {
@@ -197,16 +485,208 @@ public class RestHandlerExceptionResolver extends AbstractHandlerExceptionResolv
         this.defaultContentType = defaultContentType;
     }
 
+    public int getResponseCacheLimit() {
+        return responseCacheLimit;
+    }
+
+    /**
+     * Sets the maximum number of serialized responses to cache. The cache is used only for
+     * responses of handlers implementing {@link CacheableRestExceptionHandler} that declare
+     * the response as cacheable; such a response is serialized only once for each handler,
+     * locale and requested media types, and then just copied into the servlet response (without
+     * even creating the response entity).
+     * When the limit is reached, new responses are still processed, but not cached. Default is 0,
+     * i.e. disabled.
+     */
+    public void setResponseCacheLimit(int responseCacheLimit) {
+        this.responseCacheLimit = responseCacheLimit;
+    }
+
+    public boolean isUseResponseEntityWriter() {
+        return useResponseEntityWriter;
+    }
+
+    /**
+     * Whether to write responses directly using {@link ResponseEntityWriter} instead of
+     * {@link HttpEntityMethodProcessor}. The writer selects the message converter just once for
+     * each combination of the requested media types and body type (or even just once for each
+     * distinct Accept header, if the default {@code ContentNegotiationManager} is used), including
+     * the fallback to the {@link #setDefaultContentType(MediaType) defaultContentType}. When it
+     * can't find a suitable converter, the response is processed by
+     * {@code HttpEntityMethodProcessor} as usual. Default is <tt>false</tt>.
+     */
+    public void setUseResponseEntityWriter(boolean useResponseEntityWriter) {
+        this.useResponseEntityWriter = useResponseEntityWriter;
+    }
+
+    public ExceptionMetrics getExceptionMetrics() {
+        return exceptionMetrics;
+    }
+
+    /**
+     * The metrics to record resolved exceptions into, e.g.
+     * {@link cz.jirutka.spring.exhandler.metrics.SimpleExceptionMetrics SimpleExceptionMetrics}.
+     * Default is <tt>null</tt>, i.e. no metrics are recorded.
+     */
+    public void setExceptionMetrics(ExceptionMetrics exceptionMetrics) {
+        this.exceptionMetrics = exceptionMetrics;
+    }
+
+    public boolean isMatchCauses() {
+        return matchCauses;
+    }
+
+    /**
+     * Whether to handle a cause of the exception instead of the exception itself, when there's
+     * a more specific handler for the cause. This is useful for wrapper exceptions, like
+     * {@link java.lang.reflect.UndeclaredThrowableException UndeclaredThrowableException}, that
+     * would be otherwise handled by the handler for {@code Exception}. See
+     * {@link ExceptionHandlerRegistry#resolveHandledException(Exception)} for the precedence
+     * rules. Default is <tt>false</tt>.
+     */
+    public void setMatchCauses(boolean matchCauses) {
+        this.matchCauses = matchCauses;
+    }
+
+    public boolean isWarmUp() {
+        return warmUp;
+    }
+
+    /**
+     * Whether to {@link #warmUp() warm up} the error path in {@link #afterPropertiesSet()}.
+     * Default is <tt>false</tt>.
+     */
+    public void setWarmUp(boolean warmUp) {
+        this.warmUp = warmUp;
+    }
+
+    public List<Locale> getWarmUpLocales() {
+        return warmUpLocales;
+    }
+
+    /**
+     * The locales to {@link #warmUp() warm up} the error path for. Default is <tt>null</tt>,
+     * i.e. just the default locale of the JVM.
+     */
+    public void setWarmUpLocales(List<Locale> warmUpLocales) {
+        this.warmUpLocales = warmUpLocales;
+    }
+
+    public List<? extends DisposableBean> getOwnedResources() {
+        return ownedResources;
+    }
+
+    /**
+     * The resources used by the exception handlers that should be destroyed together with this
+     * resolver, see {@link #destroy()}. The builder sets the
+     * {@link RestHandlerExceptionResolverBuilder#asyncLogger(cz.jirutka.spring.exhandler.logging.AsyncExceptionLogger)
+     * asyncLogger} and {@link RestHandlerExceptionResolverBuilder#loggingPolicy(cz.jirutka.spring.exhandler.logging.ExceptionLoggingPolicy)
+     * loggingPolicy} here. Destroying of these must be idempotent, because they may be also
+     * Spring beans destroyed by the container.
+     */
+    public void setOwnedResources(List<? extends DisposableBean> ownedResources) {
+        Assert.notNull(ownedResources, "ownedResources must not be null");
+        this.ownedResources = ownedResources;
+    }
+
+    /**
+     * Returns an unmodifiable map of the registered exception handlers. Use
+     * {@link #addExceptionHandler(Class, RestExceptionHandler)},
+     * {@link #removeExceptionHandler(Class)} or {@link #setExceptionHandlers(Map)} to change them.
+     */
     public Map<Class<? extends Exception>, RestExceptionHandler> getExceptionHandlers() {
-        return handlers;
+        return handlerRegistry.asMap();
+    }
+
+    /**
+     * Replaces the registered exception handlers with a copy of the given map.
+     */
+    public synchronized void setExceptionHandlers(Map<Class<? extends Exception>, RestExceptionHandler> handlers) {
+        this.handlerRegistry = new ExceptionHandlerRegistry(handlers);
+    }
+
+    public ExceptionHandlerRegistry getExceptionHandlerRegistry() {
+        return handlerRegistry;
+    }
+
+    public synchronized void setExceptionHandlerRegistry(ExceptionHandlerRegistry handlerRegistry) {
+        Assert.notNull(handlerRegistry, "handlerRegistry must not be null");
+        this.handlerRegistry = handlerRegistry;
+    }
+
+    /**
+     * Registers the handler for the given exception type (replacing the existing one, if any).
+     * The registry is copied on write, so the requests being handled at the same time are not
+     * affected and don't have to wait.
+     */
+    public synchronized void addExceptionHandler(Class<? extends Exception> exceptionClass, RestExceptionHandler handler) {
+        this.handlerRegistry = handlerRegistry.withHandler(exceptionClass, handler);
     }
 
-    public void setExceptionHandlers(Map<Class<? extends Exception>, RestExceptionHandler> handlers) {
-        this.handlers = handlers;
+    /**
+     * Unregisters the handler for the given exception type, if any.
+     *
+     * @see #addExceptionHandler(Class, RestExceptionHandler)
+     */
+    public synchronized void removeExceptionHandler(Class<? extends Exception> exceptionClass) {
+        this.handlerRegistry = handlerRegistry.withoutHandler(exceptionClass);
     }
 
 
     //////// Inner classes ////////
 
     public static class NoExceptionHandlerFoundException extends RuntimeException {}
+
+    /**
+     * Resolves the media type negotiated upfront in {@link #processResponse(ResponseEntity,
+     * NativeWebRequest) processResponse()}, if there's any.
+     */
+    private static final class NegotiatedMediaTypeStrategy implements ContentNegotiationStrategy {
+
+        public List<MediaType> resolveMediaTypes(NativeWebRequest webRequest) {
+            MediaType mediaType = (MediaType) webRequest.getAttribute(NEGOTIATED_MEDIA_TYPE_ATTRIBUTE, SCOPE_REQUEST);
+
+            return mediaType != null
+                    ? Collections.singletonList(mediaType)
+                    : Collections.<MediaType>emptyList();
+        }
+    }
+
+    private static final class ResponseCacheKey {
+
+        private final RestExceptionHandler<?, ?> handler;
+        private final Locale locale;
+        /** The raw Accept header, or the list of resolved media types. */
+        private final Object mediaTypes;
+        private final int hashCode;
+
+        ResponseCacheKey(RestExceptionHandler<?, ?> handler, Locale locale, Object mediaTypes) {
+            this.handler = handler;
+            this.locale = locale;
+            this.mediaTypes = mediaTypes;
+            this.hashCode = ObjectUtils.nullSafeHashCode(new Object[]{
+                    System.identityHashCode(handler), locale, mediaTypes });
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            if (this == obj) {
+                return true;
+            }
+            if (!(obj instanceof ResponseCacheKey)) {
+                return false;
+            }
+            ResponseCacheKey other = (ResponseCacheKey) obj;
+
+            return hashCode == other.hashCode
+                    && handler == other.handler
+                    && ObjectUtils.nullSafeEquals(locale, other.locale)
+                    && ObjectUtils.nullSafeEquals(mediaTypes, other.mediaTypes);
+        }
+
+        @Override
+        public int hashCode() {
+            return hashCode;
+        }
+    }
 }
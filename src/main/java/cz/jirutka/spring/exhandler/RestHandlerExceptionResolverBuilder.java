@@ -18,19 +18,24 @@ package cz.jirutka.spring.exhandler;
 import cz.jirutka.spring.exhandler.handlers.*;
 import cz.jirutka.spring.exhandler.interpolators.MessageInterpolator;
 import cz.jirutka.spring.exhandler.interpolators.MessageInterpolatorAware;
+import cz.jirutka.spring.exhandler.logging.AsyncExceptionLogger;
+import cz.jirutka.spring.exhandler.logging.ExceptionLoggingPolicy;
+import cz.jirutka.spring.exhandler.logging.LogLevel;
+import cz.jirutka.spring.exhandler.metrics.ExceptionMetrics;
 import lombok.Setter;
 import lombok.experimental.Accessors;
 import org.springframework.beans.ConversionNotSupportedException;
 import org.springframework.beans.TypeMismatchException;
+import org.springframework.beans.factory.DisposableBean;
 import org.springframework.context.HierarchicalMessageSource;
 import org.springframework.context.MessageSource;
 import org.springframework.context.MessageSourceAware;
-import org.springframework.context.support.ReloadableResourceBundleMessageSource;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.MediaType;
 import org.springframework.http.converter.HttpMessageConverter;
 import org.springframework.http.converter.HttpMessageNotReadableException;
 import org.springframework.http.converter.HttpMessageNotWritableException;
+import org.springframework.util.Assert;
 import org.springframework.util.ClassUtils;
 import org.springframework.web.HttpMediaTypeNotAcceptableException;
 import org.springframework.web.HttpMediaTypeNotSupportedException;
@@ -43,8 +48,10 @@ import org.springframework.web.multipart.support.MissingServletRequestPartExcept
 import org.springframework.web.servlet.mvc.multiaction.NoSuchRequestHandlingMethodException;
 
 import javax.validation.ConstraintViolationException;
+import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
+import java.util.Locale;
 import java.util.Map;
 
 import static cz.jirutka.spring.exhandler.MapUtils.putAllIfAbsent;
@@ -59,6 +66,21 @@ public class RestHandlerExceptionResolverBuilder {
 
     public static final String DEFAULT_MESSAGES_BASENAME = "classpath:/cz/jirutka/spring/exhandler/messages";
 
+    private static final ClassLoader CLASS_LOADER = RestHandlerExceptionResolverBuilder.class.getClassLoader();
+
+    // the classpath is probed once, not on each build()
+
+    // this class does not exist in Spring 5
+    private static final boolean NO_SUCH_REQUEST_HANDLING_METHOD_EXCEPTION_PRESENT = ClassUtils.isPresent(
+            "org.springframework.web.servlet.mvc.multiaction.NoSuchRequestHandlingMethodException", CLASS_LOADER);
+
+    private static final boolean BEAN_VALIDATION_PRESENT = ClassUtils.isPresent(
+            "javax.validation.ConstraintViolationException", CLASS_LOADER);
+
+    // this class didn't exist before Spring 4.0
+    private static final Class<?> NO_HANDLER_FOUND_EXCEPTION_CLASS = loadClassIfPresent(
+            "org.springframework.web.servlet.NoHandlerFoundException");
+
     private final Map<Class, RestExceptionHandler> exceptionHandlers = new HashMap<>();
 
     @Setter(NONE) // to not conflict with overloaded setter
@@ -97,6 +119,102 @@ public class RestHandlerExceptionResolverBuilder {
      */
     private MessageSource messageSource;
 
+    /**
+     * The number of seconds to cache message templates resolved from the message source in all
+     * exception handlers extending {@link ErrorMessageRestExceptionHandler}. See
+     * {@link ErrorMessageRestExceptionHandler#setMessageCacheSeconds(int)}; default is -1, i.e.
+     * cache forever.
+     */
+    private Integer messageCacheSeconds;
+
+    /**
+     * The maximum number of errors to include in responses of the exception handlers extending
+     * {@link AbstractValidationExceptionHandler AbstractValidationExceptionHandler}, see
+     * {@link AbstractValidationExceptionHandler#setMaxErrors(int)}. Default is unlimited.
+     */
+    private Integer maxValidationErrors;
+
+    /**
+     * The maximum length of rejected values to include in responses of the exception handlers
+     * extending {@link AbstractValidationExceptionHandler AbstractValidationExceptionHandler},
+     * see {@link AbstractValidationExceptionHandler#setMaxRejectedValueLength(int)}.
+     * Default is unlimited.
+     */
+    private Integer maxRejectedValueLength;
+
+    /**
+     * Whether the exception handlers extending
+     * {@link AbstractValidationExceptionHandler AbstractValidationExceptionHandler} should
+     * create the errors lazily during serialization, see
+     * {@link AbstractValidationExceptionHandler#setStreamErrors(boolean)}. Default is
+     * <tt>false</tt>.
+     */
+    private Boolean streamValidationErrors;
+
+    /**
+     * The maximum number of serialized responses to cache, see
+     * {@link RestHandlerExceptionResolver#setResponseCacheLimit(int)}. Default is 0, i.e.
+     * disabled.
+     */
+    private int responseCacheLimit = 0;
+
+    /**
+     * Whether to write responses directly using
+     * {@link cz.jirutka.spring.exhandler.support.ResponseEntityWriter ResponseEntityWriter}, see
+     * {@link RestHandlerExceptionResolver#setUseResponseEntityWriter(boolean)}. Default is
+     * <tt>false</tt>.
+     */
+    private boolean useResponseEntityWriter = false;
+
+    /**
+     * The metrics to record resolved exceptions into, e.g.
+     * {@link cz.jirutka.spring.exhandler.metrics.SimpleExceptionMetrics SimpleExceptionMetrics}.
+     * Default is <tt>null</tt>, i.e. no metrics are recorded.
+     */
+    private ExceptionMetrics exceptionMetrics;
+
+    /**
+     * The policy that decides whether to log exceptions handled by the exception handlers
+     * extending {@link cz.jirutka.spring.exhandler.handlers.AbstractRestExceptionHandler
+     * AbstractRestExceptionHandler}, e.g.
+     * {@link cz.jirutka.spring.exhandler.logging.RateLimitingLoggingPolicy RateLimitingLoggingPolicy}.
+     * Default is <tt>null</tt>, i.e. all exceptions are logged.
+     */
+    private ExceptionLoggingPolicy loggingPolicy;
+
+    /**
+     * The logger to log exceptions handled by the exception handlers extending
+     * {@link cz.jirutka.spring.exhandler.handlers.AbstractRestExceptionHandler
+     * AbstractRestExceptionHandler} asynchronously in a background thread. It's destroyed
+     * together with the built resolver. Default is <tt>null</tt>, i.e. exceptions are logged
+     * synchronously.
+     */
+    private AsyncExceptionLogger asyncLogger;
+
+    /**
+     * Whether to handle a cause of the exception instead of the exception itself, when there's
+     * a more specific handler for the cause, see
+     * {@link RestHandlerExceptionResolver#setMatchCauses(boolean)}. Default is <tt>false</tt>.
+     */
+    private boolean matchCauses = false;
+
+    /**
+     * Whether to warm up the error path when the resolver is built, i.e. render a synthetic
+     * error response for each exception handler, see {@link RestHandlerExceptionResolver#warmUp()}.
+     * Default is <tt>false</tt>.
+     */
+    private boolean warmUp = false;
+
+    /**
+     * The locales to warm up the error path for, see
+     * {@link RestHandlerExceptionResolver#setWarmUpLocales(List)}. Default is just the default
+     * locale of the JVM.
+     */
+    private List<Locale> warmUpLocales;
+
+    @Setter(NONE)
+    private final Map<Class<? extends Exception>, LogLevel> logLevels = new HashMap<>();
+
     /**
      * Whether to register default exception handlers for Spring exceptions. These are registered
      * <i>before</i> the provided exception handlers, so you can overwrite any of the default
@@ -126,23 +244,24 @@ public class RestHandlerExceptionResolverBuilder {
             }
         }
 
+        // the configuration is copied, so the lazily created handlers aren't affected by any
+        // later modification of this builder
+        HandlerInitializer initializer = new HandlerInitializer(this);
+
         if (withDefaultHandlers) {
             // add default handlers
-            putAllIfAbsent(exceptionHandlers, getDefaultHandlers());
+            putAllIfAbsent(exceptionHandlers, getDefaultHandlers(initializer));
         }
 
-        // initialize handlers
-        for (RestExceptionHandler handler : exceptionHandlers.values()) {
-            if (messageSource != null && handler instanceof MessageSourceAware) {
-                ((MessageSourceAware) handler).setMessageSource(messageSource);
-            }
-            if (messageInterpolator != null && handler instanceof MessageInterpolatorAware) {
-                ((MessageInterpolatorAware) handler).setMessageInterpolator(messageInterpolator);
+        // initialize handlers; the default ones are initialized when created
+        for (Map.Entry<Class, RestExceptionHandler> entry : exceptionHandlers.entrySet()) {
+            if (!(entry.getValue() instanceof LazyRestExceptionHandler)) {
+                initializer.initialize(entry.getKey(), entry.getValue());
             }
         }
 
         RestHandlerExceptionResolver resolver = new RestHandlerExceptionResolver();
-        resolver.setExceptionHandlers((Map) exceptionHandlers);
+        resolver.setExceptionHandlerRegistry(new ExceptionHandlerRegistry((Map) exceptionHandlers));
 
         if (httpMessageConverters != null) {
             resolver.setMessageConverters(httpMessageConverters);
@@ -153,6 +272,13 @@ public class RestHandlerExceptionResolverBuilder {
         if (defaultContentType != null) {
             resolver.setDefaultContentType(defaultContentType);
         }
+        resolver.setResponseCacheLimit(responseCacheLimit);
+        resolver.setUseResponseEntityWriter(useResponseEntityWriter);
+        resolver.setExceptionMetrics(exceptionMetrics);
+        resolver.setMatchCauses(matchCauses);
+        resolver.setWarmUp(warmUp);
+        resolver.setWarmUpLocales(warmUpLocales);
+        resolver.setOwnedResources(getDisposableResources());
         resolver.afterPropertiesSet();
 
         return resolver;
@@ -201,6 +327,24 @@ public class RestHandlerExceptionResolverBuilder {
         return addHandler(exceptionHandler.getExceptionClass(), exceptionHandler);
     }
 
+    /**
+     * Registers the given exception handler for all exceptions implementing the specified
+     * interface, e.g. a marker interface. The handler registered for an exception class (or its
+     * nearest superclass) wins over the one registered for an interface implemented by that
+     * class, see {@link ExceptionHandlerRegistry} for the precedence rules.
+     *
+     * @param interfaceType The interface implemented by the exceptions to handle.
+     * @param exceptionHandler An instance of the exception handler.
+     */
+    public RestHandlerExceptionResolverBuilder addInterfaceHandler(
+            Class<?> interfaceType, RestExceptionHandler<Exception, ?> exceptionHandler) {
+
+        Assert.isTrue(interfaceType.isInterface(), "interfaceType must be an interface");
+
+        exceptionHandlers.put(interfaceType, exceptionHandler);
+        return this;
+    }
+
     /**
      * Registers {@link ErrorMessageRestExceptionHandler} for the specified exception type.
      * This handler will be also used for all the exception subtypes, when no more specific mapping
@@ -215,6 +359,20 @@ public class RestHandlerExceptionResolverBuilder {
         return addHandler(new ErrorMessageRestExceptionHandler<>(exceptionClass, status));
     }
 
+    /**
+     * Overrides the level to log exceptions handled by the handler registered for the specified
+     * exception type (including the default handlers), see
+     * {@link AbstractRestExceptionHandler#setLogLevel(LogLevel)}. For example, you can disable
+     * logging of 404 Not Found by <tt>logLevel(NoHandlerFoundException.class, LogLevel.OFF)</tt>.
+     *
+     * @param exceptionClass The exception type the handler is registered for.
+     * @param level The level to log on.
+     */
+    public RestHandlerExceptionResolverBuilder logLevel(Class<? extends Exception> exceptionClass, LogLevel level) {
+        logLevels.put(exceptionClass, level);
+        return this;
+    }
+
 
     HierarchicalMessageSource resolveRootMessageSource(MessageSource messageSource) {
 
@@ -228,56 +386,177 @@ public class RestHandlerExceptionResolverBuilder {
         }
     }
 
-    private Map<Class, RestExceptionHandler> getDefaultHandlers() {
+    /**
+     * Returns the default handlers; they are created (and initialized) on the first use.
+     */
+    private Map<Class, RestExceptionHandler> getDefaultHandlers(final HandlerInitializer initializer) {
 
         Map<Class, RestExceptionHandler> map = new HashMap<>();
 
-        // this class does not exist in Spring 5
-        if (ClassUtils.isPresent(
-            "org.springframework.web.servlet.mvc.multiaction.NoSuchRequestHandlingMethodException",
-            getClass().getClassLoader())
-        ) {
-            map.put( NoSuchRequestHandlingMethodException.class, new NoSuchRequestHandlingMethodExceptionHandler() );
+        if (NO_SUCH_REQUEST_HANDLING_METHOD_EXCEPTION_PRESENT) {
+            map.put( NoSuchRequestHandlingMethodException.class, new LazyRestExceptionHandler() {
+                protected RestExceptionHandler createHandler() {
+                    return initializer.initialize(NoSuchRequestHandlingMethodException.class,
+                            new NoSuchRequestHandlingMethodExceptionHandler());
+                }
+            });
         }
-        map.put( HttpRequestMethodNotSupportedException.class, new HttpRequestMethodNotSupportedExceptionHandler() );
-        map.put( HttpMediaTypeNotSupportedException.class, new HttpMediaTypeNotSupportedExceptionHandler() );
-        map.put( MethodArgumentNotValidException.class, new MethodArgumentNotValidExceptionHandler() );
-
-        if (ClassUtils.isPresent("javax.validation.ConstraintViolationException", getClass().getClassLoader())) {
-            map.put( ConstraintViolationException.class, new ConstraintViolationExceptionHandler() );
+        map.put( HttpRequestMethodNotSupportedException.class, new LazyRestExceptionHandler() {
+            protected RestExceptionHandler createHandler() {
+                return initializer.initialize(HttpRequestMethodNotSupportedException.class,
+                        new HttpRequestMethodNotSupportedExceptionHandler());
+            }
+        });
+        map.put( HttpMediaTypeNotSupportedException.class, new LazyRestExceptionHandler() {
+            protected RestExceptionHandler createHandler() {
+                return initializer.initialize(HttpMediaTypeNotSupportedException.class,
+                        new HttpMediaTypeNotSupportedExceptionHandler());
+            }
+        });
+        map.put( MethodArgumentNotValidException.class, new LazyRestExceptionHandler() {
+            protected RestExceptionHandler createHandler() {
+                return initializer.initialize(MethodArgumentNotValidException.class,
+                        new MethodArgumentNotValidExceptionHandler());
+            }
+        });
+        if (BEAN_VALIDATION_PRESENT) {
+            map.put( ConstraintViolationException.class, new LazyRestExceptionHandler() {
+                protected RestExceptionHandler createHandler() {
+                    return initializer.initialize(ConstraintViolationException.class,
+                            new ConstraintViolationExceptionHandler());
+                }
+            });
         }
 
-        addHandlerTo( map, HttpMediaTypeNotAcceptableException.class, NOT_ACCEPTABLE );
-        addHandlerTo( map, MissingServletRequestParameterException.class, BAD_REQUEST );
-        addHandlerTo( map, ServletRequestBindingException.class, BAD_REQUEST );
-        addHandlerTo( map, ConversionNotSupportedException.class, INTERNAL_SERVER_ERROR );
-        addHandlerTo( map, TypeMismatchException.class, BAD_REQUEST );
-        addHandlerTo( map, HttpMessageNotReadableException.class, UNPROCESSABLE_ENTITY );
-        addHandlerTo( map, HttpMessageNotWritableException.class, INTERNAL_SERVER_ERROR );
-        addHandlerTo( map, MissingServletRequestPartException.class, BAD_REQUEST );
-        addHandlerTo(map, Exception.class, INTERNAL_SERVER_ERROR);
-
-        // this class didn't exist before Spring 4.0
-        try {
-            Class clazz = Class.forName("org.springframework.web.servlet.NoHandlerFoundException");
-            addHandlerTo(map, clazz, NOT_FOUND);
-        } catch (ClassNotFoundException ex) {
-            // ignore
+        addHandlerTo( map, HttpMediaTypeNotAcceptableException.class, NOT_ACCEPTABLE, initializer );
+        addHandlerTo( map, MissingServletRequestParameterException.class, BAD_REQUEST, initializer );
+        addHandlerTo( map, ServletRequestBindingException.class, BAD_REQUEST, initializer );
+        addHandlerTo( map, ConversionNotSupportedException.class, INTERNAL_SERVER_ERROR, initializer );
+        addHandlerTo( map, TypeMismatchException.class, BAD_REQUEST, initializer );
+        addHandlerTo( map, HttpMessageNotReadableException.class, UNPROCESSABLE_ENTITY, initializer );
+        addHandlerTo( map, HttpMessageNotWritableException.class, INTERNAL_SERVER_ERROR, initializer );
+        addHandlerTo( map, MissingServletRequestPartException.class, BAD_REQUEST, initializer );
+        addHandlerTo( map, Exception.class, INTERNAL_SERVER_ERROR, initializer );
+
+        if (NO_HANDLER_FOUND_EXCEPTION_CLASS != null) {
+            addHandlerTo( map, NO_HANDLER_FOUND_EXCEPTION_CLASS, NOT_FOUND, initializer );
         }
         return map;
     }
 
-    private void addHandlerTo(Map<Class, RestExceptionHandler> map, Class exceptionClass, HttpStatus status) {
-        map.put(exceptionClass, new ErrorMessageRestExceptionHandler(exceptionClass, status));
+    private void addHandlerTo(Map<Class, RestExceptionHandler> map, final Class exceptionClass,
+                              final HttpStatus status, final HandlerInitializer initializer) {
+
+        map.put(exceptionClass, new LazyRestExceptionHandler() {
+            protected RestExceptionHandler createHandler() {
+                return initializer.initialize(exceptionClass,
+                        new ErrorMessageRestExceptionHandler(exceptionClass, status));
+            }
+        });
+    }
+
+    private List<DisposableBean> getDisposableResources() {
+
+        List<DisposableBean> resources = new ArrayList<>(2);
+        if (asyncLogger != null) {
+            resources.add(asyncLogger);
+        }
+        if (loggingPolicy instanceof DisposableBean) {
+            resources.add((DisposableBean) loggingPolicy);
+        }
+        return resources;
     }
 
     private MessageSource createDefaultMessageSource() {
 
-        ReloadableResourceBundleMessageSource messages = new ReloadableResourceBundleMessageSource();
-        messages.setBasename(DEFAULT_MESSAGES_BASENAME);
-        messages.setDefaultEncoding("UTF-8");
-        messages.setFallbackToSystemLocale(false);
+        // the root messages are compiled in, just the localized ones are loaded
+        return DefaultMessages.createMessageSource();
+    }
+
+    private static Class<?> loadClassIfPresent(String className) {
+        try {
+            return ClassUtils.forName(className, CLASS_LOADER);
+        } catch (ClassNotFoundException | LinkageError ex) {
+            return null;
+        }
+    }
 
-        return messages;
+
+    //////// Inner classes ////////
+
+    /**
+     * A snapshot of the builder's configuration that is applied to the exception handlers.
+     */
+    private static final class HandlerInitializer {
+
+        private final MessageSource messageSource;
+        private final MessageInterpolator messageInterpolator;
+        private final Integer messageCacheSeconds;
+        private final Integer maxValidationErrors;
+        private final Integer maxRejectedValueLength;
+        private final Boolean streamValidationErrors;
+        private final ExceptionLoggingPolicy loggingPolicy;
+        private final AsyncExceptionLogger asyncLogger;
+        private final Map<Class<? extends Exception>, LogLevel> logLevels;
+
+        HandlerInitializer(RestHandlerExceptionResolverBuilder builder) {
+            this.messageSource = builder.messageSource;
+            this.messageInterpolator = builder.messageInterpolator;
+            this.messageCacheSeconds = builder.messageCacheSeconds;
+            this.maxValidationErrors = builder.maxValidationErrors;
+            this.maxRejectedValueLength = builder.maxRejectedValueLength;
+            this.streamValidationErrors = builder.streamValidationErrors;
+            this.loggingPolicy = builder.loggingPolicy;
+            this.asyncLogger = builder.asyncLogger;
+            this.logLevels = new HashMap<>(builder.logLevels);
+        }
+
+        /**
+         * Applies the configuration to the given handler registered for the given exception type.
+         *
+         * @return The given handler.
+         */
+        RestExceptionHandler initialize(Class exceptionClass, RestExceptionHandler handler) {
+
+            if (messageSource != null && handler instanceof MessageSourceAware) {
+                ((MessageSourceAware) handler).setMessageSource(messageSource);
+            }
+            if (messageInterpolator != null && handler instanceof MessageInterpolatorAware) {
+                ((MessageInterpolatorAware) handler).setMessageInterpolator(messageInterpolator);
+            }
+            if (messageCacheSeconds != null && handler instanceof ErrorMessageRestExceptionHandler) {
+                ((ErrorMessageRestExceptionHandler) handler).setMessageCacheSeconds(messageCacheSeconds);
+            }
+            if (handler instanceof AbstractValidationExceptionHandler) {
+                configureValidationHandler((AbstractValidationExceptionHandler) handler);
+            }
+            if (handler instanceof AbstractRestExceptionHandler) {
+                AbstractRestExceptionHandler restHandler = (AbstractRestExceptionHandler) handler;
+
+                if (loggingPolicy != null) {
+                    restHandler.setLoggingPolicy(loggingPolicy);
+                }
+                if (asyncLogger != null) {
+                    restHandler.setAsyncLogger(asyncLogger);
+                }
+                if (logLevels.containsKey(exceptionClass)) {
+                    restHandler.setLogLevel(logLevels.get(exceptionClass));
+                }
+            }
+            return handler;
+        }
+
+        private void configureValidationHandler(AbstractValidationExceptionHandler handler) {
+
+            if (maxValidationErrors != null) {
+                handler.setMaxErrors(maxValidationErrors);
+            }
+            if (maxRejectedValueLength != null) {
+                handler.setMaxRejectedValueLength(maxRejectedValueLength);
+            }
+            if (streamValidationErrors != null) {
+                handler.setStreamErrors(streamValidationErrors);
+            }
+        }
     }
 }
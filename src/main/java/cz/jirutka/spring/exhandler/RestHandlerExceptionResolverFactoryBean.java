@@ -17,6 +17,10 @@ package cz.jirutka.spring.exhandler;
 
 import cz.jirutka.spring.exhandler.handlers.RestExceptionHandler;
 import cz.jirutka.spring.exhandler.interpolators.MessageInterpolator;
+import cz.jirutka.spring.exhandler.logging.AsyncExceptionLogger;
+import cz.jirutka.spring.exhandler.logging.ExceptionLoggingPolicy;
+import cz.jirutka.spring.exhandler.logging.LogLevel;
+import cz.jirutka.spring.exhandler.metrics.ExceptionMetrics;
 import lombok.Setter;
 import org.springframework.beans.factory.FactoryBean;
 import org.springframework.context.MessageSource;
@@ -26,6 +30,7 @@ import org.springframework.util.Assert;
 import org.springframework.web.accept.ContentNegotiationManager;
 
 import java.util.List;
+import java.util.Locale;
 import java.util.Map;
 
 import static java.util.Collections.emptyMap;
@@ -55,7 +60,7 @@ public class RestHandlerExceptionResolverFactoryBean implements FactoryBean<Rest
      * ErrorMessageRestExceptionHandler}) and/or an instance of the {@link RestExceptionHandler}.
      *
      * <p>Each handler is also used for all the exception subtypes, when no more specific mapping
-     * is found.</p>
+     * is found. The key may be also an interface implemented by the exceptions to handle.</p>
      *
      * <p><b>Example:</b>
      * <pre>{@code
@@ -96,6 +101,105 @@ public class RestHandlerExceptionResolverFactoryBean implements FactoryBean<Rest
      */
     private MessageSource messageSource;
 
+    /**
+     * The number of seconds to cache message templates resolved from the message source in all
+     * exception handlers extending
+     * {@link cz.jirutka.spring.exhandler.handlers.ErrorMessageRestExceptionHandler}. Default is
+     * -1, i.e. cache forever. Set it according to the {@code cacheSeconds} of your message
+     * source if you reload messages at runtime.
+     */
+    private Integer messageCacheSeconds;
+
+    /**
+     * The maximum number of errors to include in responses of the exception handlers extending
+     * {@link cz.jirutka.spring.exhandler.handlers.AbstractValidationExceptionHandler AbstractValidationExceptionHandler}, see
+     * {@link cz.jirutka.spring.exhandler.handlers.AbstractValidationExceptionHandler#setMaxErrors(int)}. Default is unlimited.
+     */
+    private Integer maxValidationErrors;
+
+    /**
+     * The maximum length of rejected values to include in responses of the exception handlers
+     * extending {@link cz.jirutka.spring.exhandler.handlers.AbstractValidationExceptionHandler AbstractValidationExceptionHandler},
+     * see {@link cz.jirutka.spring.exhandler.handlers.AbstractValidationExceptionHandler#setMaxRejectedValueLength(int)}.
+     * Default is unlimited.
+     */
+    private Integer maxRejectedValueLength;
+
+    /**
+     * Whether the exception handlers extending
+     * {@link cz.jirutka.spring.exhandler.handlers.AbstractValidationExceptionHandler AbstractValidationExceptionHandler} should
+     * create the errors lazily during serialization, see
+     * {@link cz.jirutka.spring.exhandler.handlers.AbstractValidationExceptionHandler#setStreamErrors(boolean)}. Default is
+     * <tt>false</tt>.
+     */
+    private Boolean streamValidationErrors;
+
+    /**
+     * The maximum number of serialized responses to cache, see
+     * {@link RestHandlerExceptionResolver#setResponseCacheLimit(int)}. Default is 0, i.e.
+     * disabled.
+     */
+    private int responseCacheLimit = 0;
+
+    /**
+     * Whether to write responses directly using
+     * {@link cz.jirutka.spring.exhandler.support.ResponseEntityWriter ResponseEntityWriter}, see
+     * {@link RestHandlerExceptionResolver#setUseResponseEntityWriter(boolean)}. Default is
+     * <tt>false</tt>.
+     */
+    private boolean useResponseEntityWriter = false;
+
+    /**
+     * The metrics to record resolved exceptions into, e.g.
+     * {@link cz.jirutka.spring.exhandler.metrics.SimpleExceptionMetrics SimpleExceptionMetrics}.
+     * Default is <tt>null</tt>, i.e. no metrics are recorded.
+     */
+    private ExceptionMetrics exceptionMetrics;
+
+    /**
+     * The policy that decides whether to log exceptions handled by the exception handlers
+     * extending {@link cz.jirutka.spring.exhandler.handlers.AbstractRestExceptionHandler
+     * AbstractRestExceptionHandler}, e.g.
+     * {@link cz.jirutka.spring.exhandler.logging.RateLimitingLoggingPolicy RateLimitingLoggingPolicy}.
+     * Default is <tt>null</tt>, i.e. all exceptions are logged.
+     */
+    private ExceptionLoggingPolicy loggingPolicy;
+
+    /**
+     * The logger to log exceptions handled by the exception handlers extending
+     * {@link cz.jirutka.spring.exhandler.handlers.AbstractRestExceptionHandler
+     * AbstractRestExceptionHandler} asynchronously in a background thread. Default is
+     * <tt>null</tt>, i.e. exceptions are logged synchronously.
+     */
+    private AsyncExceptionLogger asyncLogger;
+
+    /**
+     * Whether to handle a cause of the exception instead of the exception itself, when there's
+     * a more specific handler for the cause, see
+     * {@link RestHandlerExceptionResolver#setMatchCauses(boolean)}. Default is <tt>false</tt>.
+     */
+    private boolean matchCauses = false;
+
+    /**
+     * Whether to warm up the error path when the resolver is built, i.e. render a synthetic
+     * error response for each exception handler, see {@link RestHandlerExceptionResolver#warmUp()}.
+     * Default is <tt>false</tt>.
+     */
+    private boolean warmUp = false;
+
+    /**
+     * The locales to warm up the error path for, see
+     * {@link RestHandlerExceptionResolver#setWarmUpLocales(List)}. Default is just the default
+     * locale of the JVM.
+     */
+    private List<Locale> warmUpLocales;
+
+    /**
+     * Overrides the levels to log exceptions handled by the handlers registered for the given
+     * exception types, see {@link RestHandlerExceptionResolverBuilder#logLevel(Class, LogLevel)}.
+     */
+    private Map<Class<? extends Exception>, LogLevel> logLevels = emptyMap();
+
     /**
      * Whether to register default exception handlers for Spring exceptions. These are registered
      * <i>before</i> the provided exception handlers, so you can overwrite any of the default
@@ -117,9 +221,21 @@ public class RestHandlerExceptionResolverFactoryBean implements FactoryBean<Rest
         RestHandlerExceptionResolverBuilder builder = createBuilder()
                 .messageSource(messageSource)
                 .messageInterpolator(messageInterpolator)
+                .messageCacheSeconds(messageCacheSeconds)
                 .httpMessageConverters(httpMessageConverters)
                 .contentNegotiationManager(contentNegotiationManager)
                 .defaultContentType(defaultContentType)
+                .maxValidationErrors(maxValidationErrors)
+                .maxRejectedValueLength(maxRejectedValueLength)
+                .streamValidationErrors(streamValidationErrors)
+                .responseCacheLimit(responseCacheLimit)
+                .useResponseEntityWriter(useResponseEntityWriter)
+                .exceptionMetrics(exceptionMetrics)
+                .loggingPolicy(loggingPolicy)
+                .asyncLogger(asyncLogger)
+                .matchCauses(matchCauses)
+                .warmUp(warmUp)
+                .warmUpLocales(warmUpLocales)
                 .withDefaultHandlers(withDefaultHandlers)
                 .withDefaultMessageSource(withDefaultMessageSource);
 
@@ -134,6 +250,9 @@ public class RestHandlerExceptionResolverFactoryBean implements FactoryBean<Rest
                 builder.addErrorMessageHandler(exceptionClass, parseHttpStatus(value));
             }
         }
+        for (Map.Entry<Class<? extends Exception>, LogLevel> entry : logLevels.entrySet()) {
+            builder.logLevel(entry.getKey(), entry.getValue());
+        }
 
         return builder.build();
     }
@@ -15,10 +15,12 @@
  */
 package cz.jirutka.spring.exhandler.handlers;
 
+import cz.jirutka.spring.exhandler.logging.AsyncExceptionLogger;
+import cz.jirutka.spring.exhandler.logging.ExceptionLogRecord;
+import cz.jirutka.spring.exhandler.logging.ExceptionLoggingPolicy;
+import cz.jirutka.spring.exhandler.logging.LogLevel;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
-import org.slf4j.Marker;
-import org.slf4j.MarkerFactory;
 import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
@@ -37,6 +39,12 @@ public abstract class AbstractRestExceptionHandler<E extends Exception, T> imple
     private final Class<E> exceptionClass;
     private final HttpStatus status;
 
+    private ExceptionLoggingPolicy loggingPolicy;
+
+    private AsyncExceptionLogger asyncLogger;
+
+    private LogLevel logLevel;
+
 
     /**
      * This constructor determines the exception class from the generic class parameter {@code E}.
@@ -66,6 +74,25 @@ public abstract class AbstractRestExceptionHandler<E extends Exception, T> imple
 
         logException(ex, req);
 
+        return createResponse(ex, req);
+    }
+
+    /**
+     * Does everything as {@link #handleException(Exception, HttpServletRequest) handleException},
+     * except creating the response, i.e. just logs the exception. It's used when the response
+     * has been already created and serialized before, see {@link CacheableRestExceptionHandler}.
+     */
+    public void handleExceptionWithoutResponse(E ex, HttpServletRequest req) {
+        logException(ex, req);
+    }
+
+    /**
+     * Creates the response entity with the {@link #createBody(Exception, HttpServletRequest)
+     * body}, {@link #createHeaders(Exception, HttpServletRequest) headers} and status, without
+     * logging the exception.
+     */
+    public ResponseEntity<T> createResponse(E ex, HttpServletRequest req) {
+
         T body = createBody(ex, req);
         HttpHeaders headers = createHeaders(ex, req);
 
@@ -80,6 +107,44 @@ public abstract class AbstractRestExceptionHandler<E extends Exception, T> imple
         return status;
     }
 
+    public ExceptionLoggingPolicy getLoggingPolicy() {
+        return loggingPolicy;
+    }
+
+    /**
+     * The policy that decides whether to log the handled exception, e.g.
+     * {@link cz.jirutka.spring.exhandler.logging.RateLimitingLoggingPolicy RateLimitingLoggingPolicy}.
+     * Default is <tt>null</tt>, i.e. all exceptions are logged.
+     */
+    public void setLoggingPolicy(ExceptionLoggingPolicy loggingPolicy) {
+        this.loggingPolicy = loggingPolicy;
+    }
+
+    public LogLevel getLogLevel() {
+        return logLevel;
+    }
+
+    /**
+     * The level to log the handled exceptions on; {@link LogLevel#OFF} disables logging
+     * completely. Default is <tt>null</tt>, i.e. determined by the status (see
+     * {@link #logException(Exception, HttpServletRequest)}).
+     */
+    public void setLogLevel(LogLevel logLevel) {
+        this.logLevel = logLevel;
+    }
+
+    public AsyncExceptionLogger getAsyncLogger() {
+        return asyncLogger;
+    }
+
+    /**
+     * The logger to log exceptions asynchronously in a background thread. Default is
+     * <tt>null</tt>, i.e. exceptions are logged synchronously.
+     */
+    public void setAsyncLogger(AsyncExceptionLogger asyncLogger) {
+        this.asyncLogger = asyncLogger;
+    }
+
 
     protected HttpHeaders createHeaders(E ex, HttpServletRequest req) {
         return new HttpHeaders();
@@ -87,32 +152,52 @@ public abstract class AbstractRestExceptionHandler<E extends Exception, T> imple
 
     /**
      * Logs the exception; on ERROR level when status is 5xx, otherwise on INFO level without stack
-     * trace, or DEBUG level with stack trace. The logger name is
-     * {@code cz.jirutka.spring.exhandler.handlers.RestExceptionHandler}.
+     * trace, or DEBUG level with stack trace. If the {@link #setLogLevel(LogLevel) logLevel} is
+     * set, it's used instead (with stack trace on ERROR, DEBUG and TRACE level). The logger name
+     * is {@code cz.jirutka.spring.exhandler.handlers.RestExceptionHandler}. If the
+     * {@link #setLoggingPolicy(ExceptionLoggingPolicy) loggingPolicy} is set, it may suppress
+     * the message. If the {@link #setAsyncLogger(AsyncExceptionLogger) asyncLogger} is set,
+     * the message is formatted and logged in its background thread.
+     *
+     * <p>Nothing is allocated when the level is not enabled.</p>
      *
      * @param ex The exception to log.
      * @param req The current web request.
      */
     protected void logException(E ex, HttpServletRequest req) {
 
-        if (LOG.isErrorEnabled() && getStatus().value() >= 500 || LOG.isInfoEnabled()) {
-            Marker marker = MarkerFactory.getMarker(ex.getClass().getName());
+        LogLevel level = resolveLogLevel();
+        if (!level.isEnabled(LOG)) {
+            return;
+        }
+        int suppressed = loggingPolicy != null ? loggingPolicy.decide(ex, getStatus()) : 0;
+        if (suppressed == ExceptionLoggingPolicy.SUPPRESS) {
+            return;
+        }
+        boolean withStackTrace = level == LogLevel.ERROR || level == LogLevel.DEBUG || level == LogLevel.TRACE;
+
+        if (asyncLogger != null) {
+            asyncLogger.submit(new ExceptionLogRecord(LOG, level, ex, withStackTrace,
+                    req.getMethod(), req.getRequestURI(), req.getQueryString(), getStatus(), suppressed));
+        } else {
+            ExceptionLogRecord.emit(LOG, level, ex, withStackTrace,
+                    req.getMethod(), req.getRequestURI(), req.getQueryString(), getStatus(), suppressed);
+        }
+    }
+
+    private LogLevel resolveLogLevel() {
 
-            String uri = req.getRequestURI();
-            if (req.getQueryString() != null) {
-                uri += '?' + req.getQueryString();
-            }
-            String msg = String.format("%s %s ~> %s", req.getMethod(), uri, getStatus());
+        if (logLevel != null) {
+            return logLevel;
 
-            if (getStatus().value() >= 500) {
-                LOG.error(marker, msg, ex);
+        } else if (getStatus().value() >= 500) {
+            return LogLevel.ERROR;
 
-            } else if (LOG.isDebugEnabled()) {
-                LOG.debug(marker, msg, ex);
+        } else if (LOG.isDebugEnabled()) {
+            return LogLevel.DEBUG;
 
-            } else {
-                LOG.info(marker, msg);
-            }
+        } else {
+            return LogLevel.INFO;
         }
     }
 
@@ -0,0 +1,233 @@
+/*
+ * Copyright 2016 Jakub Jirutka <jakub@jirutka.cz>.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package cz.jirutka.spring.exhandler.handlers;
+
+import cz.jirutka.spring.exhandler.messages.ValidationErrorMessage;
+import org.springframework.http.HttpStatus;
+
+import javax.servlet.http.HttpServletRequest;
+import java.util.AbstractSequentialList;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.List;
+import java.util.ListIterator;
+import java.util.NoSuchElementException;
+
+/**
+ * The base class for handlers of validation exceptions that produce {@link ValidationErrorMessage}
+ * with an error for each of the error sources (e.g. constraint violations) of the exception.
+ *
+ * <p>The number of errors and length of the rejected values may be limited, see
+ * {@link #setMaxErrors(int)} and {@link #setMaxRejectedValueLength(int)}.</p>
+ *
+ * @param <E> Type of the handled exception.
+ * @param <S> Type of the error source.
+ */
+public abstract class AbstractValidationExceptionHandler<E extends Exception, S>
+        extends ErrorMessageRestExceptionHandler<E> {
+
+    /**
+     * Appended to the truncated rejected values.
+     */
+    public static final String TRUNCATION_MARKER = "...";
+
+    private int maxErrors = -1;
+
+    private int maxRejectedValueLength = -1;
+
+    private boolean streamErrors = false;
+
+
+    /**
+     * @see AbstractRestExceptionHandler#AbstractRestExceptionHandler(HttpStatus) AbstractRestExceptionHandler
+     */
+    protected AbstractValidationExceptionHandler(HttpStatus status) {
+        super(status);
+    }
+
+    /**
+     * @see ErrorMessageRestExceptionHandler#ErrorMessageRestExceptionHandler(Class, HttpStatus) ErrorMessageRestExceptionHandler
+     */
+    protected AbstractValidationExceptionHandler(Class<E> exceptionClass, HttpStatus status) {
+        super(exceptionClass, status);
+    }
+
+
+    ////// Abstract methods //////
+
+    /**
+     * Returns the error sources of the exception; each of them is converted into one
+     * {@link ValidationErrorMessage.Error Error}.
+     */
+    protected abstract Collection<? extends S> getErrorSources(E ex);
+
+    protected abstract ValidationErrorMessage.Error createError(S source);
+
+
+    ////// Template methods //////
+
+    @Override
+    public ValidationErrorMessage createBody(E ex, HttpServletRequest req) {
+
+        ValidationErrorMessage msg = populateBody(new ValidationErrorMessage(getBodyPrototype()), ex, req);
+
+        Collection<? extends S> sources = getErrorSources(ex);
+        int total = sources.size();
+        int size = maxErrors >= 0 ? Math.min(maxErrors, total) : total;
+
+        List<ValidationErrorMessage.Error> errors = new LazyErrorsList(sources, size);
+        msg.setErrors(streamErrors ? errors : new ArrayList<>(errors));
+
+        if (size < total) {
+            msg.setTotalErrors(total);
+        }
+        return msg;
+    }
+
+    /**
+     * Truncates the given rejected value to {@link #setMaxRejectedValueLength(int)
+     * maxRejectedValueLength} characters (plus the {@link #TRUNCATION_MARKER}), if it's
+     * a {@link CharSequence}. Other values are returned as is.
+     */
+    protected Object truncateRejectedValue(Object value) {
+
+        if (maxRejectedValueLength >= 0 && value instanceof CharSequence
+                && ((CharSequence) value).length() > maxRejectedValueLength) {
+            return ((CharSequence) value).subSequence(0, maxRejectedValueLength) + TRUNCATION_MARKER;
+        }
+        return value;
+    }
+
+
+    ////// Accessors //////
+
+    public int getMaxErrors() {
+        return maxErrors;
+    }
+
+    /**
+     * Sets the maximum number of errors to include in the response; the total number of errors
+     * is then provided in {@link ValidationErrorMessage#getTotalErrors() totalErrors}. Default
+     * is -1, i.e. unlimited.
+     */
+    public void setMaxErrors(int maxErrors) {
+        this.maxErrors = maxErrors;
+    }
+
+    public int getMaxRejectedValueLength() {
+        return maxRejectedValueLength;
+    }
+
+    /**
+     * Sets the maximum length of the rejected values (strings) to include in the response;
+     * longer values are truncated and suffixed with the {@link #TRUNCATION_MARKER}. Default is
+     * -1, i.e. unlimited.
+     */
+    public void setMaxRejectedValueLength(int maxRejectedValueLength) {
+        this.maxRejectedValueLength = maxRejectedValueLength;
+    }
+
+    public boolean isStreamErrors() {
+        return streamErrors;
+    }
+
+    /**
+     * Whether to create the errors lazily while the response is being serialized, instead of
+     * creating all of them upfront. The {@link ValidationErrorMessage#getErrors() errors} list
+     * is then a read-only view of the exception, so the errors are never held in memory all at
+     * once. Note that the error sources are then converted (e.g. the rejected values) during
+     * serialization, i.e. after the response status has been sent. Default is <tt>false</tt>.
+     */
+    public void setStreamErrors(boolean streamErrors) {
+        this.streamErrors = streamErrors;
+    }
+
+
+    ////// Inner classes //////
+
+    /**
+     * Read-only list of the first {@code size} error sources converted into errors on iteration.
+     * It's a sequential list, so serializers iterate it instead of accessing it by index.
+     */
+    private final class LazyErrorsList extends AbstractSequentialList<ValidationErrorMessage.Error> {
+
+        private final Collection<? extends S> sources;
+        private final int size;
+
+        LazyErrorsList(Collection<? extends S> sources, int size) {
+            this.sources = sources;
+            this.size = size;
+        }
+
+        @Override
+        public int size() {
+            return size;
+        }
+
+        @Override
+        public ListIterator<ValidationErrorMessage.Error> listIterator(final int index) {
+
+            final Iterator<? extends S> it = sources.iterator();
+            for (int i = 0; i < index; i++) {
+                it.next();
+            }
+            return new ListIterator<ValidationErrorMessage.Error>() {
+                int cursor = index;
+
+                public boolean hasNext() {
+                    return cursor < size;
+                }
+
+                public ValidationErrorMessage.Error next() {
+                    if (!hasNext()) {
+                        throw new NoSuchElementException();
+                    }
+                    cursor++;
+                    return createError(it.next());
+                }
+
+                public int nextIndex() {
+                    return cursor;
+                }
+
+                public int previousIndex() {
+                    return cursor - 1;
+                }
+
+                public boolean hasPrevious() {
+                    throw new UnsupportedOperationException();
+                }
+
+                public ValidationErrorMessage.Error previous() {
+                    throw new UnsupportedOperationException();
+                }
+
+                public void remove() {
+                    throw new UnsupportedOperationException();
+                }
+
+                public void set(ValidationErrorMessage.Error error) {
+                    throw new UnsupportedOperationException();
+                }
+
+                public void add(ValidationErrorMessage.Error error) {
+                    throw new UnsupportedOperationException();
+                }
+            };
+        }
+    }
+}
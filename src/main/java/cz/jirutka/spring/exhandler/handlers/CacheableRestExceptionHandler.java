@@ -0,0 +1,41 @@
+/*
+ * Copyright 2016 Jakub Jirutka <jakub@jirutka.cz>.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package cz.jirutka.spring.exhandler.handlers;
+
+import java.util.Locale;
+
+/**
+ * Extension of the {@link RestExceptionHandler} for handlers that produce the same response
+ * (status, headers and body) for all exceptions they handle, i.e. the response depends only on
+ * the locale. {@link cz.jirutka.spring.exhandler.RestHandlerExceptionResolver
+ * RestHandlerExceptionResolver} may serialize such a response just once and then reuse it;
+ * the handler is then invoked only to log the exception (see
+ * {@link AbstractRestExceptionHandler#handleExceptionWithoutResponse(Exception, javax.servlet.http.HttpServletRequest)
+ * handleExceptionWithoutResponse}).
+ *
+ * @param <E> Type of the handled exception.
+ * @param <T> Type of the response message (entity body).
+ * @see cz.jirutka.spring.exhandler.RestHandlerExceptionResolver#setResponseCacheLimit(int)
+ */
+public interface CacheableRestExceptionHandler<E extends Exception, T> extends RestExceptionHandler<E, T> {
+
+    /**
+     * @param locale The current locale.
+     * @return Whether the response produced by this handler in the given locale does not depend
+     *         on the exception nor the request.
+     */
+    boolean isResponseCacheable(Locale locale);
+}
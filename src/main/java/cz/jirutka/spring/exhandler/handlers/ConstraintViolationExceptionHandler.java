@@ -15,56 +15,76 @@
  */
 package cz.jirutka.spring.exhandler.handlers;
 
-import cz.jirutka.spring.exhandler.messages.ErrorMessage;
 import cz.jirutka.spring.exhandler.messages.ValidationErrorMessage;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.core.convert.ConversionException;
 import org.springframework.core.convert.ConversionService;
+import org.springframework.core.convert.ConverterNotFoundException;
 import org.springframework.core.convert.support.DefaultConversionService;
 import org.springframework.util.Assert;
+import org.springframework.util.ConcurrentReferenceHashMap;
 
-import javax.servlet.http.HttpServletRequest;
 import javax.validation.ConstraintViolation;
 import javax.validation.ConstraintViolationException;
 import javax.validation.ElementKind;
 import javax.validation.Path;
 import javax.validation.Path.Node;
-import java.util.ArrayList;
+import java.util.Collection;
 import java.util.Collections;
-import java.util.Iterator;
-import java.util.List;
+import java.util.Date;
+import java.util.Map;
+import java.util.Set;
 
 import static org.springframework.http.HttpStatus.UNPROCESSABLE_ENTITY;
 import static org.springframework.util.StringUtils.isEmpty;
 
-public class ConstraintViolationExceptionHandler extends ErrorMessageRestExceptionHandler<ConstraintViolationException> {
+public class ConstraintViolationExceptionHandler
+        extends AbstractValidationExceptionHandler<ConstraintViolationException, ConstraintViolation<?>> {
 
     private ConversionService conversionService = new DefaultConversionService();
 
+    /**
+     * Whether the {@link #conversionService} is the default one, so the fast paths that produce
+     * the same result as the {@code DefaultConversionService} may be used.
+     */
+    private boolean defaultConversionService = true;
+
+    /**
+     * Cache of the conversions resolved for the invalid value types.
+     */
+    private final Map<Class<?>, ValueConversion> conversions = new ConcurrentReferenceHashMap<>(16);
+
 
     public ConstraintViolationExceptionHandler() {
-        super(UNPROCESSABLE_ENTITY);
+        super(ConstraintViolationException.class, UNPROCESSABLE_ENTITY);
     }
 
     @Override
-    public ValidationErrorMessage createBody(ConstraintViolationException ex, HttpServletRequest req) {
+    protected boolean isLiteralShortcutEnabled() {
+        return getClass() == ConstraintViolationExceptionHandler.class;
+    }
 
-        ErrorMessage tmpl = super.createBody(ex, req);
-        ValidationErrorMessage msg = new ValidationErrorMessage(tmpl);
+    @Override
+    protected Collection<ConstraintViolation<?>> getErrorSources(ConstraintViolationException ex) {
+
+        Set<ConstraintViolation<?>> violations = ex.getConstraintViolations();
+        return violations != null ? violations : Collections.<ConstraintViolation<?>>emptySet();
+    }
 
-        for (ConstraintViolation<?> violation : ex.getConstraintViolations()) {
-            Node pathNode = findLastNonEmptyPathNode(violation.getPropertyPath());
+    @Override
+    protected ValidationErrorMessage.Error createError(ConstraintViolation<?> violation) {
 
-            // path is probably useful only for properties (fields)
-            if (pathNode != null && pathNode.getKind() == ElementKind.PROPERTY) {
-                msg.addError(pathNode.getName(), convertToString(violation.getInvalidValue()), violation.getMessage());
+        Node pathNode = findLastNonEmptyPathNode(violation.getPropertyPath());
 
-            // type level constraints etc.
-            } else {
-                msg.addError(violation.getMessage());
-            }
+        // path is probably useful only for properties (fields)
+        if (pathNode != null && pathNode.getKind() == ElementKind.PROPERTY) {
+            return new ValidationErrorMessage.Error(pathNode.getName(),
+                    truncateRejectedValue(convertToString(violation.getInvalidValue())), violation.getMessage());
+
+        // type level constraints etc.
+        } else {
+            return new ValidationErrorMessage.Error(null, null, violation.getMessage());
         }
-        return msg;
     }
 
     /**
@@ -77,22 +97,20 @@ public class ConstraintViolationExceptionHandler extends ErrorMessageRestExcepti
     public void setConversionService(ConversionService conversionService) {
         Assert.notNull(conversionService, "conversionService must not be null");
         this.conversionService = conversionService;
+        this.defaultConversionService = false;
+        this.conversions.clear();
     }
 
 
     private Node findLastNonEmptyPathNode(Path path) {
 
-        List<Node> list = new ArrayList<>();
-        for (Iterator<Node> it = path.iterator(); it.hasNext(); ) {
-            list.add(it.next());
-        }
-        Collections.reverse(list);
-        for (Node node : list) {
+        Node last = null;
+        for (Node node : path) {
             if (!isEmpty(node.getName())) {
-                return node;
+                last = node;
             }
         }
-        return null;
+        return last;
     }
 
     private String convertToString(Object invalidValue) {
@@ -100,12 +118,57 @@ public class ConstraintViolationExceptionHandler extends ErrorMessageRestExcepti
         if (invalidValue == null) {
             return null;
         }
-        try {
-            return conversionService.convert(invalidValue, String.class);
+        Class<?> valueClass = invalidValue.getClass();
+
+        ValueConversion conversion = conversions.get(valueClass);
+        if (conversion == null) {
+            conversion = resolveConversion(valueClass);
+            conversions.put(valueClass, conversion);
+        }
+        switch (conversion) {
+            case NONE:
+                return (String) invalidValue;
+            case TO_STRING:
+                return invalidValue.toString();
+            case ENUM_NAME:
+                return ((Enum<?>) invalidValue).name();
+            default:
+                try {
+                    return conversionService.convert(invalidValue, String.class);
+
+                } catch (ConverterNotFoundException ex) {
+                    // don't try it again for this type
+                    conversions.put(valueClass, ValueConversion.TO_STRING);
+                    return invalidValue.toString();
+
+                } catch (ConversionException ex) {
+                    return invalidValue.toString();
+                }
+        }
+    }
+
+    private ValueConversion resolveConversion(Class<?> valueClass) {
 
-        } catch (ConversionException ex) {
-            return invalidValue.toString();
+        if (valueClass == String.class) {
+            return ValueConversion.NONE;
         }
+        // these produce the same result as the DefaultConversionService
+        if (defaultConversionService) {
+            if (Number.class.isAssignableFrom(valueClass) || valueClass == Boolean.class
+                    || valueClass == Character.class || Date.class.isAssignableFrom(valueClass)) {
+                return ValueConversion.TO_STRING;
+            }
+            if (Enum.class.isAssignableFrom(valueClass)) {
+                return ValueConversion.ENUM_NAME;
+            }
+        }
+        return ValueConversion.SERVICE;
     }
 
+
+    ////// Inner classes //////
+
+    private enum ValueConversion {
+        NONE, TO_STRING, ENUM_NAME, SERVICE
+    }
 }
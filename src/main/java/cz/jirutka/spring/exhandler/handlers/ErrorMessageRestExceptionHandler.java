@@ -19,6 +19,7 @@ import cz.jirutka.spring.exhandler.interpolators.MessageInterpolator;
 import cz.jirutka.spring.exhandler.interpolators.MessageInterpolatorAware;
 import cz.jirutka.spring.exhandler.interpolators.NoOpMessageInterpolator;
 import cz.jirutka.spring.exhandler.interpolators.SpelMessageInterpolator;
+import cz.jirutka.spring.exhandler.interpolators.TemplateAwareMessageInterpolator;
 import cz.jirutka.spring.exhandler.messages.ErrorMessage;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -33,6 +34,8 @@ import java.net.URI;
 import java.util.HashMap;
 import java.util.Locale;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 
 /**
  * {@link RestExceptionHandler} that produces {@link ErrorMessage}.
@@ -40,7 +43,8 @@ import java.util.Map;
  * @param <E> Type of the handled exception.
  */
 public class ErrorMessageRestExceptionHandler<E extends Exception>
-        extends AbstractRestExceptionHandler<E, ErrorMessage> implements MessageSourceAware, MessageInterpolatorAware {
+        extends AbstractRestExceptionHandler<E, ErrorMessage>
+        implements CacheableRestExceptionHandler<E, ErrorMessage>, MessageSourceAware, MessageInterpolatorAware {
 
     private static final Logger LOG = LoggerFactory.getLogger(ErrorMessageRestExceptionHandler.class);
 
@@ -51,10 +55,16 @@ public class ErrorMessageRestExceptionHandler<E extends Exception>
             DETAIL_KEY = "detail",
             INSTANCE_KEY = "instance";
 
+    private static final String[] BODY_KEYS = { TYPE_KEY, TITLE_KEY, DETAIL_KEY, INSTANCE_KEY };
+
     private MessageSource messageSource;
 
     private MessageInterpolator interpolator = new SpelMessageInterpolator();
 
+    private final ConcurrentMap<Locale, MessagesTable> messagesCache = new ConcurrentHashMap<>(4);
+
+    private long messageCacheMillis = -1;
+
 
     /**
      * @param exceptionClass Type of the handled exceptions; it's used as a prefix of key to
@@ -73,16 +83,125 @@ public class ErrorMessageRestExceptionHandler<E extends Exception>
     }
 
 
+    /**
+     * Creates a copy of the {@link #getBodyPrototype() body prototype} and
+     * {@link #populateBody(ErrorMessage, Exception, HttpServletRequest) populates} the parts
+     * that depend on the exception or request.
+     */
     public ErrorMessage createBody(E ex, HttpServletRequest req) {
+        return populateBody(new ErrorMessage(getBodyPrototype()), ex, req);
+    }
+
+    /**
+     * Returns an immutable {@link ErrorMessage} with the parts that are the same for every
+     * occurrence of the exception in the current locale, i.e. the status and the parts with
+     * a literal message template (see {@link TemplateAwareMessageInterpolator}); the other parts
+     * are <tt>null</tt>. The URIs are parsed only once when the prototype is created. Prototypes
+     * are cached per locale along with the message templates. When the
+     * {@link #isLiteralShortcutEnabled() literal shortcut} is not enabled, the prototype contains
+     * just the status, so all the messages are resolved by
+     * {@link #resolveMessage(String, Exception, HttpServletRequest) resolveMessage()}.
+     *
+     * <p>Use it to create the body, e.g. <tt>new ValidationErrorMessage(getBodyPrototype())</tt>,
+     * and then pass the body to {@link #populateBody(ErrorMessage, Exception, HttpServletRequest)
+     * populateBody()}.</p>
+     */
+    protected ErrorMessage getBodyPrototype() {
+
+        Locale locale = LocaleContextHolder.getLocale();
+
+        if (messageCacheMillis == 0 || locale == null) {
+            return createBodyPrototype(locale);
+        }
+        MessagesTable messages = getMessagesTable(locale);
+
+        ErrorMessage prototype = messages.bodyPrototype;
+        if (prototype == null) {
+            prototype = createBodyPrototype(locale);
+            messages.bodyPrototype = prototype;
+        }
+        return prototype;
+    }
+
+    /**
+     * Resolves the parts of the given body that are not set yet (i.e. not provided by the
+     * {@link #getBodyPrototype() body prototype}) using
+     * {@link #resolveMessage(String, Exception, HttpServletRequest) resolveMessage()}.
+     *
+     * @return The given body.
+     */
+    protected <T extends ErrorMessage> T populateBody(T body, E ex, HttpServletRequest req) {
+
+        if (body.getType() == null) {
+            body.setType(URI.create(resolveMessage(TYPE_KEY, ex, req)));
+        }
+        if (body.getTitle() == null) {
+            body.setTitle(resolveMessage(TITLE_KEY, ex, req));
+        }
+        if (body.getStatus() == null) {
+            body.setStatus(getStatus());
+        }
+        if (body.getDetail() == null) {
+            body.setDetail(resolveMessage(DETAIL_KEY, ex, req));
+        }
+        if (body.getInstance() == null) {
+            body.setInstance(URI.create(resolveMessage(INSTANCE_KEY, ex, req)));
+        }
+        return body;
+    }
+
+    private ErrorMessage createBodyPrototype(Locale locale) {
 
         ErrorMessage m = new ErrorMessage();
-        m.setType(URI.create(resolveMessage(TYPE_KEY, ex, req)));
-        m.setTitle(resolveMessage(TITLE_KEY, ex, req));
         m.setStatus(getStatus());
-        m.setDetail(resolveMessage(DETAIL_KEY, ex, req));
-        m.setInstance(URI.create(resolveMessage(INSTANCE_KEY, ex, req)));
 
-        return m;
+        // the templates can't be resolved without a message source, nor pre-rendered if we
+        // don't know whether they contain any expression or how a subclass resolves them
+        if (isLiteralShortcutEnabled() && messageSource != null
+                && interpolator instanceof TemplateAwareMessageInterpolator) {
+            TemplateAwareMessageInterpolator templateInterpolator = (TemplateAwareMessageInterpolator) interpolator;
+
+            String type = getMessage(TYPE_KEY, locale);
+            if (templateInterpolator.isLiteral(type)) {
+                m.setType(URI.create(type));
+            }
+            String title = getMessage(TITLE_KEY, locale);
+            if (templateInterpolator.isLiteral(title)) {
+                m.setTitle(title);
+            }
+            String detail = getMessage(DETAIL_KEY, locale);
+            if (templateInterpolator.isLiteral(detail)) {
+                m.setDetail(detail);
+            }
+            String instance = getMessage(INSTANCE_KEY, locale);
+            if (templateInterpolator.isLiteral(instance)) {
+                m.setInstance(URI.create(instance));
+            }
+        }
+        return new ImmutableErrorMessage(m);
+    }
+
+
+    /**
+     * Returns <tt>true</tt> when none of the message templates for the given locale contains an
+     * expression. Subclasses are considered not cacheable by default, because they may add
+     * content that depends on the exception into the body or headers; override this method if
+     * it's not the case.
+     */
+    public boolean isResponseCacheable(Locale locale) {
+
+        if (getClass() != ErrorMessageRestExceptionHandler.class
+                || !(interpolator instanceof TemplateAwareMessageInterpolator)) {
+            return false;
+        }
+        TemplateAwareMessageInterpolator templateInterpolator = (TemplateAwareMessageInterpolator) interpolator;
+
+        for (String key : BODY_KEYS) {
+            if (!templateInterpolator.isLiteral(getMessage(key, locale))) {
+                return false;
+            }
+        }
+        return true;
     }
 
 
@@ -90,6 +209,11 @@ public class ErrorMessageRestExceptionHandler<E extends Exception>
 
         String template = getMessage(key, LocaleContextHolder.getLocale());
 
+        // there's no need to prepare variables for a template without any expression
+        if (isLiteralShortcutEnabled() && interpolator instanceof TemplateAwareMessageInterpolator
+                && ((TemplateAwareMessageInterpolator) interpolator).isLiteral(template)) {
+            return template;
+        }
         Map<String, Object> vars = new HashMap<>(2);
         vars.put("ex", exception);
         vars.put("req", request);
@@ -97,14 +221,62 @@ public class ErrorMessageRestExceptionHandler<E extends Exception>
         return interpolateMessage(template, vars);
     }
 
+    /**
+     * Returns <tt>true</tt> if the message templates without any expression (see
+     * {@link TemplateAwareMessageInterpolator}) may be used as is, without calling
+     * {@link #interpolateMessage(String, Map) interpolateMessage()}, and pre-rendered into the
+     * {@link #getBodyPrototype() body prototype}, without calling
+     * {@link #resolveMessage(String, Exception, HttpServletRequest) resolveMessage()}. It's
+     * enabled only for this class and the built-in subclasses, because a subclass may override
+     * these methods to resolve the messages differently. A subclass that doesn't can override
+     * this method to return <tt>true</tt>.
+     */
+    protected boolean isLiteralShortcutEnabled() {
+        return getClass() == ErrorMessageRestExceptionHandler.class;
+    }
+
     protected String interpolateMessage(String messageTemplate, Map<String, Object> variables) {
 
         LOG.trace("Interpolating message '{}' with variables: {}", messageTemplate, variables);
         return interpolator.interpolate(messageTemplate, variables);
     }
 
+    /**
+     * Returns the message template for the given key and locale. The resolved templates are
+     * cached per locale, see {@link #setMessageCacheSeconds(int)}.
+     */
     protected String getMessage(String key, Locale locale) {
 
+        if (messageCacheMillis == 0 || locale == null) {
+            return loadMessage(key, locale);
+        }
+        MessagesTable messages = getMessagesTable(locale);
+
+        String message = messages.get(key);
+        if (message == null) {
+            message = loadMessage(key, locale);
+            messages.put(key, message);
+        }
+        return message;
+    }
+
+    private MessagesTable getMessagesTable(Locale locale) {
+
+        MessagesTable messages = messagesCache.get(locale);
+
+        if (messages == null || messages.isExpired(messageCacheMillis)) {
+            messages = new MessagesTable();
+            messagesCache.put(locale, messages);
+        }
+        return messages;
+    }
+
+    /**
+     * Resolves the message template for the given key and locale from the message source; either
+     * the one specific for this exception class, or the default one.
+     */
+    protected String loadMessage(String key, Locale locale) {
+
         String prefix = getExceptionClass().getName();
 
         String message = messageSource.getMessage(prefix + "." + key, null, null, locale);
@@ -124,9 +296,95 @@ public class ErrorMessageRestExceptionHandler<E extends Exception>
     public void setMessageSource(MessageSource messageSource) {
         Assert.notNull(messageSource, "messageSource must not be null");
         this.messageSource = messageSource;
+        clearMessageCache();
+    }
+
+    /**
+     * Sets the number of seconds to cache the message templates resolved from the message
+     * source, analogous to
+     * {@link org.springframework.context.support.ReloadableResourceBundleMessageSource#setCacheSeconds(int)
+     * ReloadableResourceBundleMessageSource#setCacheSeconds(int)}. Default is -1, i.e. cache
+     * forever. A positive number is useful when the messages are reloaded at runtime; 0 disables
+     * caching.
+     */
+    public void setMessageCacheSeconds(int cacheSeconds) {
+        this.messageCacheMillis = cacheSeconds * 1000L;
+        clearMessageCache();
+    }
+
+    /**
+     * Clears the cache of resolved message templates.
+     */
+    public void clearMessageCache() {
+        messagesCache.clear();
     }
 
     public void setMessageInterpolator(MessageInterpolator interpolator) {
         this.interpolator = interpolator != null ? interpolator : new NoOpMessageInterpolator();
+        // the body prototypes depend on the interpolator
+        clearMessageCache();
+    }
+
+
+    ////// Inner classes //////
+
+    /**
+     * Message templates resolved for a single locale, mapped by the message key.
+     */
+    @SuppressWarnings("serial")
+    private static final class MessagesTable extends ConcurrentHashMap<String, String> {
+
+        private final long timestamp = System.currentTimeMillis();
+
+        volatile ErrorMessage bodyPrototype;
+
+        MessagesTable() {
+            super(8);
+        }
+
+        boolean isExpired(long cacheMillis) {
+            return cacheMillis > 0 && System.currentTimeMillis() - timestamp > cacheMillis;
+        }
+    }
+
+    /**
+     * {@link ErrorMessage} that can't be modified, used as a prototype.
+     */
+    @SuppressWarnings("serial")
+    private static final class ImmutableErrorMessage extends ErrorMessage {
+
+        ImmutableErrorMessage(ErrorMessage orig) {
+            super(orig);
+        }
+
+        @Override
+        public void setType(URI type) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public void setTitle(String title) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public void setStatus(Integer status) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public void setStatus(HttpStatus status) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public void setDetail(String detail) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public void setInstance(URI instance) {
+            throw new UnsupportedOperationException();
+        }
     }
 }
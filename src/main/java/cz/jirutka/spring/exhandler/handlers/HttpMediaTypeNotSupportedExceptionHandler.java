@@ -29,7 +29,12 @@ public class HttpMediaTypeNotSupportedExceptionHandler extends ErrorMessageRestE
 
 
     public HttpMediaTypeNotSupportedExceptionHandler() {
-        super(UNSUPPORTED_MEDIA_TYPE);
+        super(HttpMediaTypeNotSupportedException.class, UNSUPPORTED_MEDIA_TYPE);
+    }
+
+    @Override
+    protected boolean isLiteralShortcutEnabled() {
+        return getClass() == HttpMediaTypeNotSupportedExceptionHandler.class;
     }
 
     @Override
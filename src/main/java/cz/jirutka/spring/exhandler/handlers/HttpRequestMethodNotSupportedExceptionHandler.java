@@ -35,7 +35,12 @@ public class HttpRequestMethodNotSupportedExceptionHandler
 
 
     public HttpRequestMethodNotSupportedExceptionHandler() {
-        super(METHOD_NOT_ALLOWED);
+        super(HttpRequestMethodNotSupportedException.class, METHOD_NOT_ALLOWED);
+    }
+
+    @Override
+    protected boolean isLiteralShortcutEnabled() {
+        return getClass() == HttpRequestMethodNotSupportedExceptionHandler.class;
     }
 
     @Override
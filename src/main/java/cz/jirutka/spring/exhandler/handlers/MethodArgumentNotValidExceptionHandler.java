@@ -15,38 +15,52 @@
  */
 package cz.jirutka.spring.exhandler.handlers;
 
-import cz.jirutka.spring.exhandler.messages.ErrorMessage;
 import cz.jirutka.spring.exhandler.messages.ValidationErrorMessage;
 import org.springframework.validation.BindingResult;
 import org.springframework.validation.FieldError;
 import org.springframework.validation.ObjectError;
 import org.springframework.web.bind.MethodArgumentNotValidException;
 
-import javax.servlet.http.HttpServletRequest;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
 
 import static org.springframework.http.HttpStatus.UNPROCESSABLE_ENTITY;
 
-public class MethodArgumentNotValidExceptionHandler extends ErrorMessageRestExceptionHandler<MethodArgumentNotValidException> {
+public class MethodArgumentNotValidExceptionHandler
+        extends AbstractValidationExceptionHandler<MethodArgumentNotValidException, ObjectError> {
 
 
     public MethodArgumentNotValidExceptionHandler() {
-        super(UNPROCESSABLE_ENTITY);
+        super(MethodArgumentNotValidException.class, UNPROCESSABLE_ENTITY);
     }
 
     @Override
-    public ValidationErrorMessage createBody(MethodArgumentNotValidException ex, HttpServletRequest req) {
+    protected boolean isLiteralShortcutEnabled() {
+        return getClass() == MethodArgumentNotValidExceptionHandler.class;
+    }
 
-        ErrorMessage tmpl = super.createBody(ex, req);
-        ValidationErrorMessage msg = new ValidationErrorMessage(tmpl);
+    @Override
+    protected Collection<ObjectError> getErrorSources(MethodArgumentNotValidException ex) {
 
         BindingResult result = ex.getBindingResult();
 
-        for (ObjectError err : result.getGlobalErrors()) {
-            msg.addError(err.getDefaultMessage());
-        }
-        for (FieldError err : result.getFieldErrors()) {
-            msg.addError(err.getField(), err.getRejectedValue(), err.getDefaultMessage());
+        // global errors first, then field errors
+        List<ObjectError> errors = new ArrayList<>(result.getErrorCount());
+        errors.addAll(result.getGlobalErrors());
+        errors.addAll(result.getFieldErrors());
+
+        return errors;
+    }
+
+    @Override
+    protected ValidationErrorMessage.Error createError(ObjectError err) {
+
+        if (err instanceof FieldError) {
+            FieldError fieldErr = (FieldError) err;
+            return new ValidationErrorMessage.Error(
+                    fieldErr.getField(), truncateRejectedValue(fieldErr.getRejectedValue()), err.getDefaultMessage());
         }
-        return msg;
+        return new ValidationErrorMessage.Error(null, null, err.getDefaultMessage());
     }
 }
@@ -34,7 +34,12 @@ public class NoSuchRequestHandlingMethodExceptionHandler
 
 
     public NoSuchRequestHandlingMethodExceptionHandler() {
-        super(NOT_FOUND);
+        super(NoSuchRequestHandlingMethodException.class, NOT_FOUND);
+    }
+
+    @Override
+    protected boolean isLiteralShortcutEnabled() {
+        return getClass() == NoSuchRequestHandlingMethodExceptionHandler.class;
     }
 
     @Override
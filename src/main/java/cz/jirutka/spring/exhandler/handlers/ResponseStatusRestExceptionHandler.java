@@ -19,12 +19,13 @@ import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 
 import javax.servlet.http.HttpServletRequest;
+import java.util.Locale;
 
 /**
  * Simple {@link RestExceptionHandler} that just returns response with the specified status code
  * and no content.
  */
-public class ResponseStatusRestExceptionHandler implements RestExceptionHandler<Exception, Void> {
+public class ResponseStatusRestExceptionHandler implements CacheableRestExceptionHandler<Exception, Void> {
 
     private final HttpStatus status;
 
@@ -36,4 +37,8 @@ public class ResponseStatusRestExceptionHandler implements RestExceptionHandler<
     public ResponseEntity<Void> handleException(Exception ex, HttpServletRequest request) {
         return new ResponseEntity<>(status);
     }
+
+    public boolean isResponseCacheable(Locale locale) {
+        return true;
+    }
 }
@@ -21,9 +21,13 @@ import java.util.Map;
  * Implementation of the {@link MessageInterpolator} that does nothing, just returns the given
  * message template as-is.
  */
-public class NoOpMessageInterpolator implements MessageInterpolator {
+public class NoOpMessageInterpolator implements TemplateAwareMessageInterpolator {
 
     public String interpolate(String messageTemplate, Map<String, Object> variables) {
         return messageTemplate;
     }
+
+    public boolean isLiteral(String messageTemplate) {
+        return true;
+    }
 }
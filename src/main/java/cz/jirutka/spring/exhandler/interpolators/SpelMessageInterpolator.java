@@ -22,12 +22,16 @@ import org.springframework.expression.EvaluationContext;
 import org.springframework.expression.Expression;
 import org.springframework.expression.ExpressionException;
 import org.springframework.expression.ExpressionParser;
+import org.springframework.expression.ParserContext;
+import org.springframework.expression.common.LiteralExpression;
 import org.springframework.expression.common.TemplateParserContext;
 import org.springframework.expression.spel.standard.SpelExpressionParser;
 import org.springframework.expression.spel.support.StandardEvaluationContext;
 import org.springframework.util.Assert;
 
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 
 /**
  * Implementation of the {@link MessageInterpolator} that uses the Spring Expression Language
@@ -35,13 +39,27 @@ import java.util.Map;
  *
  * <p>SpEL expressions are delimited by {@code #{} and {@code }}. The provided variables are
  * accessible directly by name.</p>
+ *
+ * <p>Parsed templates are cached (up to the {@link #setCacheLimit(int) cacheLimit}), so each
+ * template is parsed only once. Templates without any expression are recognized as literals and
+ * returned as-is without evaluation.</p>
  */
-public class SpelMessageInterpolator implements MessageInterpolator {
+public class SpelMessageInterpolator implements TemplateAwareMessageInterpolator {
 
     private static final Logger LOG = LoggerFactory.getLogger(SpelMessageInterpolator.class);
 
+    public static final int DEFAULT_CACHE_LIMIT = 256;
+
+    private static final ParserContext PARSER_CONTEXT = new TemplateParserContext();
+
     private final EvaluationContext evalContext;
 
+    private final ConcurrentMap<String, Expression> expressionCache = new ConcurrentHashMap<>(64);
+
+    private volatile ExpressionParser parser = new SpelExpressionParser();
+
+    private int cacheLimit = DEFAULT_CACHE_LIMIT;
+
 
     /**
      * Creates a new instance with a custom {@link EvaluationContext}.
@@ -67,8 +85,11 @@ public class SpelMessageInterpolator implements MessageInterpolator {
         Assert.notNull(messageTemplate, "messageTemplate must not be null");
 
         try {
-            Expression expression = parser().parseExpression(messageTemplate, new TemplateParserContext());
+            Expression expression = getExpression(messageTemplate);
 
+            if (expression instanceof LiteralExpression) {
+                return messageTemplate;
+            }
             return expression.getValue(evalContext, variables, String.class);
 
         } catch (ExpressionException ex) {
@@ -77,7 +98,60 @@ public class SpelMessageInterpolator implements MessageInterpolator {
         }
     }
 
+    public boolean isLiteral(String messageTemplate) {
+        Assert.notNull(messageTemplate, "messageTemplate must not be null");
+
+        // fast path for templates that definitely don't contain any expression
+        if (messageTemplate.indexOf(PARSER_CONTEXT.getExpressionPrefix()) < 0) {
+            return true;
+        }
+        try {
+            return getExpression(messageTemplate) instanceof LiteralExpression;
+
+        } catch (ExpressionException ex) {
+            return false;  // let interpolate() handle (and log) the error
+        }
+    }
+
+    /**
+     * The maximum number of parsed templates to cache. When the limit is reached, new templates
+     * are still parsed, but not cached. Zero disables caching. Default is {@value #DEFAULT_CACHE_LIMIT}.
+     */
+    public void setCacheLimit(int cacheLimit) {
+        Assert.isTrue(cacheLimit >= 0, "cacheLimit must not be negative");
+        this.cacheLimit = cacheLimit;
+    }
+
+    /**
+     * Sets the parser used to parse the message templates. Default is {@link SpelExpressionParser}
+     * with the default configuration.
+     *
+     * <p>Since Spring 4.1, you can enable the SpEL compiler with a parser configured e.g. with
+     * <tt>new SpelParserConfiguration(SpelCompilerMode.MIXED, classLoader)</tt>; then the
+     * frequently evaluated templates are compiled into bytecode.</p>
+     *
+     * @param parser The expression parser, or <tt>null</tt> to use the default one.
+     */
+    public void setExpressionParser(ExpressionParser parser) {
+        this.parser = parser != null ? parser : new SpelExpressionParser();
+        expressionCache.clear();
+    }
+
+
+    Expression getExpression(String messageTemplate) {
+
+        Expression expression = expressionCache.get(messageTemplate);
+        if (expression == null) {
+            expression = parser().parseExpression(messageTemplate, PARSER_CONTEXT);
+
+            if (expressionCache.size() < cacheLimit) {
+                expressionCache.put(messageTemplate, expression);
+            }
+        }
+        return expression;
+    }
+
     ExpressionParser parser() {
-        return new SpelExpressionParser();
+        return parser;
     }
 }
@@ -0,0 +1,31 @@
+/*
+ * Copyright 2016 Jakub Jirutka <jakub@jirutka.cz>.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package cz.jirutka.spring.exhandler.interpolators;
+
+/**
+ * Extension of the {@link MessageInterpolator} that is able to recognize a literal message
+ * template, i.e. a template that does not contain any expression and thus doesn't need to be
+ * interpolated. This allows the caller to skip preparing the variables for such templates.
+ */
+public interface TemplateAwareMessageInterpolator extends MessageInterpolator {
+
+    /**
+     * @param messageTemplate The message template to examine.
+     * @return <tt>true</tt> if the template does not contain any expression, i.e. its
+     *         interpolation would always produce the template itself.
+     */
+    boolean isLiteral(String messageTemplate);
+}
@@ -0,0 +1,299 @@
+/*
+ * Copyright 2016 Jakub Jirutka <jakub@jirutka.cz>.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package cz.jirutka.spring.exhandler.logging;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.util.Assert;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.LockSupport;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Emits {@link ExceptionLogRecord ExceptionLogRecords} in a background thread, so formatting of
+ * the messages and a slow log appender don't affect latency of the error responses.
+ *
+ * <p>The records are passed to the worker thread through a bounded lock-free ring buffer. When
+ * the buffer is full, the record is dropped; the number of dropped records is available via
+ * {@link #getDroppedCount()} and it's also periodically logged on WARN level.</p>
+ *
+ * <p>The worker thread is started lazily with the first submitted record and stopped by
+ * {@link #destroy()}, after all the buffered records are emitted. Records submitted while it's
+ * being stopped, which the worker might not see anymore, are emitted by the thread that called
+ * {@link #destroy()} or the submitting thread. When the logger is passed to
+ * {@link cz.jirutka.spring.exhandler.RestHandlerExceptionResolverBuilder#asyncLogger(AsyncExceptionLogger)
+ * RestHandlerExceptionResolverBuilder}, it's destroyed together with the built resolver.</p>
+ */
+public class AsyncExceptionLogger implements DisposableBean {
+
+    private static final Logger LOG = LoggerFactory.getLogger(AsyncExceptionLogger.class);
+
+    public static final int DEFAULT_CAPACITY = 1024;
+
+    private static final long IDLE_PARK_NANOS = TimeUnit.MILLISECONDS.toNanos(100);
+
+    private final RingBuffer buffer;
+
+    private final AtomicLong droppedCount = new AtomicLong();
+
+    private final AtomicBoolean started = new AtomicBoolean(false);
+
+    /**
+     * Held by the consumer of the {@link #buffer}, i.e. the worker thread for its whole life, or
+     * a thread that emits the records left after the worker has stopped.
+     */
+    private final Lock consumerLock = new ReentrantLock();
+
+    private volatile Thread worker;
+
+    private volatile boolean running = true;
+
+    private volatile boolean idle = false;
+
+    private long reportedDroppedCount = 0;
+
+
+    public AsyncExceptionLogger() {
+        this(DEFAULT_CAPACITY);
+    }
+
+    /**
+     * @param capacity The maximal number of records waiting to be emitted; it's rounded up to
+     *                 the nearest power of two.
+     */
+    public AsyncExceptionLogger(int capacity) {
+        Assert.isTrue(capacity > 0, "capacity must be greater than 0");
+
+        this.buffer = new RingBuffer(capacity);
+    }
+
+
+    /**
+     * Submits the record to be emitted in the background thread. This method never blocks.
+     *
+     * @return <tt>false</tt> if the record has been dropped, because the buffer is full or the
+     *         logger has been already destroyed.
+     */
+    public boolean submit(ExceptionLogRecord record) {
+
+        if (!running || !buffer.offer(record)) {
+            droppedCount.incrementAndGet();
+            return false;
+        }
+        if (!running) {
+            // destroy() has been called meanwhile, so the worker may have already stopped
+            drainStopped();
+            return true;
+        }
+        Thread worker = this.worker;
+        if (worker == null) {
+            startWorker();
+        } else if (idle) {
+            LockSupport.unpark(worker);
+        }
+        return true;
+    }
+
+    /**
+     * Returns the number of records dropped so far.
+     */
+    public long getDroppedCount() {
+        return droppedCount.get();
+    }
+
+    /**
+     * Stops the worker thread after emitting all the buffered records.
+     */
+    public void destroy() throws InterruptedException {
+        running = false;
+
+        Thread worker = this.worker;
+        if (worker != null) {
+            LockSupport.unpark(worker);
+            worker.join(TimeUnit.SECONDS.toMillis(10));
+        }
+        drainStopped();
+    }
+
+
+    private void startWorker() {
+
+        if (started.compareAndSet(false, true)) {
+            Thread thread = new Thread(new Runnable() {
+                public void run() {
+                    consumerLock.lock();
+                    try {
+                        processRecords();
+                    } finally {
+                        consumerLock.unlock();
+                    }
+                    drainStopped();
+                }
+            }, "rest-exception-logger");
+            thread.setDaemon(true);
+            worker = thread;
+            thread.start();
+        }
+    }
+
+
+    private void processRecords() {
+
+        while (true) {
+            ExceptionLogRecord record = buffer.poll();
+
+            if (record != null) {
+                emit(record);
+                continue;
+            }
+            reportDropped();
+
+            if (!running) {
+                break;
+            }
+            idle = true;
+            // recheck after setting the flag, so we don't miss unpark from a producer
+            if (buffer.isEmpty()) {
+                LockSupport.parkNanos(this, IDLE_PARK_NANOS);
+            }
+            idle = false;
+        }
+    }
+
+    /**
+     * Emits the records left in the buffer after the worker thread has stopped (or if it hasn't
+     * been started at all). If the consumer lock is held by another thread, that thread will
+     * emit them, so this method doesn't block.
+     */
+    private void drainStopped() {
+
+        while (!buffer.isEmpty() && consumerLock.tryLock()) {
+            try {
+                ExceptionLogRecord record;
+                while ((record = buffer.poll()) != null) {
+                    emit(record);
+                }
+                reportDropped();
+            } finally {
+                consumerLock.unlock();
+            }
+        }
+    }
+
+    private void emit(ExceptionLogRecord record) {
+        try {
+            record.emit();
+        } catch (RuntimeException ex) {
+            LOG.error("Failed to log exception", ex);
+        }
+    }
+
+    private void reportDropped() {
+
+        long dropped = droppedCount.get();
+        if (dropped > reportedDroppedCount) {
+            LOG.warn("Dropped {} exception log records, because the buffer was full", dropped - reportedDroppedCount);
+            reportedDroppedCount = dropped;
+        }
+    }
+
+
+    //////// Inner classes ////////
+
+    /**
+     * Bounded lock-free multi-producer single-consumer queue based on Dmitry Vyukov's
+     * bounded MPMC queue.
+     */
+    static final class RingBuffer {
+
+        private final AtomicReferenceArray<ExceptionLogRecord> records;
+        private final AtomicLongArray sequences;
+        private final int mask;
+
+        private final AtomicLong tail = new AtomicLong();
+        private volatile long head = 0;  // written only by the consumer
+
+
+        RingBuffer(int capacity) {
+            int size = Integer.highestOneBit(capacity - 1) << 1;
+            if (size == 0) {
+                size = 1;
+            }
+            this.records = new AtomicReferenceArray<>(size);
+            this.sequences = new AtomicLongArray(size);
+            this.mask = size - 1;
+
+            for (int i = 0; i < size; i++) {
+                sequences.set(i, i);
+            }
+        }
+
+        boolean offer(ExceptionLogRecord record) {
+
+            long pos = tail.get();
+            while (true) {
+                int index = (int) (pos & mask);
+                long diff = sequences.get(index) - pos;
+
+                if (diff == 0) {
+                    if (tail.compareAndSet(pos, pos + 1)) {
+                        records.set(index, record);
+                        sequences.set(index, pos + 1);
+                        return true;
+                    }
+                    pos = tail.get();
+
+                } else if (diff < 0) {
+                    return false;  // full
+
+                } else {
+                    pos = tail.get();
+                }
+            }
+        }
+
+        ExceptionLogRecord poll() {
+
+            long pos = head;
+            int index = (int) (pos & mask);
+
+            if (sequences.get(index) != pos + 1) {
+                return null;  // empty, or the producer hasn't finished writing yet
+            }
+            ExceptionLogRecord record = records.get(index);
+            records.set(index, null);
+            sequences.set(index, pos + mask + 1);
+            head = pos + 1;
+
+            return record;
+        }
+
+        boolean isEmpty() {
+            return sequences.get((int) (head & mask)) != head + 1;
+        }
+
+        int capacity() {
+            return mask + 1;
+        }
+    }
+}
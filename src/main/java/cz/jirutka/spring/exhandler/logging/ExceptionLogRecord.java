@@ -0,0 +1,143 @@
+/*
+ * Copyright 2016 Jakub Jirutka <jakub@jirutka.cz>.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package cz.jirutka.spring.exhandler.logging;
+
+import org.slf4j.Logger;
+import org.slf4j.MDC;
+import org.slf4j.Marker;
+import org.slf4j.MarkerFactory;
+import org.springframework.http.HttpStatus;
+
+import java.util.Map;
+
+/**
+ * An immutable snapshot of everything needed to log a handled exception. It's cheap to create,
+ * the message is formatted only when the record is {@link #emit() emitted}, which may happen in
+ * another thread (see {@link AsyncExceptionLogger}). The {@link MDC} of the thread that created
+ * the record is captured and set for the time of emitting.
+ */
+public final class ExceptionLogRecord {
+
+    private final Logger logger;
+    private final LogLevel level;
+    private final Exception exception;
+    private final boolean withStackTrace;
+    private final String method;
+    private final String requestUri;
+    private final String queryString;
+    private final HttpStatus status;
+    private final int suppressed;
+    private final Map<String, String> mdcContext;
+
+
+    /**
+     * @param logger The logger to log into.
+     * @param level The level to log on.
+     * @param exception The exception to log.
+     * @param withStackTrace Whether to log also the stack trace of the exception.
+     * @param method The HTTP method of the request.
+     * @param requestUri The URI of the request (without query).
+     * @param queryString The query string of the request, or <tt>null</tt>.
+     * @param status The HTTP status of the response.
+     * @param suppressed The number of similar exceptions that has been suppressed.
+     */
+    public ExceptionLogRecord(Logger logger, LogLevel level, Exception exception, boolean withStackTrace,
+                              String method, String requestUri, String queryString, HttpStatus status,
+                              int suppressed) {
+        this.logger = logger;
+        this.level = level;
+        this.exception = exception;
+        this.withStackTrace = withStackTrace;
+        this.method = method;
+        this.requestUri = requestUri;
+        this.queryString = queryString;
+        this.status = status;
+        this.suppressed = suppressed;
+        this.mdcContext = getMdcContext();
+    }
+
+
+    /**
+     * Logs the record. The message has format {@code METHOD uri ~> status} and the marker is set
+     * to the exception's full qualified name.
+     */
+    public void emit() {
+
+        Map<String, String> previousContext = mdcContext != null ? getMdcContext() : null;
+        if (mdcContext != null) {
+            MDC.setContextMap(mdcContext);
+        }
+        try {
+            emit(logger, level, exception, withStackTrace, method, requestUri, queryString, status, suppressed);
+
+        } finally {
+            if (mdcContext != null) {
+                if (previousContext != null) {
+                    MDC.setContextMap(previousContext);
+                } else {
+                    MDC.clear();
+                }
+            }
+        }
+    }
+
+    /**
+     * Logs the exception in the same way as {@link #emit()}, but without creating a record. The
+     * message is formatted by the logger (i.e. only if it's really logged).
+     *
+     * @see #ExceptionLogRecord(Logger, LogLevel, Exception, boolean, String, String, String, HttpStatus, int)
+     */
+    public static void emit(Logger logger, LogLevel level, Exception exception, boolean withStackTrace,
+                            String method, String requestUri, String queryString, HttpStatus status,
+                            int suppressed) {
+
+        Marker marker = MarkerFactory.getMarker(exception.getClass().getName());
+        Throwable throwable = withStackTrace ? exception : null;
+
+        if (queryString == null && suppressed <= 0) {
+            level.log(logger, marker, "{} {} ~> {}", method, requestUri, status, throwable);
+
+        } else if (suppressed <= 0) {
+            level.log(logger, marker, "{} {}?{} ~> {}", method, requestUri, queryString, status, throwable);
+
+        } else if (queryString == null) {
+            level.log(logger, marker, "{} {} ~> {} ({} similar exceptions suppressed)",
+                    method, requestUri, status, suppressed, throwable);
+        } else {
+            level.log(logger, marker, "{} {}?{} ~> {} ({} similar exceptions suppressed)",
+                    method, requestUri, queryString, status, suppressed, throwable);
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private static Map<String, String> getMdcContext() {
+        // it's a raw Map in SLF4J 1.6
+        Map<String, String> context = (Map<String, String>) MDC.getCopyOfContextMap();
+        return context != null && !context.isEmpty() ? context : null;
+    }
+
+    public Logger getLogger() {
+        return logger;
+    }
+
+    public LogLevel getLevel() {
+        return level;
+    }
+
+    public Exception getException() {
+        return exception;
+    }
+}
@@ -0,0 +1,47 @@
+/*
+ * Copyright 2016 Jakub Jirutka <jakub@jirutka.cz>.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package cz.jirutka.spring.exhandler.logging;
+
+import org.springframework.http.HttpStatus;
+
+/**
+ * Policy that decides whether an exception handled by
+ * {@link cz.jirutka.spring.exhandler.handlers.AbstractRestExceptionHandler AbstractRestExceptionHandler}
+ * should be logged. It's used to protect the application from floods of log messages, e.g. when
+ * some downstream service is unavailable.
+ *
+ * <p>Implementations must be thread-safe.</p>
+ *
+ * @see RateLimitingLoggingPolicy
+ */
+public interface ExceptionLoggingPolicy {
+
+    /**
+     * The value returned by {@link #decide(Exception, HttpStatus)} when the exception should not
+     * be logged.
+     */
+    int SUPPRESS = -1;
+
+    /**
+     * Decides whether to log the given exception.
+     *
+     * @param ex The exception to be logged.
+     * @param status The HTTP status of the response.
+     * @return {@link #SUPPRESS} if the exception should not be logged, otherwise a number of
+     *         similar exceptions that have been suppressed since the last logged one.
+     */
+    int decide(Exception ex, HttpStatus status);
+}
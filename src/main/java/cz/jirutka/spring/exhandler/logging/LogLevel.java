@@ -0,0 +1,88 @@
+/*
+ * Copyright 2016 Jakub Jirutka <jakub@jirutka.cz>.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package cz.jirutka.spring.exhandler.logging;
+
+import org.slf4j.Logger;
+import org.slf4j.Marker;
+
+/**
+ * Logging levels of SLF4J (which doesn't provide such enum in older versions), plus
+ * {@link #OFF} to disable logging.
+ */
+public enum LogLevel {
+
+    ERROR {
+        public boolean isEnabled(Logger logger) {
+            return logger.isErrorEnabled();
+        }
+        public void log(Logger logger, Marker marker, String format, Object... args) {
+            logger.error(marker, format, args);
+        }
+    },
+    WARN {
+        public boolean isEnabled(Logger logger) {
+            return logger.isWarnEnabled();
+        }
+        public void log(Logger logger, Marker marker, String format, Object... args) {
+            logger.warn(marker, format, args);
+        }
+    },
+    INFO {
+        public boolean isEnabled(Logger logger) {
+            return logger.isInfoEnabled();
+        }
+        public void log(Logger logger, Marker marker, String format, Object... args) {
+            logger.info(marker, format, args);
+        }
+    },
+    DEBUG {
+        public boolean isEnabled(Logger logger) {
+            return logger.isDebugEnabled();
+        }
+        public void log(Logger logger, Marker marker, String format, Object... args) {
+            logger.debug(marker, format, args);
+        }
+    },
+    TRACE {
+        public boolean isEnabled(Logger logger) {
+            return logger.isTraceEnabled();
+        }
+        public void log(Logger logger, Marker marker, String format, Object... args) {
+            logger.trace(marker, format, args);
+        }
+    },
+    OFF {
+        public boolean isEnabled(Logger logger) {
+            return false;
+        }
+        public void log(Logger logger, Marker marker, String format, Object... args) {
+            // never log
+        }
+    };
+
+
+    /**
+     * Whether the given logger is enabled for this level.
+     */
+    public abstract boolean isEnabled(Logger logger);
+
+    /**
+     * Logs the message with the given marker on this level. The format and arguments are
+     * handled as by SLF4J, i.e. if the last argument is a {@link Throwable}, it's logged as
+     * an exception.
+     */
+    public abstract void log(Logger logger, Marker marker, String format, Object... args);
+}
@@ -0,0 +1,310 @@
+/*
+ * Copyright 2016 Jakub Jirutka <jakub@jirutka.cz>.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package cz.jirutka.spring.exhandler.logging;
+
+import cz.jirutka.spring.exhandler.handlers.RestExceptionHandler;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.http.HttpStatus;
+import org.springframework.util.Assert;
+import org.springframework.util.ObjectUtils;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * {@link ExceptionLoggingPolicy} that limits logging of exceptions thrown from the same place.
+ *
+ * <p>Exceptions are grouped by their type and the throw site (the top stack frame). Each group
+ * has its own token bucket that allows to log up to {@link #setPermitsPerSecond(double)
+ * permitsPerSecond} exceptions per second with bursts up to {@link #setMaxBurst(int) maxBurst}.
+ * Moreover, an exception with exactly the same stack trace (including causes) as the last logged
+ * exception of its group is logged at most once per {@link #setDeduplicationSeconds(int)
+ * deduplicationSeconds}. Optionally, only a random sample of exceptions is considered for logging,
+ * see {@link #setSamplingRate(double)}.</p>
+ *
+ * <p>The duplicates are checked before the rate limit, so a burst of identical exceptions
+ * doesn't use up the tokens of its group. The (more expensive) stack trace fingerprint is
+ * computed upfront only within the deduplication period after the last logged exception of the
+ * group, otherwise only when the exception is going to be logged.</p>
+ *
+ * <p>The number of suppressed exceptions in the group is reported with the next logged exception
+ * of the group. The numbers that haven't been reported yet are logged by
+ * {@link #reportSuppressed()}, which is called on {@link #destroy()} and may be also called
+ * periodically (e.g. by a scheduled task), so a burst of exceptions followed by silence is not
+ * left unreported. All the state is updated without locking.</p>
+ */
+public class RateLimitingLoggingPolicy implements ExceptionLoggingPolicy, DisposableBean {
+
+    private static final Logger LOG = LoggerFactory.getLogger(RestExceptionHandler.class);
+
+    public static final int DEFAULT_MAX_TRACKED_SITES = 1024;
+
+    private static final long NANOS_PER_SECOND = TimeUnit.SECONDS.toNanos(1);
+
+    private final ConcurrentMap<Site, Bucket> buckets = new ConcurrentHashMap<>(64);
+
+    /**
+     * Bucket shared by all sites that don't fit into the {@link #buckets} map.
+     */
+    private final Bucket overflowBucket = new Bucket(null);
+
+    private volatile long emissionIntervalNanos = NANOS_PER_SECOND;
+
+    private volatile long burstToleranceNanos = 9 * NANOS_PER_SECOND;
+
+    private int maxBurst = 10;
+
+    private long deduplicationNanos = TimeUnit.SECONDS.toNanos(10);
+
+    private double samplingRate = 1.0;
+
+    private int maxTrackedSites = DEFAULT_MAX_TRACKED_SITES;
+
+
+    public int decide(Exception ex, HttpStatus status) {
+
+        StackTraceElement[] stackTrace = ex.getStackTrace();
+        Bucket bucket = getBucket(ex, stackTrace);
+
+        if (samplingRate < 1.0 && ThreadLocalRandom.current().nextDouble() >= samplingRate) {
+            bucket.suppressed.incrementAndGet();
+            return SUPPRESS;
+        }
+        long now = currentNanos();
+
+        boolean deduplicate = deduplicationNanos > 0 && now - bucket.lastLoggedNanos < deduplicationNanos;
+        int fingerprint = 0;
+
+        if (deduplicate) {
+            fingerprint = fingerprint(ex, stackTrace);
+
+            if (fingerprint == bucket.lastFingerprint) {
+                bucket.suppressed.incrementAndGet();
+                return SUPPRESS;
+            }
+        }
+        if (!bucket.tryAcquire(now, emissionIntervalNanos, burstToleranceNanos)) {
+            bucket.suppressed.incrementAndGet();
+            return SUPPRESS;
+        }
+        if (deduplicationNanos > 0) {
+            bucket.lastFingerprint = deduplicate ? fingerprint : fingerprint(ex, stackTrace);
+        }
+        bucket.lastLoggedNanos = now;
+
+        return bucket.suppressed.getAndSet(0);
+    }
+
+    /**
+     * Logs the number of exceptions suppressed in each group since the last logged exception
+     * of the group (if any), and resets it.
+     */
+    public void reportSuppressed() {
+
+        for (Bucket bucket : buckets.values()) {
+            reportSuppressed(bucket);
+        }
+        reportSuppressed(overflowBucket);
+    }
+
+    /**
+     * Reports the suppressed exceptions, see {@link #reportSuppressed()}.
+     */
+    public void destroy() {
+        reportSuppressed();
+    }
+
+
+    /**
+     * The number of exceptions per second that can be logged from a single throw site
+     * (on average). Default is 1.
+     */
+    public void setPermitsPerSecond(double permitsPerSecond) {
+        Assert.isTrue(permitsPerSecond > 0, "permitsPerSecond must be greater than 0");
+
+        this.emissionIntervalNanos = (long) (NANOS_PER_SECOND / permitsPerSecond);
+        this.burstToleranceNanos = emissionIntervalNanos * (maxBurst - 1);
+    }
+
+    /**
+     * The maximal number of exceptions that can be logged from a single throw site at once,
+     * before the rate limit applies. Default is 10.
+     */
+    public void setMaxBurst(int maxBurst) {
+        Assert.isTrue(maxBurst > 0, "maxBurst must be greater than 0");
+
+        this.maxBurst = maxBurst;
+        this.burstToleranceNanos = emissionIntervalNanos * (maxBurst - 1);
+    }
+
+    /**
+     * The number of seconds during which an exception with the same stack trace as the last
+     * logged one is not logged again. Default is 10, 0 disables the deduplication.
+     */
+    public void setDeduplicationSeconds(int deduplicationSeconds) {
+        this.deduplicationNanos = TimeUnit.SECONDS.toNanos(deduplicationSeconds);
+    }
+
+    /**
+     * The probability (0 to 1) that an exception is considered for logging. Default is 1,
+     * i.e. no sampling.
+     */
+    public void setSamplingRate(double samplingRate) {
+        Assert.isTrue(samplingRate >= 0 && samplingRate <= 1, "samplingRate must be between 0 and 1");
+        this.samplingRate = samplingRate;
+    }
+
+    /**
+     * The maximal number of throw sites to track separately. Exceptions from the other sites
+     * share a single token bucket. Default is {@value #DEFAULT_MAX_TRACKED_SITES}.
+     */
+    public void setMaxTrackedSites(int maxTrackedSites) {
+        this.maxTrackedSites = maxTrackedSites;
+    }
+
+
+    /**
+     * Returns the current value of the monotonic time source in nanoseconds.
+     */
+    protected long currentNanos() {
+        return System.nanoTime();
+    }
+
+    private Bucket getBucket(Exception ex, StackTraceElement[] stackTrace) {
+
+        Site site = new Site(ex.getClass(), stackTrace.length > 0 ? stackTrace[0] : null);
+
+        Bucket bucket = buckets.get(site);
+        if (bucket == null) {
+            if (buckets.size() >= maxTrackedSites) {
+                return overflowBucket;
+            }
+            bucket = new Bucket(site);
+            Bucket existing = buckets.putIfAbsent(site, bucket);
+            if (existing != null) {
+                bucket = existing;
+            }
+        }
+        return bucket;
+    }
+
+    private static void reportSuppressed(Bucket bucket) {
+
+        int suppressed = bucket.suppressed.getAndSet(0);
+        if (suppressed > 0) {
+            if (bucket.site != null) {
+                LOG.info("Suppressed {} exceptions {} thrown at {}",
+                        suppressed, bucket.site.exceptionClass.getName(), bucket.site.element);
+            } else {
+                LOG.info("Suppressed {} exceptions thrown at untracked sites", suppressed);
+            }
+        }
+    }
+
+    static int fingerprint(Throwable ex) {
+        return fingerprint(ex, ex.getStackTrace());
+    }
+
+    /**
+     * Computes a hash of the exception type and stack trace (the given one, so it doesn't have
+     * to be copied again), including the causes.
+     */
+    static int fingerprint(Throwable ex, StackTraceElement[] stackTrace) {
+
+        int hash = 1;
+        for (int depth = 0; ex != null && depth < 10; ex = ex.getCause(), depth++) {
+            hash = 31 * hash + ex.getClass().hashCode();
+            for (StackTraceElement element : depth == 0 ? stackTrace : ex.getStackTrace()) {
+                hash = 31 * hash + element.hashCode();
+            }
+        }
+        return hash;
+    }
+
+
+    //////// Inner classes ////////
+
+    /**
+     * Token bucket implemented as GCRA (generic cell rate algorithm), so it needs just a single
+     * atomic variable.
+     */
+    static final class Bucket {
+
+        /** The site of the grouped exceptions, or <tt>null</tt> for the overflow bucket. */
+        final Site site;
+
+        // theoretical arrival time
+        private final AtomicLong tat = new AtomicLong(Long.MIN_VALUE);
+
+        final AtomicInteger suppressed = new AtomicInteger();
+
+        volatile int lastFingerprint;
+
+        volatile long lastLoggedNanos;
+
+        Bucket(Site site) {
+            this.site = site;
+        }
+
+        boolean tryAcquire(long now, long emissionInterval, long burstTolerance) {
+            while (true) {
+                long tat = this.tat.get();
+                long newTat = Math.max(tat, now) + emissionInterval;
+
+                if (newTat - now > emissionInterval + burstTolerance) {
+                    return false;
+                }
+                if (this.tat.compareAndSet(tat, newTat)) {
+                    return true;
+                }
+            }
+        }
+    }
+
+    private static final class Site {
+
+        private final Class<?> exceptionClass;
+        private final StackTraceElement element;
+
+        Site(Class<?> exceptionClass, StackTraceElement element) {
+            this.exceptionClass = exceptionClass;
+            this.element = element;
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            if (this == obj) {
+                return true;
+            }
+            if (!(obj instanceof Site)) {
+                return false;
+            }
+            Site other = (Site) obj;
+            return exceptionClass == other.exceptionClass && ObjectUtils.nullSafeEquals(element, other.element);
+        }
+
+        @Override
+        public int hashCode() {
+            return 31 * exceptionClass.hashCode() + ObjectUtils.nullSafeHashCode(element);
+        }
+    }
+}
@@ -42,6 +42,12 @@ public class ValidationErrorMessage extends ErrorMessage {
 
     private List<Error> errors = new ArrayList<>(6);
 
+    /**
+     * The total number of errors, if the {@link #errors} have been truncated; <tt>null</tt>
+     * otherwise.
+     */
+    private Integer totalErrors;
+
 
     public ValidationErrorMessage(ErrorMessage orig) {
         super(orig);
@@ -0,0 +1,60 @@
+/*
+ * Copyright 2016 Jakub Jirutka <jakub@jirutka.cz>.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package cz.jirutka.spring.exhandler.metrics;
+
+import cz.jirutka.spring.exhandler.handlers.RestExceptionHandler;
+import org.springframework.http.HttpStatus;
+
+/**
+ * SPI for recording metrics about exceptions resolved by
+ * {@link cz.jirutka.spring.exhandler.RestHandlerExceptionResolver RestHandlerExceptionResolver}.
+ *
+ * <p>Implementations must be thread-safe and should be cheap; they are called on every resolved
+ * exception.</p>
+ *
+ * @see SimpleExceptionMetrics
+ * @see MicrometerExceptionMetrics
+ */
+public interface ExceptionMetrics {
+
+    /**
+     * Records an exception that has been handled by an exception handler.
+     *
+     * @param exceptionClass The type of the resolved exception.
+     * @param handler The exception handler that has handled the exception.
+     * @param status The HTTP status of the response.
+     * @param handlingNanos The time spent in the exception handler (in nanoseconds).
+     * @param writingNanos The time spent by serializing and writing the response (in nanoseconds).
+     */
+    void recordHandled(Class<? extends Exception> exceptionClass, RestExceptionHandler<?, ?> handler,
+                       HttpStatus status, long handlingNanos, long writingNanos);
+
+    /**
+     * Records an exception that has been handled by an exception handler, but its response
+     * failed to be written.
+     *
+     * @param exceptionClass The type of the resolved exception.
+     * @param handler The exception handler that has handled the exception.
+     */
+    void recordFailed(Class<? extends Exception> exceptionClass, RestExceptionHandler<?, ?> handler);
+
+    /**
+     * Records an exception for which no exception handler has been found.
+     *
+     * @param exceptionClass The type of the exception.
+     */
+    void recordUnhandled(Class<? extends Exception> exceptionClass);
+}
@@ -0,0 +1,104 @@
+/*
+ * Copyright 2016 Jakub Jirutka <jakub@jirutka.cz>.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package cz.jirutka.spring.exhandler.metrics;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * A lock-free histogram of latencies with exponential (power of two) buckets, so the recorded
+ * values are tracked with precision within a factor of two. It's intended for cheap recording
+ * on a hot path, not for precise statistics.
+ */
+public final class LatencyHistogram {
+
+    private static final int BUCKETS = 64;
+
+    // bucket i contains values from 2^(i-1) to 2^i - 1, bucket 0 contains just 0
+    private final AtomicLongArray buckets = new AtomicLongArray(BUCKETS);
+
+    private final AtomicLong count = new AtomicLong();
+    private final AtomicLong totalNanos = new AtomicLong();
+    private final AtomicLong maxNanos = new AtomicLong();
+
+
+    /**
+     * Records the given value; negative values are recorded as 0.
+     */
+    public void record(long nanos) {
+        if (nanos < 0) {
+            nanos = 0;
+        }
+        buckets.incrementAndGet(bucketIndex(nanos));
+        count.incrementAndGet();
+        totalNanos.addAndGet(nanos);
+
+        long max;
+        while (nanos > (max = maxNanos.get()) && !maxNanos.compareAndSet(max, nanos)) {
+            // retry
+        }
+    }
+
+    public long getCount() {
+        return count.get();
+    }
+
+    public long getTotalNanos() {
+        return totalNanos.get();
+    }
+
+    public long getMaxNanos() {
+        return maxNanos.get();
+    }
+
+    public long getMeanNanos() {
+        long count = getCount();
+        return count > 0 ? getTotalNanos() / count : 0;
+    }
+
+    /**
+     * Returns an upper bound of the value at the given percentile, i.e. the upper bound of the
+     * bucket containing the value, but at most the maximal recorded value.
+     *
+     * @param percentile The percentile in range 0 to 100.
+     */
+    public long getPercentileNanos(double percentile) {
+
+        long total = getCount();
+        if (total == 0) {
+            return 0;
+        }
+        long target = Math.max(1, (long) Math.ceil(total * percentile / 100.0));
+        long seen = 0;
+
+        for (int i = 0; i < BUCKETS; i++) {
+            seen += buckets.get(i);
+            if (seen >= target) {
+                return Math.min(bucketUpperBound(i), getMaxNanos());
+            }
+        }
+        return getMaxNanos();
+    }
+
+
+    static int bucketIndex(long value) {
+        return BUCKETS - Long.numberOfLeadingZeros(value);
+    }
+
+    static long bucketUpperBound(int index) {
+        return index >= BUCKETS - 1 ? Long.MAX_VALUE : (1L << index) - 1;
+    }
+}
@@ -0,0 +1,165 @@
+/*
+ * Copyright 2016 Jakub Jirutka <jakub@jirutka.cz>.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package cz.jirutka.spring.exhandler.metrics;
+
+import cz.jirutka.spring.exhandler.handlers.RestExceptionHandler;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.springframework.http.HttpStatus;
+import org.springframework.util.Assert;
+import org.springframework.util.ObjectUtils;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Implementation of {@link ExceptionMetrics} that records the metrics into a
+ * <a href="http://micrometer.io">Micrometer</a> {@link MeterRegistry}.
+ *
+ * <p>It registers these meters:</p>
+ * <ul>
+ *   <li><tt>rest.exceptions</tt> &ndash; counter of handled exceptions,</li>
+ *   <li><tt>rest.exceptions.handling</tt> &ndash; timer of the exception handlers,</li>
+ *   <li><tt>rest.exceptions.writing</tt> &ndash; timer of serializing and writing the responses,</li>
+ *   <li><tt>rest.exceptions.failed</tt> &ndash; counter of handled exceptions whose response
+ *       failed to be written,</li>
+ *   <li><tt>rest.exceptions.unhandled</tt> &ndash; counter of exceptions without a handler.</li>
+ * </ul>
+ * <p>All of them are tagged with the <tt>exception</tt> type, all but the unhandled also with
+ * the <tt>handler</tt> type, and the successfully written ones also with the response
+ * <tt>status</tt>.</p>
+ *
+ * <p>This class requires Micrometer on the classpath.</p>
+ */
+public class MicrometerExceptionMetrics implements ExceptionMetrics {
+
+    public static final String
+            HANDLED_METER = "rest.exceptions",
+            HANDLING_METER = "rest.exceptions.handling",
+            WRITING_METER = "rest.exceptions.writing",
+            FAILED_METER = "rest.exceptions.failed",
+            UNHANDLED_METER = "rest.exceptions.unhandled";
+
+    private final MeterRegistry registry;
+
+    private final ConcurrentMap<MetersKey, Meters> metersCache = new ConcurrentHashMap<>(16);
+
+    private final ConcurrentMap<MetersKey, Counter> failedCache = new ConcurrentHashMap<>(4);
+
+    private final ConcurrentMap<Class<?>, Counter> unhandledCache = new ConcurrentHashMap<>(4);
+
+
+    public MicrometerExceptionMetrics(MeterRegistry registry) {
+        Assert.notNull(registry, "registry must not be null");
+        this.registry = registry;
+    }
+
+
+    public void recordHandled(Class<? extends Exception> exceptionClass, RestExceptionHandler<?, ?> handler,
+                              HttpStatus status, long handlingNanos, long writingNanos) {
+
+        MetersKey key = new MetersKey(exceptionClass, handler.getClass(), status);
+        Meters meters = metersCache.get(key);
+
+        if (meters == null) {
+            String[] tags = {
+                "exception", exceptionClass.getName(),
+                "handler", handler.getClass().getName(),
+                "status", String.valueOf(status.value())
+            };
+            meters = new Meters(registry.counter(HANDLED_METER, tags),
+                                registry.timer(HANDLING_METER, tags),
+                                registry.timer(WRITING_METER, tags));
+            metersCache.putIfAbsent(key, meters);
+        }
+        meters.counter.increment();
+        meters.handlingTimer.record(handlingNanos, TimeUnit.NANOSECONDS);
+        meters.writingTimer.record(writingNanos, TimeUnit.NANOSECONDS);
+    }
+
+    public void recordFailed(Class<? extends Exception> exceptionClass, RestExceptionHandler<?, ?> handler) {
+
+        MetersKey key = new MetersKey(exceptionClass, handler.getClass(), null);
+        Counter counter = failedCache.get(key);
+
+        if (counter == null) {
+            counter = registry.counter(FAILED_METER,
+                    "exception", exceptionClass.getName(), "handler", handler.getClass().getName());
+            failedCache.putIfAbsent(key, counter);
+        }
+        counter.increment();
+    }
+
+    public void recordUnhandled(Class<? extends Exception> exceptionClass) {
+
+        Counter counter = unhandledCache.get(exceptionClass);
+        if (counter == null) {
+            counter = registry.counter(UNHANDLED_METER, "exception", exceptionClass.getName());
+            unhandledCache.putIfAbsent(exceptionClass, counter);
+        }
+        counter.increment();
+    }
+
+
+    //////// Inner classes ////////
+
+    private static final class Meters {
+
+        final Counter counter;
+        final Timer handlingTimer;
+        final Timer writingTimer;
+
+        Meters(Counter counter, Timer handlingTimer, Timer writingTimer) {
+            this.counter = counter;
+            this.handlingTimer = handlingTimer;
+            this.writingTimer = writingTimer;
+        }
+    }
+
+    private static final class MetersKey {
+
+        private final Class<?> exceptionClass;
+        private final Class<?> handlerClass;
+        private final HttpStatus status;
+
+        MetersKey(Class<?> exceptionClass, Class<?> handlerClass, HttpStatus status) {
+            this.exceptionClass = exceptionClass;
+            this.handlerClass = handlerClass;
+            this.status = status;
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            if (this == obj) {
+                return true;
+            }
+            if (!(obj instanceof MetersKey)) {
+                return false;
+            }
+            MetersKey other = (MetersKey) obj;
+            return exceptionClass == other.exceptionClass
+                    && handlerClass == other.handlerClass
+                    && status == other.status;
+        }
+
+        @Override
+        public int hashCode() {
+            return 31 * (31 * exceptionClass.hashCode() + handlerClass.hashCode()) + ObjectUtils.nullSafeHashCode(status);
+        }
+    }
+}
@@ -0,0 +1,152 @@
+/*
+ * Copyright 2016 Jakub Jirutka <jakub@jirutka.cz>.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package cz.jirutka.spring.exhandler.metrics;
+
+import cz.jirutka.spring.exhandler.handlers.RestExceptionHandler;
+import org.springframework.http.HttpStatus;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Default lock-free implementation of {@link ExceptionMetrics} that keeps counters and latency
+ * histograms in memory. The getters return snapshots of the current values.
+ */
+public class SimpleExceptionMetrics implements ExceptionMetrics {
+
+    private static final int MAX_STATUS = 600;
+
+    private final ConcurrentMap<Class<?>, AtomicLong> exceptionCounts = new ConcurrentHashMap<>(16);
+
+    private final ConcurrentMap<RestExceptionHandler<?, ?>, AtomicLong> handlerCounts = new ConcurrentHashMap<>(16);
+
+    private final ConcurrentMap<Class<?>, AtomicLong> failedCounts = new ConcurrentHashMap<>(4);
+
+    private final ConcurrentMap<Class<?>, AtomicLong> unhandledCounts = new ConcurrentHashMap<>(4);
+
+    private final AtomicLongArray statusCounts = new AtomicLongArray(MAX_STATUS);
+
+    private final LatencyHistogram handlingLatency = new LatencyHistogram();
+
+    private final LatencyHistogram writingLatency = new LatencyHistogram();
+
+
+    public void recordHandled(Class<? extends Exception> exceptionClass, RestExceptionHandler<?, ?> handler,
+                              HttpStatus status, long handlingNanos, long writingNanos) {
+
+        increment(exceptionCounts, exceptionClass);
+        increment(handlerCounts, handler);
+
+        if (status.value() < MAX_STATUS) {
+            statusCounts.incrementAndGet(status.value());
+        }
+        handlingLatency.record(handlingNanos);
+        writingLatency.record(writingNanos);
+    }
+
+    public void recordFailed(Class<? extends Exception> exceptionClass, RestExceptionHandler<?, ?> handler) {
+        increment(failedCounts, exceptionClass);
+    }
+
+    public void recordUnhandled(Class<? extends Exception> exceptionClass) {
+        increment(unhandledCounts, exceptionClass);
+    }
+
+
+    /**
+     * Returns numbers of handled exceptions per exception type.
+     */
+    public Map<Class<?>, Long> getExceptionCounts() {
+        return snapshot(exceptionCounts);
+    }
+
+    /**
+     * Returns numbers of handled exceptions per exception handler.
+     */
+    public Map<RestExceptionHandler<?, ?>, Long> getHandlerCounts() {
+        return snapshot(handlerCounts);
+    }
+
+    /**
+     * Returns numbers of handled exceptions whose response failed to be written, per exception
+     * type.
+     */
+    public Map<Class<?>, Long> getFailedCounts() {
+        return snapshot(failedCounts);
+    }
+
+    /**
+     * Returns numbers of exceptions without a handler per exception type.
+     */
+    public Map<Class<?>, Long> getUnhandledCounts() {
+        return snapshot(unhandledCounts);
+    }
+
+    /**
+     * Returns numbers of handled exceptions per HTTP status code (only non-zero counts).
+     */
+    public Map<Integer, Long> getStatusCounts() {
+        Map<Integer, Long> result = new LinkedHashMap<>();
+
+        for (int i = 0; i < MAX_STATUS; i++) {
+            long count = statusCounts.get(i);
+            if (count > 0) {
+                result.put(i, count);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Returns the histogram of time spent in the exception handlers.
+     */
+    public LatencyHistogram getHandlingLatency() {
+        return handlingLatency;
+    }
+
+    /**
+     * Returns the histogram of time spent by serializing and writing the responses.
+     */
+    public LatencyHistogram getWritingLatency() {
+        return writingLatency;
+    }
+
+
+    private static <K> void increment(ConcurrentMap<K, AtomicLong> counters, K key) {
+
+        AtomicLong counter = counters.get(key);
+        if (counter == null) {
+            AtomicLong existing = counters.putIfAbsent(key, counter = new AtomicLong());
+            if (existing != null) {
+                counter = existing;
+            }
+        }
+        counter.incrementAndGet();
+    }
+
+    private static <K> Map<K, Long> snapshot(Map<K, AtomicLong> counters) {
+        Map<K, Long> result = new LinkedHashMap<>(counters.size());
+
+        for (Map.Entry<K, AtomicLong> entry : counters.entrySet()) {
+            result.put(entry.getKey(), entry.getValue().get());
+        }
+        return result;
+    }
+}
@@ -31,6 +31,24 @@ public final class HttpMessageConverterUtils {
 
     private static final ClassLoader CLASSLOADER = HttpMessageConverterUtils.class.getClassLoader();
 
+    // the classpath is probed once, not on each call
+
+    private static final boolean JAXB2_PRESENT =
+            ClassUtils.isPresent("javax.xml.bind.Binder", CLASSLOADER);
+
+    private static final boolean JACKSON2_PRESENT =
+            ClassUtils.isPresent("com.fasterxml.jackson.databind.ObjectMapper", CLASSLOADER) &&
+            ClassUtils.isPresent("com.fasterxml.jackson.core.JsonGenerator", CLASSLOADER);
+
+    private static final boolean JACKSON_PRESENT =
+            ClassUtils.isPresent("org.codehaus.jackson.map.ObjectMapper", CLASSLOADER) &&
+            ClassUtils.isPresent("org.codehaus.jackson.JsonGenerator", CLASSLOADER);
+
+    // this class is not available since Spring 4.1.0
+    private static final Class<?> JACKSON_CONVERTER_CLASS = JACKSON_PRESENT && !JACKSON2_PRESENT
+            ? loadClassIfPresent("org.springframework.http.converter.json.MappingJacksonHttpMessageConverter")
+            : null;
+
     private HttpMessageConverterUtils() {}
 
     /**
@@ -39,7 +57,7 @@ public final class HttpMessageConverterUtils {
      * present or cannot be loaded.
      */
     public static boolean isJaxb2Present() {
-        return ClassUtils.isPresent("javax.xml.bind.Binder", CLASSLOADER);
+        return JAXB2_PRESENT;
     }
 
     /**
@@ -49,8 +67,7 @@ public final class HttpMessageConverterUtils {
      * or cannot be loaded.
      */
     public static boolean isJackson2Present() {
-        return ClassUtils.isPresent("com.fasterxml.jackson.databind.ObjectMapper", CLASSLOADER) &&
-                ClassUtils.isPresent("com.fasterxml.jackson.core.JsonGenerator", CLASSLOADER);
+        return JACKSON2_PRESENT;
     }
 
     /**
@@ -61,8 +78,7 @@ public final class HttpMessageConverterUtils {
      */
     @Deprecated
     public static boolean isJacksonPresent() {
-        return ClassUtils.isPresent("org.codehaus.jackson.map.ObjectMapper", CLASSLOADER) &&
-                ClassUtils.isPresent("org.codehaus.jackson.JsonGenerator", CLASSLOADER);
+        return JACKSON_PRESENT;
     }
 
     /**
@@ -72,7 +88,9 @@ public final class HttpMessageConverterUtils {
      *     <li>{@linkplain ByteArrayHttpMessageConverter}</li>
      *     <li>{@linkplain StringHttpMessageConverter}</li>
      *     <li>{@linkplain ResourceHttpMessageConverter}</li>
+     *     <li>{@linkplain ProblemXmlHttpMessageConverter}</li>
      *     <li>{@linkplain Jaxb2RootElementHttpMessageConverter} (when JAXB is present)</li>
+     *     <li>{@linkplain ProblemJsonHttpMessageConverter}</li>
      *     <li>{@linkplain MappingJackson2HttpMessageConverter} (when Jackson 2.x is present)</li>
      *     <li>{@linkplain org.springframework.http.converter.json.MappingJacksonHttpMessageConverter}
      *         (when Jackson 1.x is present and 2.x not)</li>
@@ -93,23 +111,32 @@ public final class HttpMessageConverterUtils {
         converters.add(stringConverter);
         converters.add(new ResourceHttpMessageConverter());
 
-        if (isJaxb2Present()) {
+        converters.add(new ProblemXmlHttpMessageConverter());
+
+        if (JAXB2_PRESENT) {
             converters.add(new Jaxb2RootElementHttpMessageConverter());
         }
-        if (isJackson2Present()) {
+        converters.add(new ProblemJsonHttpMessageConverter());
+
+        if (JACKSON2_PRESENT) {
             converters.add(new MappingJackson2HttpMessageConverter());
 
-        } else if (isJacksonPresent()) {
+        } else if (JACKSON_CONVERTER_CLASS != null) {
             try {
-                Class<?> clazz = Class.forName("org.springframework.http.converter.json.MappingJacksonHttpMessageConverter");
-                converters.add((HttpMessageConverter<?>) clazz.newInstance());
+                converters.add((HttpMessageConverter<?>) JACKSON_CONVERTER_CLASS.newInstance());
 
-            } catch (ClassNotFoundException ex) {
-                // Ignore it, this class is not available since Spring 4.1.0.
             } catch (InstantiationException | IllegalAccessException ex) {
                 throw new IllegalStateException(ex);
             }
         }
         return converters;
     }
+
+    private static Class<?> loadClassIfPresent(String className) {
+        try {
+            return ClassUtils.forName(className, CLASSLOADER);
+        } catch (ClassNotFoundException | LinkageError ex) {
+            return null;
+        }
+    }
 }
@@ -0,0 +1,241 @@
+/*
+ * Copyright 2016 Jakub Jirutka <jakub@jirutka.cz>.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package cz.jirutka.spring.exhandler.support;
+
+import java.io.IOException;
+import java.io.OutputStream;
+
+/**
+ * A minimal streaming writer of JSON encoded in UTF-8. It writes into a fixed-size buffer that is
+ * flushed into the underlying stream when full, so the memory used doesn't depend on the size of
+ * the written document. It doesn't validate the structure of the document.
+ */
+final class JsonWriter {
+
+    private static final byte[] HEX = "0123456789ABCDEF".getBytes();
+
+    private static final byte[]
+            TRUE = "true".getBytes(),
+            FALSE = "false".getBytes(),
+            NULL = "null".getBytes();
+
+    /** The maximum number of bytes written for a single char. */
+    private static final int MAX_CHAR_BYTES = 6;
+
+    private final OutputStream out;
+    private final byte[] buffer;
+    private int position = 0;
+
+    /** Whether the next value or name must be preceded by a comma. */
+    private boolean comma = false;
+
+
+    JsonWriter(OutputStream out, int bufferSize) {
+        this.out = out;
+        this.buffer = new byte[Math.max(bufferSize, 64)];
+    }
+
+
+    public JsonWriter beginObject() throws IOException {
+        writeCommaIfNeeded();
+        writeByte('{');
+        comma = false;
+        return this;
+    }
+
+    public JsonWriter endObject() throws IOException {
+        writeByte('}');
+        comma = true;
+        return this;
+    }
+
+    public JsonWriter beginArray() throws IOException {
+        writeCommaIfNeeded();
+        writeByte('[');
+        comma = false;
+        return this;
+    }
+
+    public JsonWriter endArray() throws IOException {
+        writeByte(']');
+        comma = true;
+        return this;
+    }
+
+    public JsonWriter name(String name) throws IOException {
+        writeCommaIfNeeded();
+        writeString(name);
+        writeByte(':');
+        comma = false;
+        return this;
+    }
+
+    public JsonWriter value(CharSequence value) throws IOException {
+        writeCommaIfNeeded();
+        writeString(value);
+        comma = true;
+        return this;
+    }
+
+    public JsonWriter value(boolean value) throws IOException {
+        writeCommaIfNeeded();
+        writeBytes(value ? TRUE : FALSE);
+        comma = true;
+        return this;
+    }
+
+    /**
+     * Writes the number as is, or as a string if it's not finite (the same as Jackson does
+     * by default).
+     */
+    public JsonWriter value(Number value) throws IOException {
+
+        if ((value instanceof Double && !isFinite(value.doubleValue()))
+                || (value instanceof Float && !isFinite(value.floatValue()))) {
+            return value(value.toString());
+        }
+        writeCommaIfNeeded();
+        writeAscii(value.toString());
+        comma = true;
+        return this;
+    }
+
+    public JsonWriter nullValue() throws IOException {
+        writeCommaIfNeeded();
+        writeBytes(NULL);
+        comma = true;
+        return this;
+    }
+
+    /**
+     * Writes the buffered bytes into the underlying stream and flushes it.
+     */
+    public void flush() throws IOException {
+        flushBuffer();
+        out.flush();
+    }
+
+
+    private void writeCommaIfNeeded() throws IOException {
+        if (comma) {
+            writeByte(',');
+        }
+    }
+
+    private void writeString(CharSequence str) throws IOException {
+
+        writeByte('"');
+
+        for (int i = 0, len = str.length(); i < len; i++) {
+            if (position + MAX_CHAR_BYTES > buffer.length) {
+                flushBuffer();
+            }
+            char ch = str.charAt(i);
+
+            if (ch >= 0x20 && ch < 0x80) {
+                if (ch == '"' || ch == '\\') {
+                    buffer[position++] = '\\';
+                }
+                buffer[position++] = (byte) ch;
+
+            } else if (ch < 0x20) {
+                writeEscapedControl(ch);
+
+            } else if (ch < 0x800) {
+                buffer[position++] = (byte) (0xc0 | (ch >> 6));
+                buffer[position++] = (byte) (0x80 | (ch & 0x3f));
+
+            } else if (Character.isHighSurrogate(ch) && i + 1 < len && Character.isLowSurrogate(str.charAt(i + 1))) {
+                int codePoint = Character.toCodePoint(ch, str.charAt(++i));
+                buffer[position++] = (byte) (0xf0 | (codePoint >> 18));
+                buffer[position++] = (byte) (0x80 | ((codePoint >> 12) & 0x3f));
+                buffer[position++] = (byte) (0x80 | ((codePoint >> 6) & 0x3f));
+                buffer[position++] = (byte) (0x80 | (codePoint & 0x3f));
+
+            } else if (Character.isSurrogate(ch)) {
+                // unpaired surrogate can't be encoded in UTF-8
+                buffer[position++] = '?';
+
+            } else {
+                buffer[position++] = (byte) (0xe0 | (ch >> 12));
+                buffer[position++] = (byte) (0x80 | ((ch >> 6) & 0x3f));
+                buffer[position++] = (byte) (0x80 | (ch & 0x3f));
+            }
+        }
+        writeByte('"');
+    }
+
+    private void writeEscapedControl(char ch) {
+
+        buffer[position++] = '\\';
+        switch (ch) {
+            case '\b': buffer[position++] = 'b'; break;
+            case '\f': buffer[position++] = 'f'; break;
+            case '\n': buffer[position++] = 'n'; break;
+            case '\r': buffer[position++] = 'r'; break;
+            case '\t': buffer[position++] = 't'; break;
+            default:
+                buffer[position++] = 'u';
+                buffer[position++] = '0';
+                buffer[position++] = '0';
+                buffer[position++] = HEX[ch >> 4];
+                buffer[position++] = HEX[ch & 0xf];
+        }
+    }
+
+    private void writeAscii(String str) throws IOException {
+
+        // the string may be longer than the buffer, e.g. a BigDecimal with many digits
+        for (int i = 0, len = str.length(); i < len; ) {
+            if (position == buffer.length) {
+                flushBuffer();
+            }
+            int end = Math.min(len, i + buffer.length - position);
+            while (i < end) {
+                buffer[position++] = (byte) str.charAt(i++);
+            }
+        }
+    }
+
+    private void writeBytes(byte[] bytes) throws IOException {
+
+        if (position + bytes.length > buffer.length) {
+            flushBuffer();
+        }
+        System.arraycopy(bytes, 0, buffer, position, bytes.length);
+        position += bytes.length;
+    }
+
+    private void writeByte(char ch) throws IOException {
+
+        if (position == buffer.length) {
+            flushBuffer();
+        }
+        buffer[position++] = (byte) ch;
+    }
+
+    private void flushBuffer() throws IOException {
+
+        if (position > 0) {
+            out.write(buffer, 0, position);
+            position = 0;
+        }
+    }
+
+    private static boolean isFinite(double value) {
+        return !Double.isNaN(value) && !Double.isInfinite(value);
+    }
+}
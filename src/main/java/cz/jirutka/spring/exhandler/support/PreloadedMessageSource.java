@@ -0,0 +1,333 @@
+/*
+ * Copyright 2016 Jakub Jirutka <jakub@jirutka.cz>.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package cz.jirutka.spring.exhandler.support;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.context.MessageSource;
+import org.springframework.context.MessageSourceResolvable;
+import org.springframework.context.NoSuchMessageException;
+import org.springframework.core.io.Resource;
+import org.springframework.core.io.support.PathMatchingResourcePatternResolver;
+import org.springframework.core.io.support.ResourcePatternResolver;
+import org.springframework.util.Assert;
+import org.springframework.util.ObjectUtils;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.Charset;
+import java.text.MessageFormat;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
+
+import static java.util.Collections.unmodifiableMap;
+
+/**
+ * {@link MessageSource} that loads the properties files of the given basename (i.e.
+ * {@code messages.properties}, {@code messages_cs.properties}, ...) into immutable tables.
+ *
+ * <p>The root bundle (i.e. {@code basename.properties}) is loaded eagerly, unless its messages
+ * are provided precompiled. A localized bundle is loaded on the first lookup of a locale that
+ * may use it. Each bundle is resolved by its exact name, e.g.
+ * {@code classpath:/cz/jirutka/spring/exhandler/messages_cs.properties}; when there's more than
+ * one such file, only the first one is used, the same as with
+ * {@link org.springframework.context.support.ReloadableResourceBundleMessageSource
+ * ReloadableResourceBundleMessageSource}.</p>
+ *
+ * <p>Unlike {@code ReloadableResourceBundleMessageSource}, the lookup of already loaded messages
+ * doesn't acquire any lock nor touch the filesystem, so it doesn't block (or pin a carrier
+ * thread) when many threads resolve messages at once. The loaded bundles are published by
+ * replacing an immutable map (copy-on-write); a lock is held only for this replacement, not for
+ * reading the files. {@link #reload()} replaces the root bundle and discards the localized
+ * ones.</p>
+ *
+ * <p>The locale fallback is the same as of the {@code ReloadableResourceBundleMessageSource}
+ * with {@code fallbackToSystemLocale} disabled: {@code basename_lang_COUNTRY_variant},
+ * {@code basename_lang_COUNTRY}, {@code basename_lang} and {@code basename}.</p>
+ */
+public class PreloadedMessageSource implements MessageSource {
+
+    private static final Logger LOG = LoggerFactory.getLogger(PreloadedMessageSource.class);
+
+    private static final String PROPERTIES_SUFFIX = ".properties";
+
+    /**
+     * The maximal number of cached locales; the bundles of other locales are resolved on every
+     * lookup. This bounds the memory used for arbitrary locales requested by clients.
+     */
+    private static final int LOCALES_CACHE_LIMIT = 256;
+
+    private final String basename;
+    private final Charset encoding;
+    private final ResourcePatternResolver resourceResolver;
+    private final Map<String, String> precompiledRootMessages;
+
+    private volatile Map<String, String> rootMessages;
+
+    /**
+     * The localized bundles (most specific first, without the root bundle) mapped by locale.
+     */
+    private volatile Map<Locale, List<Map<String, String>>> localizedBundles = Collections.emptyMap();
+
+    private final Lock localizedBundlesLock = new ReentrantLock();
+
+
+    /**
+     * @param basename The basename of the properties files, e.g.
+     *                 {@code classpath:/cz/jirutka/spring/exhandler/messages}.
+     * @param encoding The encoding of the properties files.
+     * @throws IllegalStateException if failed to read the root properties file.
+     */
+    public PreloadedMessageSource(String basename, Charset encoding) {
+        this(basename, encoding, new PathMatchingResourcePatternResolver());
+    }
+
+    public PreloadedMessageSource(String basename, Charset encoding, ResourcePatternResolver resourceResolver) {
+        this(basename, encoding, resourceResolver, null);
+    }
+
+    /**
+     * @param basename The basename of the properties files.
+     * @param encoding The encoding of the properties files.
+     * @param rootMessages The (e.g. precompiled) messages of the root bundle, used instead of
+     *                     the {@code basename.properties} file; the map is copied.
+     */
+    public PreloadedMessageSource(String basename, Charset encoding, Map<String, String> rootMessages) {
+        this(basename, encoding, new PathMatchingResourcePatternResolver(), rootMessages);
+    }
+
+    /**
+     * @param basename The basename of the properties files.
+     * @param encoding The encoding of the properties files.
+     * @param resourceResolver The resolver to find the properties files.
+     * @param rootMessages The (e.g. precompiled) messages of the root bundle, used instead of
+     *                     the {@code basename.properties} file; the map is copied. May be
+     *                     <tt>null</tt>.
+     * @throws IllegalStateException if failed to read the root properties file.
+     */
+    public PreloadedMessageSource(String basename, Charset encoding, ResourcePatternResolver resourceResolver,
+                                  Map<String, String> rootMessages) {
+        Assert.hasText(basename, "basename must not be empty");
+        Assert.notNull(encoding, "encoding must not be null");
+        Assert.notNull(resourceResolver, "resourceResolver must not be null");
+
+        this.basename = basename;
+        this.encoding = encoding;
+        this.resourceResolver = resourceResolver;
+        this.precompiledRootMessages = rootMessages != null ? unmodifiableMap(new HashMap<>(rootMessages)) : null;
+        this.rootMessages = loadRootMessages();
+    }
+
+
+    /**
+     * Loads the root properties file again (unless precompiled) and atomically replaces the
+     * root messages table. The localized bundles are discarded and loaded again on the next
+     * lookup.
+     *
+     * @throws IllegalStateException if failed to read the root properties file (the current
+     *         tables are retained in that case).
+     */
+    public void reload() {
+        Map<String, String> messages = loadRootMessages();
+
+        localizedBundlesLock.lock();
+        try {
+            this.rootMessages = messages;
+            this.localizedBundles = Collections.emptyMap();
+        } finally {
+            localizedBundlesLock.unlock();
+        }
+    }
+
+    public String getMessage(String code, Object[] args, String defaultMessage, Locale locale) {
+
+        String message = resolveMessage(code, args, locale);
+        if (message == null && defaultMessage != null) {
+            message = formatMessage(defaultMessage, args, locale);
+        }
+        return message;
+    }
+
+    public String getMessage(String code, Object[] args, Locale locale) {
+
+        String message = resolveMessage(code, args, locale);
+        if (message == null) {
+            throw new NoSuchMessageException(code, locale);
+        }
+        return message;
+    }
+
+    public String getMessage(MessageSourceResolvable resolvable, Locale locale) {
+
+        String[] codes = resolvable.getCodes();
+        if (codes != null) {
+            for (String code : codes) {
+                String message = resolveMessage(code, resolvable.getArguments(), locale);
+                if (message != null) {
+                    return message;
+                }
+            }
+        }
+        if (resolvable.getDefaultMessage() != null) {
+            return formatMessage(resolvable.getDefaultMessage(), resolvable.getArguments(), locale);
+        }
+        String code = !ObjectUtils.isEmpty(codes) ? codes[codes.length - 1] : null;
+        throw new NoSuchMessageException(code, locale);
+    }
+
+
+    protected String resolveMessage(String code, Object[] args, Locale locale) {
+
+        if (code == null) {
+            return null;
+        }
+        String message = lookup(code, locale);
+
+        return message != null ? formatMessage(message, args, locale) : null;
+    }
+
+    protected String formatMessage(String message, Object[] args, Locale locale) {
+
+        if (ObjectUtils.isEmpty(args)) {
+            return message;
+        }
+        Object[] resolvedArgs = new Object[args.length];
+        for (int i = 0; i < args.length; i++) {
+            resolvedArgs[i] = args[i] instanceof MessageSourceResolvable
+                    ? getMessage((MessageSourceResolvable) args[i], locale)
+                    : args[i];
+        }
+        // MessageFormat is not thread-safe, so it's cheaper to create a new one than to synchronize
+        return new MessageFormat(message, locale != null ? locale : Locale.ROOT).format(resolvedArgs);
+    }
+
+
+    private String lookup(String code, Locale locale) {
+
+        // no need to resolve the localized bundles for the root locale
+        if (locale != null && !locale.getLanguage().isEmpty()) {
+            for (Map<String, String> messages : getLocalizedBundles(locale)) {
+                String message = messages.get(code);
+                if (message != null) {
+                    return message;
+                }
+            }
+        }
+        return rootMessages.get(code);
+    }
+
+    private List<Map<String, String>> getLocalizedBundles(Locale locale) {
+
+        List<Map<String, String>> bundles = localizedBundles.get(locale);
+        if (bundles != null) {
+            return bundles;
+        }
+        // the files are read outside of the lock, so two threads may read the same file at once
+        bundles = loadLocalizedBundles(locale);
+
+        localizedBundlesLock.lock();
+        try {
+            Map<Locale, List<Map<String, String>>> current = localizedBundles;
+
+            if (!current.containsKey(locale) && current.size() < LOCALES_CACHE_LIMIT) {
+                Map<Locale, List<Map<String, String>>> copy = new HashMap<>(current);
+                copy.put(locale, bundles);
+                localizedBundles = unmodifiableMap(copy);
+            }
+        } finally {
+            localizedBundlesLock.unlock();
+        }
+        return bundles;
+    }
+
+    private List<Map<String, String>> loadLocalizedBundles(Locale locale) {
+
+        String lang = "_" + locale.getLanguage();
+        String country = locale.getCountry();
+        String variant = locale.getVariant();
+
+        List<String> suffixes = new ArrayList<>(3);
+        if (!variant.isEmpty()) {
+            suffixes.add(lang + "_" + country + "_" + variant);
+        }
+        if (!country.isEmpty()) {
+            suffixes.add(lang + "_" + country);
+        }
+        suffixes.add(lang);
+
+        List<Map<String, String>> bundles = new ArrayList<>(suffixes.size());
+        for (String suffix : suffixes) {
+            try {
+                Map<String, String> messages = loadMessages(suffix);
+                if (messages != null) {
+                    bundles.add(messages);
+                }
+            } catch (IOException ex) {
+                LOG.warn("Failed to load messages: {}{}", basename, suffix, ex);
+            }
+        }
+        return Collections.unmodifiableList(bundles);
+    }
+
+    private Map<String, String> loadRootMessages() {
+
+        if (precompiledRootMessages != null) {
+            return precompiledRootMessages;
+        }
+        try {
+            Map<String, String> messages = loadMessages("");
+            return messages != null ? messages : Collections.<String, String>emptyMap();
+
+        } catch (IOException ex) {
+            throw new IllegalStateException("Failed to load messages: " + basename, ex);
+        }
+    }
+
+    /**
+     * Loads the first existing properties file with the given suffix, or returns <tt>null</tt>
+     * if there's none.
+     */
+    private Map<String, String> loadMessages(String suffix) throws IOException {
+
+        for (Resource resource : resourceResolver.getResources(basename + suffix + PROPERTIES_SUFFIX)) {
+            if (resource.exists()) {
+                return loadProperties(resource);
+            }
+        }
+        return null;
+    }
+
+    private Map<String, String> loadProperties(Resource resource) throws IOException {
+
+        Properties props = new Properties();
+        try (InputStream is = resource.getInputStream()) {
+            props.load(new InputStreamReader(is, encoding));
+        }
+        Map<String, String> messages = new HashMap<>(props.size() * 2);
+        for (String key : props.stringPropertyNames()) {
+            messages.put(key, props.getProperty(key));
+        }
+        return unmodifiableMap(messages);
+    }
+}
@@ -0,0 +1,194 @@
+/*
+ * Copyright 2016 Jakub Jirutka <jakub@jirutka.cz>.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package cz.jirutka.spring.exhandler.support;
+
+import cz.jirutka.spring.exhandler.messages.ErrorMessage;
+import cz.jirutka.spring.exhandler.messages.ValidationErrorMessage;
+import org.springframework.http.HttpInputMessage;
+import org.springframework.http.HttpOutputMessage;
+import org.springframework.http.MediaType;
+import org.springframework.http.converter.AbstractHttpMessageConverter;
+import org.springframework.http.converter.HttpMessageNotReadableException;
+import org.springframework.util.ObjectUtils;
+
+import java.io.IOException;
+import java.lang.reflect.Array;
+import java.net.URI;
+import java.nio.charset.Charset;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * {@link org.springframework.http.converter.HttpMessageConverter HttpMessageConverter} that
+ * writes {@link ErrorMessage} and {@link ValidationErrorMessage} as JSON
+ * ({@code application/problem+json} or {@code application/json}) directly, without Jackson or
+ * reflection. The output is the same as of Jackson with the annotations on these classes, i.e.
+ * the same properties in the same order and the empty ones omitted.
+ *
+ * <p>The rejected values of the validation errors are written as JSON strings, numbers and
+ * booleans, or arrays and objects for collections, arrays and maps; any other object is written
+ * as a string using its {@code toString()}, unlike Jackson that would serialize it as a bean.</p>
+ *
+ * <p>It supports exactly these two classes, not their subclasses (that may have additional
+ * properties), so these are left for the next converter, e.g. Jackson. It does not support
+ * reading.</p>
+ */
+public class ProblemJsonHttpMessageConverter extends AbstractHttpMessageConverter<ErrorMessage> {
+
+    public static final Charset DEFAULT_CHARSET = Charset.forName("UTF-8");
+
+    public static final MediaType APPLICATION_PROBLEM_JSON =
+            new MediaType("application", "problem+json", DEFAULT_CHARSET);
+
+    private static final int BUFFER_SIZE = 512;
+
+
+    public ProblemJsonHttpMessageConverter() {
+        super(new MediaType("application", "json", DEFAULT_CHARSET),
+              APPLICATION_PROBLEM_JSON,
+              new MediaType("application", "*+json", DEFAULT_CHARSET));
+    }
+
+
+    @Override
+    protected boolean supports(Class<?> clazz) {
+        return clazz == ErrorMessage.class || clazz == ValidationErrorMessage.class;
+    }
+
+    @Override
+    public boolean canRead(Class<?> clazz, MediaType mediaType) {
+        return false;
+    }
+
+    @Override
+    protected ErrorMessage readInternal(Class<? extends ErrorMessage> clazz, HttpInputMessage inputMessage) {
+        throw new HttpMessageNotReadableException("Reading is not supported");
+    }
+
+    @Override
+    protected void writeInternal(ErrorMessage message, HttpOutputMessage outputMessage) throws IOException {
+
+        JsonWriter writer = new JsonWriter(outputMessage.getBody(), BUFFER_SIZE);
+        writer.beginObject();
+
+        writeProperty(writer, "type", message.getType());
+        writeProperty(writer, "title", message.getTitle());
+        if (message.getStatus() != null) {
+            writer.name("status").value(message.getStatus());
+        }
+        writeProperty(writer, "detail", message.getDetail());
+        writeProperty(writer, "instance", message.getInstance());
+
+        if (message instanceof ValidationErrorMessage) {
+            writeValidationProperties(writer, (ValidationErrorMessage) message);
+        }
+        writer.endObject();
+        writer.flush();
+    }
+
+
+    private void writeValidationProperties(JsonWriter writer, ValidationErrorMessage message) throws IOException {
+
+        List<ValidationErrorMessage.Error> errors = message.getErrors();
+
+        if (errors != null && !errors.isEmpty()) {
+            writer.name("errors").beginArray();
+
+            for (ValidationErrorMessage.Error error : errors) {
+                writer.beginObject();
+                writeProperty(writer, "field", error.getField());
+                if (!isEmpty(error.getRejected())) {
+                    writeValue(writer.name("rejected"), error.getRejected());
+                }
+                writeProperty(writer, "message", error.getMessage());
+                writer.endObject();
+            }
+            writer.endArray();
+        }
+        if (message.getTotalErrors() != null) {
+            writer.name("totalErrors").value(message.getTotalErrors());
+        }
+    }
+
+    private void writeProperty(JsonWriter writer, String name, String value) throws IOException {
+        if (value != null && !value.isEmpty()) {
+            writer.name(name).value(value);
+        }
+    }
+
+    private void writeProperty(JsonWriter writer, String name, URI value) throws IOException {
+        if (value != null) {
+            writeProperty(writer, name, value.toString());
+        }
+    }
+
+    private void writeValue(JsonWriter writer, Object value) throws IOException {
+
+        if (value == null) {
+            writer.nullValue();
+
+        } else if (value instanceof CharSequence) {
+            writer.value((CharSequence) value);
+
+        } else if (value instanceof Number) {
+            writer.value((Number) value);
+
+        } else if (value instanceof Boolean) {
+            writer.value((Boolean) value);
+
+        } else if (value instanceof Enum) {
+            writer.value(((Enum) value).name());
+
+        } else if (value instanceof Collection) {
+            writer.beginArray();
+            for (Object item : (Collection) value) {
+                writeValue(writer, item);
+            }
+            writer.endArray();
+
+        } else if (value.getClass().isArray()) {
+            writer.beginArray();
+            for (Object item : ObjectUtils.toObjectArray(value)) {
+                writeValue(writer, item);
+            }
+            writer.endArray();
+
+        } else if (value instanceof Map) {
+            writer.beginObject();
+            for (Map.Entry<?, ?> entry : ((Map<?, ?>) value).entrySet()) {
+                writer.name(String.valueOf(entry.getKey()));
+                writeValue(writer, entry.getValue());
+            }
+            writer.endObject();
+
+        } else {
+            writer.value(value.toString());
+        }
+    }
+
+    /**
+     * Whether the value is empty in terms of Jackson's {@code NON_EMPTY} inclusion.
+     */
+    private static boolean isEmpty(Object value) {
+
+        return value == null
+                || value instanceof CharSequence && ((CharSequence) value).length() == 0
+                || value instanceof Collection && ((Collection) value).isEmpty()
+                || value instanceof Map && ((Map) value).isEmpty()
+                || value.getClass().isArray() && Array.getLength(value) == 0;
+    }
+}
@@ -0,0 +1,158 @@
+/*
+ * Copyright 2016 Jakub Jirutka <jakub@jirutka.cz>.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package cz.jirutka.spring.exhandler.support;
+
+import cz.jirutka.spring.exhandler.messages.ErrorMessage;
+import cz.jirutka.spring.exhandler.messages.ValidationErrorMessage;
+import org.springframework.http.HttpInputMessage;
+import org.springframework.http.HttpOutputMessage;
+import org.springframework.http.MediaType;
+import org.springframework.http.converter.AbstractHttpMessageConverter;
+import org.springframework.http.converter.HttpMessageNotReadableException;
+import org.springframework.http.converter.HttpMessageNotWritableException;
+
+import javax.xml.stream.XMLOutputFactory;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamWriter;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.Charset;
+import java.util.Collection;
+
+/**
+ * {@link org.springframework.http.converter.HttpMessageConverter HttpMessageConverter} that
+ * writes {@link ErrorMessage} and {@link ValidationErrorMessage} as XML using the StAX
+ * {@link XMLStreamWriter}. The output is the same as of the
+ * {@link org.springframework.http.converter.xml.Jaxb2RootElementHttpMessageConverter
+ * Jaxb2RootElementHttpMessageConverter}, i.e. the {@code problem} root element with an element
+ * for each non-null property, in alphabetical order. Unlike JAXB, it doesn't need to create
+ * a {@code JAXBContext} (which is notably slow) and works also without JAXB on the classpath.
+ *
+ * <p>This includes the validation {@link ValidationErrorMessage.Error errors} that are written as
+ * empty elements, the same as JAXB does, because they're immutable (they have no setters).</p>
+ *
+ * <p>It supports exactly these two classes, not their subclasses (that may have additional
+ * properties), so these are left for the next converter, e.g. JAXB. It does not support
+ * reading.</p>
+ */
+public class ProblemXmlHttpMessageConverter extends AbstractHttpMessageConverter<ErrorMessage> {
+
+    public static final Charset DEFAULT_CHARSET = Charset.forName("UTF-8");
+
+    private static final String ROOT_ELEMENT = "problem";
+
+    /**
+     * The XML declaration written by JAXB; {@link XMLStreamWriter} can't write the standalone
+     * attribute.
+     */
+    private static final String XML_DECLARATION = "<?xml version=\"1.0\" encoding=\"%s\" standalone=\"yes\"?>";
+
+    // the factory is thread-safe once configured, unlike the writers
+    private final XMLOutputFactory outputFactory = XMLOutputFactory.newInstance();
+
+
+    public ProblemXmlHttpMessageConverter() {
+        super(MediaType.APPLICATION_XML, MediaType.TEXT_XML, new MediaType("application", "*+xml"));
+    }
+
+
+    @Override
+    protected boolean supports(Class<?> clazz) {
+        return clazz == ErrorMessage.class || clazz == ValidationErrorMessage.class;
+    }
+
+    @Override
+    public boolean canRead(Class<?> clazz, MediaType mediaType) {
+        return false;
+    }
+
+    @Override
+    protected ErrorMessage readInternal(Class<? extends ErrorMessage> clazz, HttpInputMessage inputMessage) {
+        throw new HttpMessageNotReadableException("Reading is not supported");
+    }
+
+    @Override
+    protected void writeInternal(ErrorMessage message, HttpOutputMessage outputMessage) throws IOException {
+
+        MediaType contentType = outputMessage.getHeaders().getContentType();
+        Charset charset = contentType != null && contentType.getCharSet() != null
+                ? contentType.getCharSet()
+                : DEFAULT_CHARSET;
+
+        OutputStream body = outputMessage.getBody();
+        body.write(String.format(XML_DECLARATION, charset.name()).getBytes(charset));
+
+        try {
+            XMLStreamWriter writer = outputFactory.createXMLStreamWriter(body, charset.name());
+            writeMessage(writer, message);
+            writer.writeEndDocument();
+            writer.flush();
+            writer.close();
+
+        } catch (XMLStreamException ex) {
+            throw new HttpMessageNotWritableException("Could not write XML: " + ex.getMessage(), ex);
+        }
+    }
+
+
+    private void writeMessage(XMLStreamWriter writer, ErrorMessage message) throws XMLStreamException {
+
+        ValidationErrorMessage validationMessage = message instanceof ValidationErrorMessage
+                ? (ValidationErrorMessage) message
+                : null;
+
+        boolean empty = message.getDetail() == null && message.getInstance() == null
+                && message.getStatus() == null && message.getTitle() == null && message.getType() == null
+                && (validationMessage == null
+                    || isEmpty(validationMessage.getErrors()) && validationMessage.getTotalErrors() == null);
+
+        if (empty) {
+            writer.writeEmptyElement(ROOT_ELEMENT);
+            return;
+        }
+        writer.writeStartElement(ROOT_ELEMENT);
+
+        writeElement(writer, "detail", message.getDetail());
+        writeElement(writer, "instance", message.getInstance());
+        writeElement(writer, "status", message.getStatus());
+        writeElement(writer, "title", message.getTitle());
+        writeElement(writer, "type", message.getType());
+
+        if (validationMessage != null) {
+            if (validationMessage.getErrors() != null) {
+                // JAXB doesn't write any properties of the errors, see the class description
+                for (int i = 0; i < validationMessage.getErrors().size(); i++) {
+                    writer.writeEmptyElement("errors");
+                }
+            }
+            writeElement(writer, "totalErrors", validationMessage.getTotalErrors());
+        }
+        writer.writeEndElement();
+    }
+
+    private void writeElement(XMLStreamWriter writer, String name, Object value) throws XMLStreamException {
+
+        if (value != null) {
+            writer.writeStartElement(name);
+            writer.writeCharacters(value.toString());
+            writer.writeEndElement();
+        }
+    }
+
+    private static boolean isEmpty(Collection<?> collection) {
+        return collection == null || collection.isEmpty();
+    }
+}
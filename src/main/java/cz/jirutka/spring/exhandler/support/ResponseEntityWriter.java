@@ -0,0 +1,430 @@
+/*
+ * Copyright 2016 Jakub Jirutka <jakub@jirutka.cz>.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package cz.jirutka.spring.exhandler.support;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.http.converter.HttpMessageConverter;
+import org.springframework.http.server.ServerHttpResponse;
+import org.springframework.http.server.ServletServerHttpResponse;
+import org.springframework.util.Assert;
+import org.springframework.util.ObjectUtils;
+import org.springframework.util.StringUtils;
+import org.springframework.web.HttpMediaTypeNotAcceptableException;
+import org.springframework.web.accept.ContentNegotiationManager;
+import org.springframework.web.context.request.NativeWebRequest;
+
+import javax.servlet.http.HttpServletResponse;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
+
+import static org.springframework.http.MediaType.ALL;
+import static org.springframework.http.MediaType.APPLICATION_OCTET_STREAM;
+
+/**
+ * Writes a {@link ResponseEntity} directly into the servlet response using the first
+ * {@link HttpMessageConverter} that can write the body in the negotiated media type.
+ *
+ * <p>The media type and converter are selected in the same way as in
+ * {@link org.springframework.web.servlet.mvc.method.annotation.HttpEntityMethodProcessor
+ * HttpEntityMethodProcessor}, but the decision is cached for each combination of the requested
+ * media types and type of the body, so it's made just once. When none of the requested media
+ * types can be produced, the fallback media type is used (if provided).</p>
+ *
+ * <p>If the content negotiation depends only on the <i>Accept</i> header (see
+ * {@link #setAcceptHeaderOnly(boolean)}), the decision is cached directly by the raw value(s) of
+ * this header, so it doesn't even need to be parsed. This cache holds up to 64 distinct headers;
+ * when it's full, the least recently used entry is evicted. It's guarded by a lock that is held
+ * only for the lookup, not for the negotiation itself.</p>
+ */
+public class ResponseEntityWriter {
+
+    private static final Logger LOG = LoggerFactory.getLogger(ResponseEntityWriter.class);
+
+    private static final MediaType MEDIA_TYPE_APPLICATION = new MediaType("application");
+
+    private static final int SELECTIONS_CACHE_LIMIT = 256;
+
+    private static final int ACCEPT_CACHE_LIMIT = 64;
+
+    /**
+     * Marker stored in the {@link #selectionsCache} when no converter is found.
+     */
+    private static final Selection NOT_WRITABLE = new Selection(null, null);
+
+    private final List<HttpMessageConverter<?>> messageConverters;
+
+    private final ContentNegotiationManager contentNegotiationManager;
+
+    private final MediaType fallbackMediaType;
+
+    private final ConcurrentMap<SelectionKey, Selection> selectionsCache = new ConcurrentHashMap<>(16);
+
+    /** Access-ordered, so the eldest entry is the least recently used one. */
+    private final Map<AcceptKey, Selection> acceptCache = new LinkedHashMap<AcceptKey, Selection>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<AcceptKey, Selection> eldest) {
+            return size() > ACCEPT_CACHE_LIMIT;
+        }
+    };
+
+    private final Lock acceptCacheLock = new ReentrantLock();
+
+    private boolean acceptHeaderOnly = false;
+
+
+    public ResponseEntityWriter(List<HttpMessageConverter<?>> messageConverters,
+                                ContentNegotiationManager contentNegotiationManager) {
+        this(messageConverters, contentNegotiationManager, null);
+    }
+
+    /**
+     * @param messageConverters The message converters to write the response body.
+     * @param contentNegotiationManager The manager to resolve the requested media types.
+     * @param fallbackMediaType The media type to use when none of the requested media types can
+     *                          be produced, or the requested media types cannot be parsed.
+     *                          May be <tt>null</tt>.
+     */
+    public ResponseEntityWriter(List<HttpMessageConverter<?>> messageConverters,
+                                ContentNegotiationManager contentNegotiationManager,
+                                MediaType fallbackMediaType) {
+        Assert.notEmpty(messageConverters, "messageConverters must not be empty");
+        Assert.notNull(contentNegotiationManager, "contentNegotiationManager must not be null");
+
+        this.messageConverters = messageConverters;
+        this.contentNegotiationManager = contentNegotiationManager;
+        this.fallbackMediaType = fallbackMediaType;
+    }
+
+
+    /**
+     * Writes the given response entity into the response of the given web request.
+     *
+     * @param entity The response entity to write.
+     * @param webRequest The current web request.
+     * @return <tt>true</tt> if the entity has been written, or <tt>false</tt> if there's no
+     *         converter that can write the entity body in any of the requested media types,
+     *         nor the fallback media type. In the latter case nothing has been written into
+     *         the response.
+     * @throws IOException in case of I/O errors.
+     */
+    public boolean write(ResponseEntity<?> entity, NativeWebRequest webRequest) throws IOException {
+        return write(entity, webRequest,
+                new ServletServerHttpResponse(webRequest.getNativeResponse(HttpServletResponse.class)));
+    }
+
+    /**
+     * Writes the given response entity into the given output message, negotiating the media
+     * type for the given web request.
+     *
+     * @param entity The response entity to write.
+     * @param webRequest The current web request.
+     * @param outputMessage The output message to write the entity into.
+     * @return <tt>true</tt> if the entity has been written, or <tt>false</tt> if there's no
+     *         converter that can write the entity body in any of the requested media types,
+     *         nor the fallback media type.
+     * @throws IOException in case of I/O errors.
+     * @see #write(ResponseEntity, NativeWebRequest)
+     */
+    @SuppressWarnings("unchecked")
+    public boolean write(ResponseEntity<?> entity, NativeWebRequest webRequest, ServerHttpResponse outputMessage)
+            throws IOException {
+
+        Object body = entity.getBody();
+        Selection selection = null;
+
+        if (body != null) {
+            selection = negotiate(webRequest, body.getClass());
+            if (selection == NOT_WRITABLE) {
+                return false;
+            }
+        }
+        outputMessage.setStatusCode(entity.getStatusCode());
+        outputMessage.getHeaders().putAll(entity.getHeaders());
+
+        if (selection != null) {
+            ((HttpMessageConverter<Object>) selection.converter).write(body, selection.mediaType, outputMessage);
+            LOG.debug("Written [{}] as \"{}\" using [{}]", body, selection.mediaType, selection.converter);
+
+        } else {
+            // ensure that headers are written even without body
+            outputMessage.getBody().flush();
+        }
+        return true;
+    }
+
+    /**
+     * Determines whether the body of the given type can be written in any of the media types
+     * requested by the client, i.e. without falling back to the fallback media type. The result
+     * is cached in the same way as for {@link #write(ResponseEntity, NativeWebRequest) write}.
+     *
+     * @param bodyClass The type of the response body.
+     * @param webRequest The current request.
+     */
+    public boolean canWriteRequested(Class<?> bodyClass, NativeWebRequest webRequest) {
+        return getRequestedMediaType(bodyClass, webRequest) != null;
+    }
+
+    /**
+     * Returns the media type in which the body of the given type would be written, if it's one
+     * of the media types requested by the client, i.e. without falling back to the fallback media
+     * type. The result is cached in the same way as for {@link #write(ResponseEntity,
+     * NativeWebRequest) write}.
+     *
+     * @param bodyClass The type of the response body.
+     * @param webRequest The current request.
+     * @return The negotiated media type, or <tt>null</tt> if none of the requested media types
+     *         can be produced.
+     */
+    public MediaType getRequestedMediaType(Class<?> bodyClass, NativeWebRequest webRequest) {
+        Selection selection = negotiate(webRequest, bodyClass);
+        return selection != NOT_WRITABLE && !selection.fallback ? selection.mediaType : null;
+    }
+
+    /**
+     * Whether the used {@link ContentNegotiationManager} resolves the requested media types
+     * solely from the <i>Accept</i> header (and possibly a fixed default). If <tt>true</tt>, the
+     * negotiation result is cached by the raw value of the header. Default is <tt>false</tt>.
+     */
+    public void setAcceptHeaderOnly(boolean acceptHeaderOnly) {
+        this.acceptHeaderOnly = acceptHeaderOnly;
+    }
+
+
+    Selection negotiate(NativeWebRequest webRequest, Class<?> bodyClass) {
+
+        if (!acceptHeaderOnly) {
+            return doNegotiate(webRequest, bodyClass);
+        }
+        AcceptKey key = new AcceptKey(getAcceptHeader(webRequest), bodyClass);
+        Selection selection;
+
+        acceptCacheLock.lock();
+        try {
+            selection = acceptCache.get(key);
+        } finally {
+            acceptCacheLock.unlock();
+        }
+        if (selection == null) {
+            selection = doNegotiate(webRequest, bodyClass);
+
+            acceptCacheLock.lock();
+            try {
+                acceptCache.put(key, selection);
+            } finally {
+                acceptCacheLock.unlock();
+            }
+        }
+        return selection;
+    }
+
+    /**
+     * Returns all values of the Accept header joined by a comma, which is equivalent to a single
+     * header with all the values, or <tt>null</tt> if there's no such header.
+     */
+    public static String getAcceptHeader(NativeWebRequest webRequest) {
+
+        String[] values = webRequest.getHeaderValues(HttpHeaders.ACCEPT);
+        if (values == null || values.length == 0) {
+            return null;
+        }
+        return values.length == 1 ? values[0] : StringUtils.arrayToDelimitedString(values, ", ");
+    }
+
+    private Selection doNegotiate(NativeWebRequest webRequest, Class<?> bodyClass) {
+
+        Selection selection;
+        try {
+            selection = selectConverter(contentNegotiationManager.resolveMediaTypes(webRequest), bodyClass);
+
+        } catch (HttpMediaTypeNotAcceptableException ex) {
+            LOG.debug("Failed to resolve requested media types: {}", ex.getMessage());
+            selection = NOT_WRITABLE;
+        }
+
+        if (selection == NOT_WRITABLE && fallbackMediaType != null) {
+            LOG.debug("Requested media type is not supported, falling back to default one");
+            selection = selectConverter(Collections.singletonList(fallbackMediaType), bodyClass);
+
+            if (selection != NOT_WRITABLE) {
+                selection = new Selection(selection.converter, selection.mediaType, true);
+            }
+        }
+        return selection;
+    }
+
+    Selection selectConverter(List<MediaType> requestedMediaTypes, Class<?> bodyClass) {
+
+        SelectionKey key = new SelectionKey(requestedMediaTypes, bodyClass);
+        Selection selection = selectionsCache.get(key);
+
+        if (selection == null) {
+            selection = findConverter(requestedMediaTypes, bodyClass);
+
+            if (selectionsCache.size() < SELECTIONS_CACHE_LIMIT) {
+                selectionsCache.put(key, selection);
+            }
+        }
+        return selection;
+    }
+
+    private Selection findConverter(List<MediaType> requestedMediaTypes, Class<?> bodyClass) {
+
+        // nothing requested means anything is acceptable, the same as in Spring
+        if (requestedMediaTypes.isEmpty()) {
+            requestedMediaTypes = Collections.singletonList(ALL);
+        }
+        List<MediaType> producibleMediaTypes = getProducibleMediaTypes(bodyClass);
+
+        Set<MediaType> compatibleMediaTypes = new LinkedHashSet<>();
+        for (MediaType requestedType : requestedMediaTypes) {
+            for (MediaType producibleType : producibleMediaTypes) {
+                if (requestedType.isCompatibleWith(producibleType)) {
+                    compatibleMediaTypes.add(getMostSpecificMediaType(requestedType, producibleType));
+                }
+            }
+        }
+        List<MediaType> mediaTypes = new ArrayList<>(compatibleMediaTypes);
+        MediaType.sortBySpecificityAndQuality(mediaTypes);
+
+        MediaType selectedMediaType = null;
+        for (MediaType mediaType : mediaTypes) {
+            if (mediaType.isConcrete()) {
+                selectedMediaType = mediaType;
+                break;
+
+            } else if (mediaType.equals(ALL) || mediaType.equals(MEDIA_TYPE_APPLICATION)) {
+                selectedMediaType = APPLICATION_OCTET_STREAM;
+                break;
+            }
+        }
+        if (selectedMediaType != null) {
+            selectedMediaType = selectedMediaType.removeQualityValue();
+
+            for (HttpMessageConverter<?> converter : messageConverters) {
+                if (converter.canWrite(bodyClass, selectedMediaType)) {
+                    return new Selection(converter, selectedMediaType);
+                }
+            }
+        }
+        return NOT_WRITABLE;
+    }
+
+    private List<MediaType> getProducibleMediaTypes(Class<?> bodyClass) {
+
+        List<MediaType> result = new ArrayList<>();
+        for (HttpMessageConverter<?> converter : messageConverters) {
+            if (converter.canWrite(bodyClass, null)) {
+                result.addAll(converter.getSupportedMediaTypes());
+            }
+        }
+        return result;
+    }
+
+    private MediaType getMostSpecificMediaType(MediaType acceptType, MediaType produceType) {
+        MediaType produceTypeToUse = produceType.copyQualityValue(acceptType);
+        return MediaType.SPECIFICITY_COMPARATOR.compare(acceptType, produceTypeToUse) <= 0 ? acceptType : produceTypeToUse;
+    }
+
+
+    //////// Inner classes ////////
+
+    static final class Selection {
+
+        final HttpMessageConverter<?> converter;
+        final MediaType mediaType;
+        final boolean fallback;
+
+        Selection(HttpMessageConverter<?> converter, MediaType mediaType) {
+            this(converter, mediaType, false);
+        }
+
+        Selection(HttpMessageConverter<?> converter, MediaType mediaType, boolean fallback) {
+            this.converter = converter;
+            this.mediaType = mediaType;
+            this.fallback = fallback;
+        }
+    }
+
+    private static final class SelectionKey {
+
+        private final List<MediaType> mediaTypes;
+        private final Class<?> bodyClass;
+
+        SelectionKey(List<MediaType> mediaTypes, Class<?> bodyClass) {
+            this.mediaTypes = mediaTypes;
+            this.bodyClass = bodyClass;
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            if (this == obj) {
+                return true;
+            }
+            if (!(obj instanceof SelectionKey)) {
+                return false;
+            }
+            SelectionKey other = (SelectionKey) obj;
+            return bodyClass == other.bodyClass && mediaTypes.equals(other.mediaTypes);
+        }
+
+        @Override
+        public int hashCode() {
+            return 31 * mediaTypes.hashCode() + bodyClass.hashCode();
+        }
+    }
+
+    private static final class AcceptKey {
+
+        private final String accept;
+        private final Class<?> bodyClass;
+
+        AcceptKey(String accept, Class<?> bodyClass) {
+            this.accept = accept;
+            this.bodyClass = bodyClass;
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            if (this == obj) {
+                return true;
+            }
+            if (!(obj instanceof AcceptKey)) {
+                return false;
+            }
+            AcceptKey other = (AcceptKey) obj;
+            return bodyClass == other.bodyClass && ObjectUtils.nullSafeEquals(accept, other.accept);
+        }
+
+        @Override
+        public int hashCode() {
+            return 31 * ObjectUtils.nullSafeHashCode(accept) + bodyClass.hashCode();
+        }
+    }
+}
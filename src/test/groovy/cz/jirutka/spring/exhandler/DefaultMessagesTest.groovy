@@ -0,0 +1,53 @@
+/*
+ * Copyright 2016 Jakub Jirutka <jakub@jirutka.cz>.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package cz.jirutka.spring.exhandler
+
+import org.springframework.core.io.ClassPathResource
+import org.springframework.core.io.support.PropertiesLoaderUtils
+import spock.lang.Specification
+
+class DefaultMessagesTest extends Specification {
+
+    def 'contains the same messages as messages.properties'() {
+        setup:
+            def props = PropertiesLoaderUtils.loadProperties(
+                    new ClassPathResource('cz/jirutka/spring/exhandler/messages.properties'))
+        expect:
+            DefaultMessages.getMessages() == props
+    }
+
+    def 'createMessageSource: resolves the localized messages from the classpath'() {
+        setup:
+            def source = DefaultMessages.createMessageSource()
+            def code = 'org.springframework.web.servlet.NoHandlerFoundException.title'
+        expect:
+            source.getMessage(code, null, Locale.ENGLISH) == 'Not Found'
+            source.getMessage(code, null, new Locale('cs')) == 'Nenalezeno'
+    }
+
+    def 'createMessageSource: loads the localized messages on the first lookup of their locale'() {
+        setup:
+            def source = DefaultMessages.createMessageSource()
+            def code = 'org.springframework.web.servlet.NoHandlerFoundException.title'
+        expect:
+            source.getMessage(code, null, Locale.ROOT) == 'Not Found'
+            source.@localizedBundles.isEmpty()
+        when:
+            source.getMessage(code, null, new Locale('cs'))
+        then:
+            source.@localizedBundles.keySet() == [new Locale('cs')] as Set
+    }
+}
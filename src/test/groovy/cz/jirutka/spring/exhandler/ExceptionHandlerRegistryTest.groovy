@@ -0,0 +1,232 @@
+/*
+ * Copyright 2016 Jakub Jirutka <jakub@jirutka.cz>.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package cz.jirutka.spring.exhandler
+
+import cz.jirutka.spring.exhandler.handlers.RestExceptionHandler
+import spock.lang.Specification
+import spock.lang.Unroll
+
+import java.lang.reflect.UndeclaredThrowableException
+import java.security.InvalidParameterException
+import java.sql.SQLException
+import java.util.concurrent.ConcurrentLinkedQueue
+import java.util.concurrent.atomic.AtomicInteger
+
+class ExceptionHandlerRegistryTest extends Specification {
+
+    def handlers = new RestExceptionHandler[3].collect { Mock(RestExceptionHandler) }
+
+    def registry = new ExceptionHandlerRegistry([
+            (NumberFormatException): handlers[2],
+            (IllegalArgumentException): handlers[1],
+            (IOException): handlers[0]
+    ])
+
+
+    @Unroll
+    def 'resolveHandler: returns handler of #exceptionClass.simpleName or its nearest superclass'() {
+        expect:
+            registry.resolveHandler(exceptionClass).is(handlers[handlerNum])
+        where:
+            exceptionClass            | handlerNum
+            NumberFormatException     | 2
+            IllegalArgumentException  | 1
+            InvalidParameterException | 1
+            FileNotFoundException     | 0
+    }
+
+    def 'resolveHandler: returns null when there is no handler for the exception nor its superclasses'() {
+        expect:
+            2.times { assert registry.resolveHandler(IllegalStateException) == null }
+    }
+
+    def 'is not affected by changes of the source map'() {
+        setup:
+            def source = [(IOException): handlers[0]] as Map
+            def registry = new ExceptionHandlerRegistry(source)
+        when:
+            source[IllegalStateException] = handlers[1]
+        then:
+            registry.resolveHandler(IllegalStateException) == null
+            registry.size() == 1
+    }
+
+    def 'asMap: returns unmodifiable map'() {
+        when:
+            registry.asMap()[Exception] = handlers[0]
+        then:
+            thrown UnsupportedOperationException
+    }
+
+    def 'creates lazy handler on the first resolution of its exception type'() {
+        setup:
+            def created = 0
+            def lazy = new LazyRestExceptionHandler() {
+                protected RestExceptionHandler createHandler() { created++; handlers[0] }
+            }
+            def registry = new ExceptionHandlerRegistry([(IOException): lazy, (Exception): handlers[1]])
+        when:
+            registry.resolveHandledException(new IOException())
+            registry.resolveHandler(IllegalStateException)
+        then:
+            created == 0
+        when:
+            2.times { assert registry.resolveHandler(FileNotFoundException).is(handlers[0]) }
+        then:
+            created == 1
+            registry.asMap()[IOException].is(handlers[0])
+    }
+
+    def 'creates lazy handler only once when resolved from many threads at once'() {
+        setup:
+            def created = new AtomicInteger()
+            def lazy = new LazyRestExceptionHandler() {
+                protected RestExceptionHandler createHandler() {
+                    created.incrementAndGet()
+                    Thread.sleep(50)
+                    handlers[0]
+                }
+            }
+            def registry = new ExceptionHandlerRegistry([(IOException): lazy])
+            def resolved = new ConcurrentLinkedQueue()
+        when:
+            (1..8).collect { Thread.start { resolved << registry.resolveHandler(IOException) } }*.join()
+        then:
+            created.get() == 1
+            resolved.size() == 8
+            resolved.every { it.is(handlers[0]) }
+    }
+
+    def 'withHandler: returns a new registry with the handler added'() {
+        setup:
+            registry.resolveHandler(IllegalStateException)
+        when:
+            def updated = registry.withHandler(RuntimeException, handlers[0])
+        then:
+            updated.resolveHandler(IllegalStateException).is(handlers[0])
+            registry.resolveHandler(IllegalStateException) == null
+    }
+
+    def 'withoutHandler: returns a new registry with the handler removed'() {
+        when:
+            def updated = registry.withoutHandler(NumberFormatException)
+        then:
+            updated.resolveHandler(NumberFormatException).is(handlers[1])
+            registry.resolveHandler(NumberFormatException).is(handlers[2])
+    }
+
+    def 'withoutHandler: returns the same registry when there is no such handler'() {
+        expect:
+            registry.withoutHandler(IllegalStateException).is(registry)
+    }
+
+
+    def 'resolveHandler: prefers class over interface on the same level and nearer level over farther'() {
+        setup:
+            def registry = new ExceptionHandlerRegistry([
+                    (MarkedException): handlers[0],
+                    (Marker): handlers[1],
+                    (SubMarker): handlers[2]
+            ] as Map)
+        expect:
+            registry.resolveHandler(MarkedException).is(handlers[0])
+            registry.resolveHandler(SubMarkedException).is(handlers[2])
+            registry.resolveHandler(MarkedIOException).is(handlers[1])
+            registry.resolveHandler(UnmarkedSubException).is(handlers[0])
+    }
+
+    @Unroll
+    def 'resolveHandledException: returns cause at index #expected for #exception'() {
+        setup:
+            def registry = new ExceptionHandlerRegistry([
+                    (Exception): handlers[0],
+                    (IOException): handlers[1],
+                    (IllegalArgumentException): handlers[2]
+            ])
+        expect:
+            2.times { assert registry.resolveHandledException(exception).is(causeAt(exception, expected)) }
+        where:
+            exception                                                             | expected
+            new FileNotFoundException()                                           | 0
+            new UndeclaredThrowableException(new FileNotFoundException())         | 1
+            new RuntimeException(new UndeclaredThrowableException(new IOException())) | 2
+            new IllegalArgumentException(new FileNotFoundException())             | 0
+            new RuntimeException(new Error(new IOException()))                    | 2
+            new RuntimeException(new Error())                                     | 0
+            new UndeclaredThrowableException(new SQLException())                  | 0
+            new RuntimeException(new UndeclaredThrowableException(new Exception()))  | 0
+    }
+
+    def 'resolveHandledException: returns the outer exception when the cause is handled by a handler of unrelated type'() {
+        setup:
+            def registry = new ExceptionHandlerRegistry([
+                    (RuntimeException): handlers[0],
+                    (Exception): handlers[1]
+            ])
+            def exception = new NumberFormatException()
+            exception.initCause(new IOException())
+        expect:
+            registry.resolveHandledException(exception).is(exception)
+    }
+
+    def 'resolveHandledException: caches the decision per classes of the whole cause chain'() {
+        setup:
+            def registry = new ExceptionHandlerRegistry([
+                    (Exception): handlers[0],
+                    (IOException): handlers[1]
+            ])
+            def exceptions = [
+                    new RuntimeException(new SQLException()),
+                    new RuntimeException(new IOException()),
+                    new RuntimeException(),
+                    new RuntimeException(new SQLException(new IOException()))
+            ]
+        expect:
+            2.times {
+                assert exceptions.collect { ex ->
+                    exceptions.indexOf(ex) + ':' + registry.resolveHandledException(ex).class.simpleName
+                } == ['0:RuntimeException', '1:IOException', '2:RuntimeException', '3:IOException']
+            }
+    }
+
+    def 'resolveHandledException: returns null when there is no handler for the exception nor its causes'() {
+        expect:
+            registry.resolveHandledException(new IllegalStateException(new Exception())) == null
+    }
+
+    def 'resolveHandledException: does not loop on cyclic cause chain'() {
+        setup:
+            def outer = new IllegalStateException()
+            def inner = new IllegalStateException(outer)
+            outer.initCause(inner)
+        expect:
+            registry.resolveHandledException(outer) == null
+    }
+
+
+    static causeAt(Throwable exception, int index) {
+        index.times { exception = exception.cause }
+        exception
+    }
+
+    static interface Marker {}
+    static interface SubMarker extends Marker {}
+
+    static class MarkedException extends IllegalStateException implements Marker {}
+    static class SubMarkedException extends MarkedException implements SubMarker {}
+    static class MarkedIOException extends IOException implements Marker {}
+    static class UnmarkedSubException extends MarkedException {}
+}
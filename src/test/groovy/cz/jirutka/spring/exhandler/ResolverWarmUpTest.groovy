@@ -0,0 +1,161 @@
+/*
+ * Copyright 2016 Jakub Jirutka <jakub@jirutka.cz>.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package cz.jirutka.spring.exhandler
+
+import cz.jirutka.spring.exhandler.handlers.ErrorMessageRestExceptionHandler
+import cz.jirutka.spring.exhandler.handlers.RestExceptionHandler
+import cz.jirutka.spring.exhandler.metrics.ExceptionMetrics
+import cz.jirutka.spring.exhandler.support.ProblemJsonHttpMessageConverter
+import cz.jirutka.spring.exhandler.support.ProblemXmlHttpMessageConverter
+import org.springframework.context.i18n.LocaleContextHolder
+import org.springframework.http.HttpOutputMessage
+import org.springframework.web.bind.MethodArgumentNotValidException
+import spock.lang.Specification
+import spock.lang.Unroll
+
+import javax.validation.ConstraintViolationException
+
+import static org.springframework.http.HttpStatus.BAD_REQUEST
+import static org.springframework.http.HttpStatus.NOT_FOUND
+
+class ResolverWarmUpTest extends Specification {
+
+    def jsonConverter = Spy(ProblemJsonHttpMessageConverter)
+    def xmlConverter = Spy(ProblemXmlHttpMessageConverter)
+    def metrics = Mock(ExceptionMetrics)
+
+    def handler = Spy(ErrorMessageRestExceptionHandler, constructorArgs: [IllegalStateException, BAD_REQUEST])
+
+    def builder = RestHandlerExceptionResolver.builder()
+            .withDefaultHandlers(false)
+            .httpMessageConverters([xmlConverter, jsonConverter])
+            .exceptionMetrics(metrics)
+            .addHandler(IllegalStateException, handler)
+
+
+    def 'render response for each locale and media type without logging and recording metrics'() {
+        setup:
+            def resolver = builder.warmUpLocales([Locale.ENGLISH, new Locale('cs')]).build()
+        when:
+            resolver.warmUp()
+        then:
+            2 * handler.createBody(_ as IllegalStateException, _)
+            0 * handler.handleException(*_)
+        and: 'XML is the default content type, so it is rendered twice for each locale'
+            4 * xmlConverter.writeInternal(_, _ as HttpOutputMessage)
+            2 * jsonConverter.writeInternal(_, _ as HttpOutputMessage)
+        and:
+            0 * metrics._
+    }
+
+    def 'warm up when the resolver is built with warmUp enabled'() {
+        when:
+            builder.warmUp(true).build()
+        then:
+            1 * handler.createBody(_ as IllegalStateException, _)
+            (1.._) * jsonConverter.writeInternal(*_)
+    }
+
+    def 'not warm up when the resolver is built with warmUp disabled'() {
+        when:
+            builder.build()
+        then:
+            0 * handler.createBody(*_)
+    }
+
+    def 'skip handler that fails on the synthetic exception'() {
+        setup:
+            def failingHandler = Mock(RestExceptionHandler)
+            def resolver = builder.addHandler(NoSuchElementException, failingHandler).build()
+        when:
+            resolver.warmUp()
+        then:
+            1 * failingHandler.handleException(_ as NoSuchElementException, _) >> { throw new NullPointerException() }
+            1 * handler.createBody(*_)
+            notThrown Exception
+    }
+
+    def 'restore the locale context after warm-up'() {
+        setup:
+            def resolver = builder.warmUpLocales([Locale.JAPANESE]).build()
+            LocaleContextHolder.locale = Locale.GERMAN
+        when:
+            resolver.warmUp()
+        then:
+            LocaleContextHolder.locale == Locale.GERMAN
+        cleanup:
+            LocaleContextHolder.resetLocaleContext()
+    }
+
+    def 'prime the response cache'() {
+        setup:
+            def resolver = builder
+                    .addHandler(NoSuchElementException, new ErrorMessageRestExceptionHandler(NoSuchElementException, NOT_FOUND))
+                    .responseCacheLimit(10)
+                    .build()
+        when:
+            resolver.warmUp()
+        then: 'response of the cacheable handler without Accept header, with XML and with JSON'
+            resolver.responseCache.size() == 3
+    }
+
+    @Unroll
+    def 'create synthetic exception #desc'() {
+        expect:
+            ResolverWarmUp.createException(type)?.getClass() == expected
+        where:
+            type                            | expected                        | desc
+            IllegalStateException           | IllegalStateException           | 'with message constructor'
+            NoArgException                  | NoArgException                  | 'with no-arg constructor'
+            ConstraintViolationException    | ConstraintViolationException    | 'with placeholder arguments'
+            NoSuitableCtorException         | null                            | 'without suitable constructor as null'
+            AbstractException               | null                            | 'of abstract class as null'
+            Serializable                    | null                            | 'of interface as null'
+    }
+
+    def 'create synthetic MethodArgumentNotValidException with empty binding result'() {
+        when:
+            def ex = ResolverWarmUp.createException(MethodArgumentNotValidException) as MethodArgumentNotValidException
+        then:
+            ex.bindingResult.errorCount == 0
+    }
+
+    def 'create synthetic request with the given Accept header and locale'() {
+        when:
+            def request = ResolverWarmUp.createRequest('application/json', Locale.GERMAN)
+            request.setAttribute('foo', 42)
+        then:
+            request.getHeader('accept') == 'application/json'
+            request.getHeaders('Accept').toList() == ['application/json']
+            request.headerNames.toList() == ['Accept']
+            request.locale == Locale.GERMAN
+            request.method == 'GET'
+            request.getAttribute('foo') == 42
+            request.getParameter('foo') == null
+            request.contentLength == 0
+    }
+
+
+    static class NoArgException extends Exception {}
+
+    static class NoSuitableCtorException extends Exception {
+        NoSuitableCtorException(Object source) { super(Objects.requireNonNull(source).toString()) }
+    }
+
+    static abstract class AbstractException extends Exception {
+        AbstractException(String message) { super(message) }
+    }
+}
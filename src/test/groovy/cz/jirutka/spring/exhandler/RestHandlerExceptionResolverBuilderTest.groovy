@@ -15,9 +15,176 @@
  */
 package cz.jirutka.spring.exhandler
 
+import cz.jirutka.spring.exhandler.handlers.AbstractRestExceptionHandler
+import cz.jirutka.spring.exhandler.handlers.ErrorMessageRestExceptionHandler
+import cz.jirutka.spring.exhandler.logging.AsyncExceptionLogger
+import cz.jirutka.spring.exhandler.logging.ExceptionLoggingPolicy
+import cz.jirutka.spring.exhandler.logging.LogLevel
+import org.springframework.beans.factory.DisposableBean
+import org.springframework.context.support.StaticMessageSource
+import org.springframework.mock.web.MockHttpServletRequest
+import org.springframework.mock.web.MockHttpServletResponse
+import org.springframework.web.HttpRequestMethodNotSupportedException
+import org.springframework.web.accept.ContentNegotiationManager
+import org.springframework.web.bind.MethodArgumentNotValidException
+import org.springframework.web.servlet.NoHandlerFoundException
 import spock.lang.Specification
 
-// TODO
+import java.util.concurrent.CountDownLatch
+import java.util.concurrent.Executors
+import java.util.concurrent.atomic.AtomicInteger
+
+import static java.util.concurrent.TimeUnit.SECONDS
+import static org.springframework.http.HttpStatus.I_AM_A_TEAPOT
+import static org.springframework.http.MediaType.APPLICATION_JSON
+
 class RestHandlerExceptionResolverBuilderTest extends Specification {
 
+    def 'register default handlers unless withDefaultHandlers is false'() {
+        when:
+            def resolver = RestHandlerExceptionResolver.builder()
+                    .withDefaultHandlers(withDefaults)
+                    .build()
+        then:
+            resolver.exceptionHandlers.containsKey(HttpRequestMethodNotSupportedException) == withDefaults
+            resolver.exceptionHandlers.containsKey(Exception) == withDefaults
+        where:
+            withDefaults << [true, false]
+    }
+
+    def 'provided handler overrides the default one'() {
+        setup:
+            def handler = new ErrorMessageRestExceptionHandler(HttpRequestMethodNotSupportedException, I_AM_A_TEAPOT)
+        when:
+            def resolver = RestHandlerExceptionResolver.builder()
+                    .addHandler(handler)
+                    .build()
+        then:
+            resolver.resolveExceptionHandler(HttpRequestMethodNotSupportedException).is(handler)
+    }
+
+    def 'set default message source as the root parent of the provided one'() {
+        setup:
+            def parent = new StaticMessageSource()
+            def messageSource = new StaticMessageSource(parentMessageSource: parent)
+        when:
+            RestHandlerExceptionResolver.builder()
+                    .messageSource(messageSource)
+                    .build()
+        then:
+            messageSource.parentMessageSource.is(parent)
+            parent.parentMessageSource != null
+    }
+
+    def 'set message source and content negotiation into the resolver and handlers'() {
+        setup:
+            def messageSource = new StaticMessageSource()
+            messageSource.addMessage("${HttpRequestMethodNotSupportedException.name}.title", Locale.ENGLISH, 'Nope')
+            def manager = new ContentNegotiationManager()
+        when:
+            def resolver = RestHandlerExceptionResolver.builder()
+                    .messageSource(messageSource)
+                    .withDefaultMessageSource(false)
+                    .contentNegotiationManager(manager)
+                    .defaultContentType('application/json')
+                    .build()
+        then:
+            resolver.contentNegotiationManager.is(manager)
+            resolver.defaultContentType == APPLICATION_JSON
+            resolver.resolveExceptionHandler(HttpRequestMethodNotSupportedException).loadMessage('title', Locale.ENGLISH) == 'Nope'
+    }
+
+    def 'built resolver with the default messages resolves exceptions from many threads at once'() {
+        setup:
+            def resolver = RestHandlerExceptionResolver.builder().build()
+            def tasks = 5000
+            def latch = new CountDownLatch(tasks)
+            def failures = new AtomicInteger()
+            def executor = newExecutor()
+        when:
+            tasks.times {
+                executor.execute {
+                    try {
+                        def request = new MockHttpServletRequest('PUT', '/')
+                        request.addHeader('Accept', 'application/json')
+                        def response = new MockHttpServletResponse()
+
+                        resolver.resolveException(request, response, null,
+                                new HttpRequestMethodNotSupportedException('PUT', ['GET']))
+
+                        if (response.status != 405 || !response.contentAsString.contains('Method Not Allowed')) {
+                            failures.incrementAndGet()
+                        }
+                    } catch (Exception ex) {
+                        failures.incrementAndGet()
+                    } finally {
+                        latch.countDown()
+                    }
+                }
+            }
+        then:
+            latch.await(60, SECONDS)
+            failures.get() == 0
+        cleanup:
+            executor?.shutdown()
+    }
+
+
+    def 'creates default handlers on first use and initializes them with the configuration at build time'() {
+        setup:
+            def builder = RestHandlerExceptionResolver.builder()
+                    .messageCacheSeconds(60)
+                    .maxValidationErrors(10)
+                    .logLevel(NoHandlerFoundException, LogLevel.OFF)
+            def resolver = builder.build()
+            def registry = resolver.exceptionHandlerRegistry
+        and:
+            builder.messageCacheSeconds(5).maxValidationErrors(2)
+        expect:
+            registry.@handlers.values().every { it instanceof LazyRestExceptionHandler && !it.created }
+        when:
+            def notFound = resolver.resolveExceptionHandler(NoHandlerFoundException)
+            def notValid = resolver.resolveExceptionHandler(MethodArgumentNotValidException)
+        then:
+            notFound instanceof ErrorMessageRestExceptionHandler
+            notFound.logLevel == LogLevel.OFF
+            notFound.@messageCacheMillis == 60000
+            notValid.maxErrors == 10
+        and:
+            registry.@handlers.values().count { it.created } == 2
+    }
+
+    def 'getExceptionHandlers returns the created default handlers'() {
+        setup:
+            def resolver = RestHandlerExceptionResolver.builder().build()
+        expect:
+            resolver.exceptionHandlers.values().every { it instanceof AbstractRestExceptionHandler }
+    }
+
+    def 'built resolver destroys the asyncLogger and loggingPolicy'() {
+        setup:
+            def asyncLogger = new AsyncExceptionLogger()
+            def loggingPolicy = Mock(DisposablePolicy)
+            def resolver = RestHandlerExceptionResolver.builder()
+                    .asyncLogger(asyncLogger)
+                    .loggingPolicy(loggingPolicy)
+                    .build()
+        when:
+            resolver.destroy()
+        then:
+            1 * loggingPolicy.destroy()
+            ! asyncLogger.submit(null)
+    }
+
+
+    /**
+     * Uses virtual threads when running on JDK 21+; run with -Djdk.tracePinnedThreads=full to
+     * report any pinned carrier thread.
+     */
+    static newExecutor() {
+        Executors.metaClass.respondsTo(Executors, 'newVirtualThreadPerTaskExecutor') ?
+                Executors.newVirtualThreadPerTaskExecutor() : Executors.newFixedThreadPool(64)
+    }
+
+    static interface DisposablePolicy extends ExceptionLoggingPolicy, DisposableBean {}
 }
@@ -84,6 +84,7 @@ class RestHandlerExceptionResolverFactoryBeanTest extends Specification {
             hackedFactory.with {
                 messageSource = Stub(MessageSource)
                 messageInterpolator = Stub(MessageInterpolator)
+                messageCacheSeconds = 60
                 contentNegotiationManager = Stub(ContentNegotiationManager)
                 defaultContentType = 'application/json'
                 withDefaultHandlers = false
@@ -94,6 +95,7 @@ class RestHandlerExceptionResolverFactoryBeanTest extends Specification {
         then:
             1 * builder.messageSource(_ as MessageSource)
             1 * builder.messageInterpolator(_ as MessageInterpolator)
+            1 * builder.messageCacheSeconds(60)
             1 * builder.contentNegotiationManager(_ as ContentNegotiationManager)
             1 * builder.defaultContentType(_ as String)
             1 * builder.withDefaultHandlers(false)
@@ -15,11 +15,20 @@
  */
 package cz.jirutka.spring.exhandler
 
+import cz.jirutka.spring.exhandler.RestHandlerExceptionResolver.NoExceptionHandlerFoundException
+import cz.jirutka.spring.exhandler.handlers.AbstractRestExceptionHandler
+import cz.jirutka.spring.exhandler.handlers.CacheableRestExceptionHandler
 import cz.jirutka.spring.exhandler.handlers.RestExceptionHandler
+import cz.jirutka.spring.exhandler.metrics.ExceptionMetrics
+import cz.jirutka.spring.exhandler.support.ResponseEntityWriter
+import org.springframework.context.i18n.LocaleContextHolder
 import org.springframework.http.ResponseEntity
+import org.springframework.http.server.ServerHttpResponse
 import org.springframework.mock.web.MockHttpServletRequest
 import org.springframework.mock.web.MockHttpServletResponse
 import org.springframework.web.HttpMediaTypeNotAcceptableException
+import org.springframework.web.accept.ContentNegotiationManager
+import org.springframework.web.accept.FixedContentNegotiationStrategy
 import org.springframework.web.bind.ServletRequestBindingException
 import org.springframework.web.method.support.HandlerMethodReturnValueHandler
 import org.springframework.web.method.support.ModelAndViewContainer
@@ -27,10 +36,15 @@ import org.springframework.web.servlet.mvc.method.annotation.HttpEntityMethodPro
 import spock.lang.Specification
 
 import javax.servlet.http.HttpServletRequest
+import javax.servlet.http.HttpServletResponse
+import java.lang.reflect.UndeclaredThrowableException
 import java.security.InvalidParameterException
 
 import static org.springframework.http.HttpStatus.BAD_REQUEST
+import static org.springframework.http.HttpStatus.NOT_FOUND
 import static org.springframework.http.MediaType.APPLICATION_JSON
+import static org.springframework.http.MediaType.APPLICATION_XML
+import static org.springframework.http.MediaType.TEXT_PLAIN
 import static org.springframework.web.servlet.HandlerMapping.PRODUCIBLE_MEDIA_TYPES_ATTRIBUTE
 
 class RestHandlerExceptionResolverTest extends Specification {
@@ -47,7 +61,7 @@ class RestHandlerExceptionResolverTest extends Specification {
     void setup() {
         resolver.responseProcessor = responseProc
         resolver.fallbackResponseProcessor = fallbackResponseProc
-        resolver.exceptionHandlers[Exception] = responseFactory
+        resolver.addExceptionHandler(Exception, responseFactory)
     }
 
 
@@ -59,6 +73,22 @@ class RestHandlerExceptionResolverTest extends Specification {
         then:
             newResolver.responseProcessor instanceof HttpEntityMethodProcessor
             newResolver.fallbackResponseProcessor instanceof HttpEntityMethodProcessor
+            newResolver.responseEntityWriter instanceof ResponseEntityWriter
+    }
+
+    def 'initialize responseEntityWriter with acceptHeaderOnly = #expected when #desc'() {
+        setup:
+            def newResolver = new RestHandlerExceptionResolver()
+            if (manager) newResolver.contentNegotiationManager = manager
+        when:
+            newResolver.afterPropertiesSet()
+        then:
+            newResolver.responseEntityWriter.acceptHeaderOnly == expected
+        where:
+            manager                     | expected | desc
+            null                        | true     | 'default manager is used'
+            new ContentNegotiationManager(
+                new FixedContentNegotiationStrategy(APPLICATION_XML)) | false | 'custom manager is used'
     }
 
     def 'resolve exception and process error response'() {
@@ -93,6 +123,67 @@ class RestHandlerExceptionResolverTest extends Specification {
             new FileNotFoundException()     | 0
     }
 
+    def 'cache resolved exception handler until exception handlers are changed'() {
+        setup:
+            def handlers = [(IllegalArgumentException): responseFactory]
+            def otherFactory = Mock(RestExceptionHandler)
+            resolver.exceptionHandlers = handlers
+        when:
+            2.times { resolver.resolveExceptionHandler(NumberFormatException) }
+            handlers[NumberFormatException] = otherFactory
+        then:
+            resolver.resolveExceptionHandler(NumberFormatException).is(responseFactory)
+        when:
+            resolver.exceptionHandlers = handlers
+        then:
+            resolver.resolveExceptionHandler(NumberFormatException).is(otherFactory)
+    }
+
+    def 'add and remove exception handler at runtime'() {
+        setup:
+            def otherFactory = Mock(RestExceptionHandler)
+            resolver.resolveExceptionHandler(IOException)
+        when:
+            resolver.addExceptionHandler(IOException, otherFactory)
+        then:
+            resolver.resolveExceptionHandler(FileNotFoundException).is(otherFactory)
+            resolver.exceptionHandlers.keySet() == [Exception, IOException] as Set
+        when:
+            resolver.removeExceptionHandler(IOException)
+        then:
+            resolver.resolveExceptionHandler(FileNotFoundException).is(responseFactory)
+    }
+
+    def 'handle cause of the exception when matchCauses is enabled'() {
+        setup:
+            def causeFactory = Mock(RestExceptionHandler)
+            def cause = new IOException()
+            def exception = new UndeclaredThrowableException(cause)
+            resolver.addExceptionHandler(IOException, causeFactory)
+            resolver.matchCauses = matchCauses
+        when:
+            resolver.doResolveException(request, response, null, exception)
+        then:
+            1 * (matchCauses ? causeFactory : responseFactory).handleException(matchCauses ? cause : exception, request) >> respEntity
+        where:
+            matchCauses << [true, false]
+    }
+
+    def 'cache negative result of exception handler resolution'() {
+        setup:
+            def handlers = [(IllegalArgumentException): responseFactory]
+            resolver.exceptionHandlers = handlers
+        when:
+            resolver.resolveExceptionHandler(IOException)
+        then:
+            thrown NoExceptionHandlerFoundException
+        when:
+            handlers[IOException] = responseFactory
+            resolver.resolveExceptionHandler(IOException)
+        then:
+            thrown NoExceptionHandlerFoundException
+    }
+
     def 'fallback to default media type when requested media type is not supported'() {
         setup:
             resolver.defaultContentType = APPLICATION_JSON
@@ -107,6 +198,183 @@ class RestHandlerExceptionResolverTest extends Specification {
             })
     }
 
+    def 'fallback to default media type without calling responseProcessor when requested media type is not writable'() {
+        setup:
+            def entity = new ResponseEntity('body', BAD_REQUEST)
+            resolver.responseEntityWriter = Mock(ResponseEntityWriter)
+            resolver.acceptHeaderOnlyNegotiation = true
+            responseFactory.handleException(*_) >> entity
+        when:
+            resolver.doResolveException(request, response, null, new Exception())
+        then:
+            1 * resolver.responseEntityWriter.getRequestedMediaType(String, { it.response == response }) >> null
+            0 * resolver.responseEntityWriter.write(*_)
+            0 * responseProc.handleReturnValue(*_)
+            1 * fallbackResponseProc.handleReturnValue(entity, *_)
+    }
+
+    def 'pass media type negotiated by responseEntityWriter to responseProcessor'() {
+        setup:
+            def entity = new ResponseEntity('body', BAD_REQUEST)
+            resolver.afterPropertiesSet()
+            resolver.responseEntityWriter = Spy(ResponseEntityWriter,
+                    constructorArgs: [resolver.messageConverters, resolver.contentNegotiationManager])
+            resolver.responseEntityWriter.acceptHeaderOnly = true
+            responseFactory.handleException(*_) >> entity
+        and:
+            request.addHeader('Accept', 'text/html;q=0.9, text/plain')
+        when:
+            def responses = (1..2).collect {
+                def resp = new MockHttpServletResponse()
+                resolver.doResolveException(request, resp, null, new Exception())
+                resp
+            }
+        then:
+            2 * resolver.responseEntityWriter.getRequestedMediaType(String, _)
+            1 * resolver.responseEntityWriter.selectConverter(*_)
+        and:
+            responses.every { it.contentType.startsWith('text/plain') && it.contentAsString == 'body' }
+            request.attributeNames.toList().every { !it.endsWith('.negotiatedMediaType') }
+    }
+
+    def 'leave content negotiation on responseProcessor when custom ContentNegotiationManager is used'() {
+        setup:
+            def entity = new ResponseEntity('body', BAD_REQUEST)
+            resolver.responseEntityWriter = Mock(ResponseEntityWriter)
+            resolver.contentNegotiationManager = new ContentNegotiationManager()
+            responseFactory.handleException(*_) >> entity
+        when:
+            resolver.doResolveException(request, response, null, new Exception())
+        then:
+            0 * resolver.responseEntityWriter._
+            1 * responseProc.handleReturnValue(entity, *_) >> { throw new HttpMediaTypeNotAcceptableException('') }
+            1 * fallbackResponseProc.handleReturnValue(entity, *_)
+    }
+
+    def 'write cached response when handler produces cacheable response'() {
+        setup:
+            def cacheableFactory = Mock(CacheableRestExceptionHandler)
+            resolver.exceptionHandlers = [(IOException): cacheableFactory]
+            resolver.contentNegotiationManager = new ContentNegotiationManager()
+            resolver.responseCacheLimit = 10
+            resolver.responseEntityWriter = Mock(ResponseEntityWriter)
+        and:
+            cacheableFactory.isResponseCacheable(_) >> true
+            cacheableFactory.handleException(*_) >> { new ResponseEntity('body', NOT_FOUND) }
+        when:
+            def responses = (1..3).collect {
+                def resp = new MockHttpServletResponse()
+                resolver.doResolveException(request, resp, null, new IOException())
+                resp
+            }
+        then:
+            1 * resolver.responseEntityWriter.write(_, _, _ as ServerHttpResponse) >> { args ->
+                args[2].with {
+                    statusCode = NOT_FOUND
+                    headers.contentType = TEXT_PLAIN
+                    headers.add('X-Foo', 'bar')
+                    body << 'body'
+                }
+                true
+            }
+            0 * responseProc._
+        and:
+            responses.every {
+                it.status == 404 &&
+                it.contentType == 'text/plain' &&
+                it.getHeader('X-Foo') == 'bar' &&
+                it.contentLength == 4 &&
+                it.contentAsString == 'body'
+            }
+    }
+
+    def 'create response of cacheable handler only once per locale and Accept header, but log each exception'() {
+        setup:
+            def handler = Spy(CacheableHandler)
+            resolver.exceptionHandlers = [(IOException): handler]
+            resolver.responseCacheLimit = 10
+            resolver.afterPropertiesSet()
+        when:
+            [[Locale.ENGLISH, 'text/plain'], [Locale.ENGLISH, 'text/plain'],
+             [Locale.GERMAN, 'text/plain'], [Locale.GERMAN, 'text/*']].each { locale, accept ->
+                LocaleContextHolder.locale = locale
+                def req = new MockHttpServletRequest()
+                req.addHeader('Accept', accept)
+                resolver.doResolveException(req, new MockHttpServletResponse(), null, new IOException())
+            }
+        then:
+            3 * handler.createBody(*_)
+            4 * handler.logException(*_)
+            resolver.responseCache.size() == 3
+        cleanup:
+            LocaleContextHolder.resetLocaleContext()
+    }
+
+    def 'do not cache response of a handler that produces non-cacheable response'() {
+        setup:
+            def cacheableFactory = Mock(CacheableRestExceptionHandler)
+            resolver.exceptionHandlers = [(IOException): cacheableFactory]
+            resolver.contentNegotiationManager = new ContentNegotiationManager()
+            resolver.responseCacheLimit = 10
+        and:
+            cacheableFactory.isResponseCacheable(_) >> false
+            cacheableFactory.handleException(*_) >> respEntity
+        when:
+            2.times { resolver.doResolveException(request, response, null, new IOException()) }
+        then:
+            2 * responseProc.handleReturnValue(respEntity, _, _, { it.response == response })
+    }
+
+    def 'write response using ResponseEntityWriter when enabled'() {
+        setup:
+            resolver.useResponseEntityWriter = true
+            resolver.responseEntityWriter = Mock(ResponseEntityWriter)
+            responseFactory.handleException(*_) >> respEntity
+        when:
+            resolver.doResolveException(request, response, null, new Exception())
+        then:
+            1 * resolver.responseEntityWriter.write(respEntity, { it.response == response }) >> written
+            expectedProcCalls * responseProc.handleReturnValue(respEntity, *_)
+        where:
+            written | expectedProcCalls
+            true    | 0
+            false   | 1
+    }
+
+    def 'record handled exception into exceptionMetrics'() {
+        setup:
+            resolver.exceptionMetrics = Mock(ExceptionMetrics)
+            responseFactory.handleException(*_) >> respEntity
+        when:
+            resolver.doResolveException(request, response, null, new IOException())
+        then:
+            1 * resolver.exceptionMetrics.recordHandled(IOException, responseFactory, BAD_REQUEST, { it >= 0 }, { it >= 0 })
+    }
+
+    def 'record handled exception as failed into exceptionMetrics when writing response fails'() {
+        setup:
+            resolver.exceptionMetrics = Mock(ExceptionMetrics)
+            responseFactory.handleException(*_) >> respEntity
+            responseProc.handleReturnValue(*_) >> { throw new IOException('Broken pipe') }
+        when:
+            def result = resolver.doResolveException(request, response, null, new IOException())
+        then:
+            result == null
+            1 * resolver.exceptionMetrics.recordFailed(IOException, responseFactory)
+            0 * resolver.exceptionMetrics.recordHandled(*_)
+    }
+
+    def 'record unhandled exception into exceptionMetrics'() {
+        setup:
+            resolver.exceptionHandlers = [:]
+            resolver.exceptionMetrics = Mock(ExceptionMetrics)
+        when:
+            resolver.doResolveException(request, response, null, new IOException())
+        then:
+            1 * resolver.exceptionMetrics.recordUnhandled(IOException)
+            0 * resolver.exceptionMetrics.recordHandled(*_)
+    }
+
     def 'return null when no exception handler is found'() {
         setup:
             resolver.exceptionHandlers = [:]
@@ -123,11 +391,22 @@ class RestHandlerExceptionResolverTest extends Specification {
 
     def 'remove PRODUCIBLE_MEDIA_TYPES_ATTRIBUTE from the request'() {
         setup:
-            resolver.exceptionHandlers[Exception] = responseFactory
+            resolver.addExceptionHandler(Exception, responseFactory)
             request.setAttribute(PRODUCIBLE_MEDIA_TYPES_ATTRIBUTE, ['image/png'])
         when:
             resolver.doResolveException(request, response, null, new Exception())
         then:
             ! request.getAttribute(PRODUCIBLE_MEDIA_TYPES_ATTRIBUTE)
     }
+
+
+    static class CacheableHandler extends AbstractRestExceptionHandler<IOException, String>
+            implements CacheableRestExceptionHandler<IOException, String> {
+
+        CacheableHandler() { super(IOException, NOT_FOUND) }
+
+        String createBody(IOException ex, HttpServletRequest req) { 'body' }
+
+        boolean isResponseCacheable(Locale locale) { true }
+    }
 }
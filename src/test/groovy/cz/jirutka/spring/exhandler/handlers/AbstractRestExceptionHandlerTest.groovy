@@ -18,6 +18,10 @@ package cz.jirutka.spring.exhandler.handlers
 import ch.qos.logback.classic.Logger
 import ch.qos.logback.classic.spi.LoggingEvent
 import ch.qos.logback.core.Appender
+import cz.jirutka.spring.exhandler.logging.AsyncExceptionLogger
+import cz.jirutka.spring.exhandler.logging.ExceptionLogRecord
+import cz.jirutka.spring.exhandler.logging.ExceptionLoggingPolicy
+import cz.jirutka.spring.exhandler.logging.LogLevel
 import cz.jirutka.spring.exhandler.messages.ErrorMessage
 import org.slf4j.LoggerFactory
 import org.springframework.http.HttpHeaders
@@ -88,4 +92,79 @@ class AbstractRestExceptionHandlerTest extends Specification {
 
             stackTrace = "${hasThrowable ? 'with' : 'without'} stack trace"
     }
+
+    def 'log exception according to loggingPolicy: #desc'() {
+        setup:
+            def factory = new AbstractRestExceptionHandler<Exception, ErrorMessage>(BAD_REQUEST) {
+                ErrorMessage createBody(Exception ex, HttpServletRequest req) { null }
+            }
+            def exception = new IOException()
+            factory.loggingPolicy = Mock(ExceptionLoggingPolicy) {
+                decide(exception, BAD_REQUEST) >> decision
+            }
+            def logAppender = Mock(Appender)
+            def messages = []
+        and:
+            (LoggerFactory.getLogger(RestExceptionHandler) as Logger).with {
+                level = INFO
+                addAppender(logAppender)
+            }
+        when:
+            factory.handleException(exception, new MockHttpServletRequest('GET', '/foo'))
+        then:
+            _ * logAppender.doAppend({ messages << it.formattedMessage })
+            messages == expected
+        where:
+            decision                         | expected                                              | desc
+            0                                | ['GET /foo ~> 400']                                   | 'log'
+            3                                | ['GET /foo ~> 400 (3 similar exceptions suppressed)'] | 'log with suppressed count'
+            ExceptionLoggingPolicy.SUPPRESS  | []                                                    | 'suppress'
+    }
+
+    def 'submit log record to asyncLogger instead of logging it directly'() {
+        setup:
+            def factory = new AbstractRestExceptionHandler<Exception, ErrorMessage>(HttpStatus.valueOf(503)) {
+                ErrorMessage createBody(Exception ex, HttpServletRequest req) { null }
+            }
+            def exception = new IOException()
+            factory.asyncLogger = Mock(AsyncExceptionLogger)
+            def logAppender = Mock(Appender)
+            LoggerFactory.getLogger(RestExceptionHandler).addAppender(logAppender)
+        when:
+            factory.handleException(exception, new MockHttpServletRequest())
+        then:
+            1 * factory.asyncLogger.submit({ ExceptionLogRecord rec ->
+                rec.level == LogLevel.ERROR && rec.exception.is(exception)
+            })
+            0 * logAppender.doAppend(_)
+    }
+
+    def 'log exception on overridden logLevel #logLevel'() {
+        setup:
+            def factory = new AbstractRestExceptionHandler<Exception, ErrorMessage>(BAD_REQUEST) {
+                ErrorMessage createBody(Exception ex, HttpServletRequest req) { null }
+            }
+            factory.logLevel = logLevel
+            factory.loggingPolicy = Mock(ExceptionLoggingPolicy)
+            def logAppender = Mock(Appender)
+            LoggingEvent actual = null
+        and:
+            (LoggerFactory.getLogger(RestExceptionHandler) as Logger).with {
+                level = INFO
+                addAppender(logAppender)
+            }
+        when:
+            factory.handleException(new IOException(), new MockHttpServletRequest('GET', '/foo'))
+        then:
+            expectedCalls * factory.loggingPolicy.decide(*_) >> 0
+            expectedCalls * logAppender.doAppend({ actual = it })
+        and:
+            expectedCalls == 0 || actual.level == expectedLevel && actual.throwableProxy != null ^ !hasThrowable
+        where:
+            logLevel       | expectedCalls | expectedLevel | hasThrowable
+            LogLevel.ERROR | 1             | ERROR         | true
+            LogLevel.WARN  | 1             | WARN          | false
+            LogLevel.DEBUG | 0             | null          | false
+            LogLevel.OFF   | 0             | null          | false
+    }
 }
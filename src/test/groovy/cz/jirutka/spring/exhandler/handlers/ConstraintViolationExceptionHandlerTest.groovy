@@ -20,8 +20,10 @@ import org.hibernate.validator.internal.engine.ConstraintViolationImpl
 import org.hibernate.validator.internal.engine.path.PathImpl
 import org.springframework.core.convert.ConversionService
 import org.springframework.core.convert.ConverterNotFoundException
+import org.springframework.core.convert.support.DefaultConversionService
 import org.springframework.mock.web.MockHttpServletRequest
 import spock.lang.Specification
+import spock.lang.Unroll
 
 import javax.validation.ConstraintViolation
 import javax.validation.ConstraintViolationException
@@ -133,6 +135,30 @@ class ConstraintViolationExceptionHandlerTest extends Specification {
 
 
 
+    @Unroll
+    def 'convert invalid value #value.class.simpleName the same way as DefaultConversionService'() {
+        setup:
+            def exception = buildSimpleViolationException(value)
+        when:
+            def body = handler.createBody(exception, request) as ValidationErrorMessage
+        then:
+            body.errors[0].rejected == new DefaultConversionService().convert(value, String)
+        where:
+            value << ['foo', 42, 4.2G, true, 'x' as char, new Date(0), FIELD, [1, 2]]
+    }
+
+    def 'remember that Conversion Service cannot convert the invalid value type'() {
+        setup:
+            handler.conversionService = conversionService
+        when:
+            2.times { handler.createBody(buildSimpleViolationException(new DummyBean()), request) }
+        then:
+            1 * conversionService.convert(_, String) >> {
+                throw new ConverterNotFoundException(null, null)
+            }
+    }
+
+
     void assertError(ConstraintViolation violation, ValidationErrorMessage expected) {
         assertError([violation], expected)
     }
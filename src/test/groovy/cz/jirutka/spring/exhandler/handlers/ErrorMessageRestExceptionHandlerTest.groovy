@@ -16,6 +16,7 @@
 package cz.jirutka.spring.exhandler.handlers
 
 import cz.jirutka.spring.exhandler.interpolators.MessageInterpolator
+import cz.jirutka.spring.exhandler.interpolators.TemplateAwareMessageInterpolator
 import cz.jirutka.spring.exhandler.messages.ErrorMessage
 import org.springframework.beans.TypeMismatchException
 import org.springframework.context.MessageSource
@@ -24,6 +25,8 @@ import org.springframework.mock.web.MockHttpServletRequest
 import spock.lang.Shared
 import spock.lang.Specification
 
+import javax.servlet.http.HttpServletRequest
+
 import static ErrorMessageRestExceptionHandler.DEFAULT_PREFIX
 import static java.util.Locale.ENGLISH
 import static java.util.Locale.JAPANESE
@@ -64,6 +67,87 @@ class ErrorMessageRestExceptionHandlerTest extends Specification {
             actual == expected
     }
 
+    def 'createBody: use cached prototype for parts with literal templates'() {
+        setup:
+            def handler = new ErrorMessageRestExceptionHandler(exceptionClass, BAD_REQUEST)
+            handler.messageSource = messageSource
+            messageSource.getMessage({ it.endsWith('.type') }, *_) >> 'http://httpstatus.es/400'
+            messageSource.getMessage({ it.endsWith('.detail') }, *_) >> 'Value #{ex.value}'
+            messageSource.getMessage({ it.endsWith('.instance') }, *_) >> ''
+            messageSource.getMessage(*_) >> 'Type Mismatch'
+        when:
+            def bodies = [1, 2].collect { handler.createBody(new TypeMismatchException(it, String), request) }
+        then:
+            bodies*.type == [new URI('http://httpstatus.es/400')] * 2
+            bodies*.title == ['Type Mismatch'] * 2
+            bodies*.status == [400] * 2
+            bodies*.detail == ['Value 1', 'Value 2']
+        and: 'URI is parsed only once'
+            bodies[0].type.is(bodies[1].type)
+    }
+
+    def 'createBody: resolve all parts using overridden resolveMessage, even the literal ones'() {
+        setup:
+            def handler = new ErrorMessageRestExceptionHandler<TypeMismatchException>(exceptionClass, BAD_REQUEST) {
+                protected String resolveMessage(String key, TypeMismatchException ex, HttpServletRequest req) {
+                    key == 'title' ? 'Overridden' : super.resolveMessage(key, ex, req)
+                }
+            }
+            handler.messageSource = messageSource
+            messageSource.getMessage({ it.endsWith('.type') }, *_) >> 'http://httpstatus.es/400'
+            messageSource.getMessage({ it.endsWith('.instance') }, *_) >> ''
+            messageSource.getMessage(*_) >> 'Type Mismatch'
+        expect:
+            2.times {
+                def body = handler.createBody(new TypeMismatchException(1, String), request)
+                assert body.title == 'Overridden'
+                assert body.detail == 'Type Mismatch'
+            }
+    }
+
+    def 'createBody: resolve literal parts using overridden interpolateMessage'() {
+        setup:
+            def handler = new ErrorMessageRestExceptionHandler<TypeMismatchException>(exceptionClass, BAD_REQUEST) {
+                protected String interpolateMessage(String template, Map<String, Object> variables) {
+                    template.toUpperCase()
+                }
+            }
+            handler.messageSource = messageSource
+            messageSource.getMessage({ it.endsWith('.type') }, *_) >> 'http://httpstatus.es/400'
+            messageSource.getMessage({ it.endsWith('.instance') }, *_) >> ''
+            messageSource.getMessage(*_) >> 'Type Mismatch'
+        expect:
+            2.times {
+                def body = handler.createBody(new TypeMismatchException(1, String), request)
+                assert body.title == 'TYPE MISMATCH'
+                assert body.type == new URI('HTTP://HTTPSTATUS.ES/400')
+            }
+    }
+
+    def 'createBody: use cached prototype in subclass that enables literal shortcut'() {
+        setup:
+            def handler = new ErrorMessageRestExceptionHandler<TypeMismatchException>(exceptionClass, BAD_REQUEST) {
+                protected boolean isLiteralShortcutEnabled() { true }
+            }
+            handler.messageSource = messageSource
+            messageSource.getMessage({ it.endsWith('.type') }, *_) >> 'http://httpstatus.es/400'
+            messageSource.getMessage({ it.endsWith('.instance') }, *_) >> ''
+            messageSource.getMessage(*_) >> 'Type Mismatch'
+        when:
+            def bodies = [1, 2].collect { handler.createBody(new TypeMismatchException(it, String), request) }
+        then:
+            bodies[0].type.is(bodies[1].type)
+    }
+
+    def 'getBodyPrototype: return immutable ErrorMessage'() {
+        setup:
+            messageSource.getMessage(*_) >> 'Chunky bacon'
+        when:
+            handler.getBodyPrototype().title = 'Chanki bekon'
+        then:
+            thrown UnsupportedOperationException
+    }
+
     def 'resolveMessage: obtain message using getMessage() and interpolate it'() {
         setup:
             def ex = new TypeMismatchException(1, String)
@@ -80,6 +164,58 @@ class ErrorMessageRestExceptionHandlerTest extends Specification {
             result == msg
     }
 
+    def 'resolveMessage: return literal message without interpolating it'() {
+        setup:
+            def literalAwareInterpolator = Mock(TemplateAwareMessageInterpolator)
+            handler.messageInterpolator = literalAwareInterpolator
+            def msg = 'Type Mismatch'
+        when:
+            def result = handler.resolveMessage('title', new TypeMismatchException(1, String), request)
+        then:
+            1 * handler.getMessage('title', _) >> msg
+            1 * handler.isLiteralShortcutEnabled() >> true
+            1 * literalAwareInterpolator.isLiteral(msg) >> true
+            0 * literalAwareInterpolator.interpolate(*_)
+        and:
+            result.is(msg)
+    }
+
+    def 'resolveMessage: interpolate literal message using overridden interpolateMessage'() {
+        setup:
+            def handler = new ErrorMessageRestExceptionHandler<TypeMismatchException>(exceptionClass, BAD_REQUEST) {
+                protected String interpolateMessage(String template, Map<String, Object> variables) {
+                    template.toUpperCase()
+                }
+            }
+            handler.messageSource = messageSource
+            messageSource.getMessage(*_) >> 'Type Mismatch'
+        expect:
+            handler.resolveMessage('title', new TypeMismatchException(1, String), request) == 'TYPE MISMATCH'
+    }
+
+    def 'isResponseCacheable: #expected when templates are #desc'() {
+        setup:
+            def handler = new ErrorMessageRestExceptionHandler(exceptionClass, BAD_REQUEST)
+            handler.messageSource = messageSource
+            messageSource.getMessage({ it.endsWith('.detail') }, *_) >> detail
+            messageSource.getMessage(*_) >> 'Chunky bacon'
+        expect:
+            handler.isResponseCacheable(ENGLISH) == expected
+        where:
+            detail              | expected
+            'Chunky bacon'      | true
+            'Value #{ex.value}' | false
+
+            desc = expected ? 'literals' : 'not literals'
+    }
+
+    def 'isResponseCacheable: false for subclass'() {
+        setup:
+            messageSource.getMessage(*_) >> 'Chunky bacon'
+        expect:
+            ! handler.isResponseCacheable(ENGLISH)
+    }
+
     def 'getMessage: find message for this exception class'() {
         setup:
             def expected = 'Chunky bacon'
@@ -104,6 +240,31 @@ class ErrorMessageRestExceptionHandlerTest extends Specification {
             actual == expected
     }
 
+    def 'getMessage: cache resolved messages per locale'() {
+        when:
+            3.times {
+                handler.getMessage('title', ENGLISH)
+                handler.getMessage('title', JAPANESE)
+            }
+        then:
+            1 * messageSource.getMessage("${exceptionClass.name}.title", null, _, ENGLISH) >> 'Chunky bacon'
+            1 * messageSource.getMessage("${exceptionClass.name}.title", null, _, JAPANESE) >> 'Chanki bekon'
+        when:
+            handler.clearMessageCache()
+            handler.getMessage('title', ENGLISH)
+        then:
+            1 * messageSource.getMessage("${exceptionClass.name}.title", null, _, ENGLISH) >> 'Chunky bacon'
+    }
+
+    def 'getMessage: do not cache messages when messageCacheSeconds is 0'() {
+        setup:
+            handler.messageCacheSeconds = 0
+        when:
+            2.times { handler.getMessage('title', ENGLISH) }
+        then:
+            2 * messageSource.getMessage("${exceptionClass.name}.title", null, _, ENGLISH) >> 'Chunky bacon'
+    }
+
     def 'getMessage: return empty string if no message is found'() {
         setup:
             messageSource._ >> null
@@ -15,7 +15,9 @@
  */
 package cz.jirutka.spring.exhandler.handlers
 
+import com.fasterxml.jackson.databind.ObjectMapper
 import cz.jirutka.spring.exhandler.messages.ValidationErrorMessage
+import groovy.json.JsonSlurper
 import org.springframework.mock.web.MockHttpServletRequest
 import org.springframework.web.bind.MethodArgumentNotValidException
 import spock.lang.Specification
@@ -48,4 +50,63 @@ class MethodArgumentNotValidExceptionHandlerTest extends Specification {
         then:
             actual.errors == expected.errors
     }
+
+    def 'limit number of errors and length of rejected values'() {
+        setup:
+            handler.maxErrors = 2
+            handler.maxRejectedValueLength = 3
+        and:
+            def builder = createBindingResult()
+            5.times { builder.addFieldError('Invalid', 'Test', "field${it}", 'chunky bacon') }
+            def exception = new MethodArgumentNotValidException(null, builder.build())
+        when:
+            def actual = handler.createBody(exception, request) as ValidationErrorMessage
+        then:
+            actual.errors*.field == ['field0', 'field1']
+            actual.errors*.rejected == ['chu...'] * 2
+            actual.totalErrors == 5
+    }
+
+    def 'do not set totalErrors when errors are not truncated'() {
+        setup:
+            handler.maxErrors = 1
+            def exception = new MethodArgumentNotValidException(null,
+                    createBindingResult().addObjectError('Invalid', 'Test').build())
+        expect:
+            handler.createBody(exception, request).totalErrors == null
+    }
+
+    def 'create errors lazily when streamErrors is enabled'() {
+        setup:
+            handler.streamErrors = true
+            def bindingResult = createBindingResult()
+                    .addFieldError('Invalid', 'Test', 'foo', 42)
+                    .build()
+            def exception = new MethodArgumentNotValidException(null, bindingResult)
+        when:
+            def errors = handler.createBody(exception, request).errors
+        then:
+            0 * handler.createError(_)
+        when:
+            def list = errors.collect()
+        then:
+            1 * handler.createError(_)
+            list*.field == ['foo']
+    }
+
+    def 'serialize lazily created errors with Jackson'() {
+        setup:
+            handler.streamErrors = true
+            handler.maxErrors = 1
+            def bindingResult = createBindingResult()
+                    .addFieldError('Invalid', 'Test', 'foo', 42)
+                    .addFieldError('Invalid', 'Test', 'bar', 666)
+                    .build()
+            def body = handler.createBody(new MethodArgumentNotValidException(null, bindingResult), request)
+        when:
+            def json = new JsonSlurper().parseText(new ObjectMapper().writeValueAsString(body))
+        then:
+            json.errors == [[field: 'foo', rejected: 42, message: 'Invalid']]
+            json.totalErrors == 2
+    }
 }
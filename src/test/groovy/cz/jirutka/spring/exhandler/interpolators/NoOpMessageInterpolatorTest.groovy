@@ -28,4 +28,9 @@ class NoOpMessageInterpolatorTest extends Specification {
         expect:
             interpolator.interpolate(expected, [:]) is expected
     }
+
+    def 'consider any template as literal'() {
+        expect:
+            interpolator.isLiteral('Allons-y, #{name}!')
+    }
 }
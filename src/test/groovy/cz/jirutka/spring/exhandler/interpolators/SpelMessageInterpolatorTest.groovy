@@ -21,9 +21,12 @@ import org.springframework.expression.Expression
 import org.springframework.expression.ExpressionException
 import org.springframework.expression.ExpressionParser
 import org.springframework.expression.common.TemplateParserContext
+import org.springframework.expression.spel.SpelParserConfiguration
 import org.springframework.expression.spel.standard.SpelExpressionParser
 import org.springframework.expression.spel.support.ReflectivePropertyAccessor
 import org.springframework.expression.spel.support.StandardEvaluationContext
+import org.springframework.util.ClassUtils
+import spock.lang.Requires
 import spock.lang.Specification
 
 class SpelMessageInterpolatorTest extends Specification {
@@ -68,10 +71,85 @@ class SpelMessageInterpolatorTest extends Specification {
             interpolator.interpolate('fail', [:]) == ''
     }
 
+    def 'parse message template only once'() {
+        given:
+            def interpolator = new SpelMessageInterpolator(evalContext) {
+                ExpressionParser parser() { parser }
+            }
+            def msgTemplate = 'Allons-y, #{name}!'
+        when:
+            3.times { interpolator.interpolate(msgTemplate, [name: 'Alonso']) }
+        then:
+            1 * parser.parseExpression(msgTemplate, _ as TemplateParserContext) >> expression
+            3 * expression.getValue(evalContext, _, String)
+    }
+
+    def 'do not cache parsed message templates over the cacheLimit'() {
+        given:
+            def interpolator = new SpelMessageInterpolator(evalContext) {
+                ExpressionParser parser() { parser }
+            }
+            interpolator.cacheLimit = 1
+        when:
+            2.times {
+                interpolator.interpolate('first', [:])
+                interpolator.interpolate('second', [:])
+            }
+        then:
+            1 * parser.parseExpression('first', _) >> expression
+            2 * parser.parseExpression('second', _) >> expression
+    }
+
+    // SpelCompilerMode exists since Spring 4.1
+    @Requires({ ClassUtils.isPresent('org.springframework.expression.spel.SpelCompilerMode', null) })
+    def 'interpolate message with SpEL compiler mode: #mode'() {
+        given:
+            def interpolator = new SpelMessageInterpolator()
+            interpolator.expressionParser = createCompilingParser(mode)
+        expect:
+            3.times {
+                assert interpolator.interpolate('Allons-y, #{name}!', [name: 'Alonso']) == 'Allons-y, Alonso!'
+            }
+        where:
+            mode << ['OFF', 'IMMEDIATE', 'MIXED']
+    }
+
+    def 'recognize literal message template: #template'() {
+        given:
+            def interpolator = new SpelMessageInterpolator()
+        expect:
+            interpolator.isLiteral(template) == expected
+        where:
+            template                        | expected
+            'Not Found'                     | true
+            ''                              | true
+            'http://httpstatus.es/404'      | true
+            'Allons-y, #{name}!'            | false
+            '#{ex.supportedMethods}'        | false
+            '#{fail'                        | false
+    }
+
+    def 'return literal message template as-is without evaluating it'() {
+        given:
+            def interpolator = new SpelMessageInterpolator(evalContext)
+            def msgTemplate = 'Allons-y!'
+        when:
+            def result = interpolator.interpolate(msgTemplate, null)
+        then:
+            result.is(msgTemplate)
+            0 * evalContext._
+    }
+
     def 'created parser should be SpelExpressionParser'() {
         given:
             def interpolator = new SpelMessageInterpolator()
         expect:
             interpolator.parser() instanceof SpelExpressionParser
     }
+
+
+    def createCompilingParser(String mode) {
+        def modeClass = Class.forName('org.springframework.expression.spel.SpelCompilerMode')
+        new SpelExpressionParser(new SpelParserConfiguration(Enum.valueOf(modeClass, mode), getClass().classLoader))
+    }
 }
@@ -0,0 +1,146 @@
+/*
+ * Copyright 2016 Jakub Jirutka <jakub@jirutka.cz>.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package cz.jirutka.spring.exhandler.logging
+
+import org.slf4j.Logger
+import org.slf4j.MDC
+import spock.lang.Specification
+
+import static org.springframework.http.HttpStatus.INTERNAL_SERVER_ERROR
+
+class AsyncExceptionLoggerTest extends Specification {
+
+    def logger = Mock(Logger)
+
+
+    def 'emit submitted records in a background thread'() {
+        setup:
+            def asyncLogger = new AsyncExceptionLogger()
+            def threads = [] as Set
+            def ex = new IOException()
+        when:
+            5.times { asyncLogger.submit(newRecord(ex)) }
+            asyncLogger.destroy()
+        then:
+            5 * logger.error({ it.name == IOException.name }, '{} {}?{} ~> {}',
+                             ['GET', '/foo', 'a=1', INTERNAL_SERVER_ERROR, ex] as Object[]) >> {
+                threads << Thread.currentThread().name
+            }
+            threads == ['rest-exception-logger'] as Set
+    }
+
+    def 'start the worker thread with the first submitted record'() {
+        setup:
+            def asyncLogger = new AsyncExceptionLogger()
+        expect:
+            asyncLogger.@worker == null
+        when:
+            asyncLogger.submit(newRecord(new IOException()))
+        then:
+            asyncLogger.@worker != null
+        cleanup:
+            asyncLogger.destroy()
+    }
+
+    def 'drop records when the logger has been destroyed'() {
+        setup:
+            def asyncLogger = new AsyncExceptionLogger()
+            asyncLogger.destroy()
+        when:
+            def submitted = asyncLogger.submit(newRecord(new IOException()))
+        then:
+            ! submitted
+            asyncLogger.droppedCount == 1
+            0 * logger._
+    }
+
+    def 'emit records left in the buffer after the worker has stopped'() {
+        setup:
+            def asyncLogger = new AsyncExceptionLogger()
+            asyncLogger.submit(newRecord(new IOException()))
+            asyncLogger.destroy()
+        when: 'a record is offered by a thread that has passed the check before destroy'
+            asyncLogger.@buffer.offer(newRecord(new IllegalStateException()))
+            asyncLogger.destroy()
+        then:
+            1 * logger.error({ it.name == IllegalStateException.name }, *_)
+            asyncLogger.@buffer.isEmpty()
+    }
+
+    def 'emit records with MDC of the submitting thread'() {
+        setup:
+            def asyncLogger = new AsyncExceptionLogger()
+            def mdcValues = []
+        when:
+            MDC.put('requestId', '42')
+            asyncLogger.submit(newRecord(new IOException()))
+            MDC.clear()
+            asyncLogger.destroy()
+        then:
+            1 * logger.error(*_) >> { mdcValues << MDC.get('requestId') }
+            mdcValues == ['42']
+        cleanup:
+            MDC.clear()
+    }
+
+    def 'ring buffer rounds capacity up to power of two'() {
+        expect:
+            new AsyncExceptionLogger.RingBuffer(capacity).capacity() == expected
+        where:
+            capacity | expected
+            1        | 1
+            3        | 4
+            1000     | 1024
+            1024     | 1024
+    }
+
+    def 'ring buffer refuses records when full and returns them in FIFO order'() {
+        setup:
+            def buffer = new AsyncExceptionLogger.RingBuffer(2)
+            def records = (1..3).collect { newRecord(new IOException()) }
+        expect:
+            buffer.isEmpty()
+            buffer.offer(records[0])
+            buffer.offer(records[1])
+            ! buffer.offer(records[2])
+        and:
+            buffer.poll().is(records[0])
+            buffer.offer(records[2])
+            buffer.poll().is(records[1])
+            buffer.poll().is(records[2])
+            buffer.poll() == null
+            buffer.isEmpty()
+    }
+
+    def 'ring buffer does not lose records offered concurrently'() {
+        setup:
+            def buffer = new AsyncExceptionLogger.RingBuffer(8192)
+            def record = newRecord(new IOException())
+        when:
+            def threads = (1..4).collect {
+                Thread.start { 1000.times { assert buffer.offer(record) } }
+            }
+            threads*.join()
+        then:
+            (1..4000).every { buffer.poll() != null }
+            buffer.poll() == null
+    }
+
+
+    def newRecord(Exception ex) {
+        new ExceptionLogRecord(logger, LogLevel.ERROR, ex, true, 'GET', '/foo', 'a=1', INTERNAL_SERVER_ERROR, 0)
+    }
+}
@@ -0,0 +1,149 @@
+/*
+ * Copyright 2016 Jakub Jirutka <jakub@jirutka.cz>.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package cz.jirutka.spring.exhandler.logging
+
+import spock.lang.Specification
+
+import java.util.concurrent.TimeUnit
+
+import static cz.jirutka.spring.exhandler.logging.ExceptionLoggingPolicy.SUPPRESS
+import static org.springframework.http.HttpStatus.INTERNAL_SERVER_ERROR
+
+class RateLimitingLoggingPolicyTest extends Specification {
+
+    long now = TimeUnit.HOURS.toNanos(1)
+
+    def policy = new RateLimitingLoggingPolicy() {
+        protected long currentNanos() { now }
+    }
+
+
+    def 'allow burst of exceptions from the same site and then limit rate'() {
+        setup:
+            policy.maxBurst = 3
+            policy.permitsPerSecond = 1
+            policy.deduplicationSeconds = 0
+        expect:
+            (1..5).collect { decide(newException(it)) } == [0, 0, 0, SUPPRESS, SUPPRESS]
+        when:
+            tick(1000)
+        then:
+            decide(newException(6)) == 2
+            decide(newException(7)) == SUPPRESS
+    }
+
+    def 'limit each throw site separately'() {
+        setup:
+            policy.maxBurst = 1
+            policy.deduplicationSeconds = 0
+        expect:
+            decide(newException(1, 'a')) == 0
+            decide(newException(1, 'a')) == SUPPRESS
+            decide(newException(1, 'b')) == 0
+    }
+
+    def 'suppress exception with the same stack trace as the last logged one during deduplicationSeconds'() {
+        setup:
+            policy.maxBurst = 100
+            policy.deduplicationSeconds = 10
+            def ex = newException(1)
+        expect:
+            decide(ex) == 0
+            decide(ex) == SUPPRESS
+            decide(newException(2)) == 1
+        when:
+            tick(10000)
+        then:
+            decide(newException(2)) == 0
+    }
+
+    def 'not use up tokens by a burst of duplicate exceptions'() {
+        setup:
+            policy.maxBurst = 2
+            policy.permitsPerSecond = 1
+            policy.deduplicationSeconds = 10
+            def ex = newException(1)
+        expect:
+            decide(ex) == 0
+            (1..5).every { decide(ex) == SUPPRESS }
+        and: 'the next distinct exception still fits into the burst'
+            decide(newException(2)) == 5
+    }
+
+    def 'suppress all exceptions when samplingRate is 0'() {
+        setup:
+            policy.samplingRate = 0
+        expect:
+            decide(newException(1)) == SUPPRESS
+    }
+
+    def 'share a single bucket for sites over maxTrackedSites'() {
+        setup:
+            policy.maxTrackedSites = 1
+            policy.maxBurst = 1
+            policy.deduplicationSeconds = 0
+        expect:
+            decide(newException(1, 'a')) == 0
+            decide(newException(1, 'b')) == 0
+            decide(newException(1, 'c')) == SUPPRESS
+    }
+
+    def 'report and reset pending suppressed counts on #method'() {
+        setup:
+            policy.maxBurst = 1
+            policy.deduplicationSeconds = 0
+            (1..3).each { decide(newException(it)) }
+        when:
+            policy."${method}"()
+            tick(1000)
+        then:
+            decide(newException(4)) == 0
+        where:
+            method << ['reportSuppressed', 'destroy']
+    }
+
+    def 'compute the same fingerprint only for the same stack traces'() {
+        setup:
+            def ex1 = newException(1)
+            def ex2 = newException(2)
+        expect:
+            RateLimitingLoggingPolicy.fingerprint(ex1) == RateLimitingLoggingPolicy.fingerprint(newException(1))
+            RateLimitingLoggingPolicy.fingerprint(ex1) != RateLimitingLoggingPolicy.fingerprint(ex2)
+            RateLimitingLoggingPolicy.fingerprint(new IOException('x', ex1)) != RateLimitingLoggingPolicy.fingerprint(new IOException('x', ex2))
+    }
+
+
+    def decide(Exception ex) {
+        policy.decide(ex, INTERNAL_SERVER_ERROR)
+    }
+
+    def tick(long millis) {
+        now += TimeUnit.MILLISECONDS.toNanos(millis)
+    }
+
+    /**
+     * Creates an exception thrown from the given site (method), with a different stack trace
+     * for each n.
+     */
+    def newException(int n, String site = 'foo') {
+        def ex = new IOException()
+        ex.stackTrace = [
+            new StackTraceElement('Foo', site, 'Foo.java', 42),
+            new StackTraceElement('Bar', 'bar', 'Bar.java', n)
+        ] as StackTraceElement[]
+        ex
+    }
+}
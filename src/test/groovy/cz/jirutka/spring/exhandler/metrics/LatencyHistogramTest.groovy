@@ -0,0 +1,68 @@
+/*
+ * Copyright 2016 Jakub Jirutka <jakub@jirutka.cz>.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package cz.jirutka.spring.exhandler.metrics
+
+import spock.lang.Specification
+import spock.lang.Unroll
+
+class LatencyHistogramTest extends Specification {
+
+    def histogram = new LatencyHistogram()
+
+
+    @Unroll
+    def 'put value #value into bucket #expected'() {
+        expect:
+            LatencyHistogram.bucketIndex(value) == expected
+        where:
+            value          | expected
+            0              | 0
+            1              | 1
+            2              | 2
+            3              | 2
+            4              | 3
+            1023           | 10
+            1024           | 11
+            Long.MAX_VALUE | 63
+    }
+
+    def 'count, sum and track maximum of recorded values'() {
+        when:
+            [100, 300, 200, -5].each { histogram.record(it) }
+        then:
+            histogram.count == 4
+            histogram.totalNanos == 600
+            histogram.maxNanos == 300
+            histogram.meanNanos == 150
+    }
+
+    def 'return upper bound of the bucket containing the percentile, but at most the maximum'() {
+        setup:
+            (1..90).each { histogram.record(100) }
+            (1..10).each { histogram.record(5000) }
+        expect:
+            histogram.getPercentileNanos(50) == 127
+            histogram.getPercentileNanos(90) == 127
+            histogram.getPercentileNanos(99) == 5000
+            histogram.getPercentileNanos(100) == 5000
+    }
+
+    def 'return 0 for percentile of empty histogram'() {
+        expect:
+            histogram.getPercentileNanos(99) == 0
+            histogram.meanNanos == 0
+    }
+}
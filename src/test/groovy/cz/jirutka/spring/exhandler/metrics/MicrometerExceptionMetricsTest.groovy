@@ -0,0 +1,67 @@
+/*
+ * Copyright 2016 Jakub Jirutka <jakub@jirutka.cz>.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package cz.jirutka.spring.exhandler.metrics
+
+import cz.jirutka.spring.exhandler.handlers.ResponseStatusRestExceptionHandler
+import spock.lang.Requires
+import spock.lang.Specification
+
+import java.util.concurrent.TimeUnit
+
+import static org.springframework.http.HttpStatus.NOT_FOUND
+
+// Micrometer requires Java 8, so the classes are loaded dynamically (see profile java7 in pom.xml).
+@Requires({ jvm.java8Compatible })
+class MicrometerExceptionMetricsTest extends Specification {
+
+    def registry = Class.forName('io.micrometer.core.instrument.simple.SimpleMeterRegistry').newInstance()
+    def metrics = Class.forName('cz.jirutka.spring.exhandler.metrics.MicrometerExceptionMetrics').newInstance(registry)
+
+    def handler = new ResponseStatusRestExceptionHandler(NOT_FOUND)
+
+
+    def 'record handled exception into counter and timers tagged by exception, handler and status'() {
+        when:
+            2.times { metrics.recordHandled(IOException, handler, NOT_FOUND, 1000, 2000) }
+        then:
+            def tags = ['exception', IOException.name,
+                        'handler', ResponseStatusRestExceptionHandler.name,
+                        'status', '404'] as String[]
+        and:
+            registry.find('rest.exceptions').tags(tags).counter().count() == 2
+            with (registry.find('rest.exceptions.handling').tags(tags).timer()) {
+                count() == 2
+                totalTime(TimeUnit.NANOSECONDS) == 2000
+            }
+            registry.find('rest.exceptions.writing').tags(tags).timer().totalTime(TimeUnit.NANOSECONDS) == 4000
+    }
+
+    def 'record exception with failed response into counter tagged by exception and handler'() {
+        when:
+            metrics.recordFailed(IOException, handler)
+        then:
+            registry.find('rest.exceptions.failed')
+                    .tags('exception', IOException.name, 'handler', ResponseStatusRestExceptionHandler.name)
+                    .counter().count() == 1
+    }
+
+    def 'record unhandled exception into counter tagged by exception'() {
+        when:
+            metrics.recordUnhandled(IOException)
+        then:
+            registry.find('rest.exceptions.unhandled').tags('exception', IOException.name).counter().count() == 1
+    }
+}
@@ -0,0 +1,86 @@
+/*
+ * Copyright 2016 Jakub Jirutka <jakub@jirutka.cz>.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package cz.jirutka.spring.exhandler.metrics
+
+import cz.jirutka.spring.exhandler.handlers.RestExceptionHandler
+import spock.lang.Specification
+
+import static org.springframework.http.HttpStatus.BAD_REQUEST
+import static org.springframework.http.HttpStatus.NOT_FOUND
+
+class SimpleExceptionMetricsTest extends Specification {
+
+    def metrics = new SimpleExceptionMetrics()
+    def handler1 = Mock(RestExceptionHandler)
+    def handler2 = Mock(RestExceptionHandler)
+
+
+    def 'count handled exceptions per exception type, handler and status'() {
+        when:
+            metrics.recordHandled(IOException, handler1, NOT_FOUND, 10, 20)
+            metrics.recordHandled(IOException, handler1, NOT_FOUND, 10, 20)
+            metrics.recordHandled(IllegalStateException, handler2, BAD_REQUEST, 10, 20)
+        then:
+            metrics.exceptionCounts == [(IOException): 2L, (IllegalStateException): 1L]
+            metrics.handlerCounts == [(handler1): 2L, (handler2): 1L]
+            metrics.statusCounts == [400: 1L, 404: 2L]
+            metrics.unhandledCounts.isEmpty()
+    }
+
+    def 'record handling and writing latency'() {
+        when:
+            metrics.recordHandled(IOException, handler1, NOT_FOUND, 100, 2000)
+        then:
+            with (metrics.handlingLatency) {
+                count == 1
+                totalNanos == 100
+            }
+            with (metrics.writingLatency) {
+                count == 1
+                totalNanos == 2000
+            }
+    }
+
+    def 'count unhandled exceptions per exception type'() {
+        when:
+            2.times { metrics.recordUnhandled(IOException) }
+        then:
+            metrics.unhandledCounts == [(IOException): 2L]
+            metrics.exceptionCounts.isEmpty()
+    }
+
+    def 'count exceptions with failed response per exception type'() {
+        when:
+            2.times { metrics.recordFailed(IOException, handler1) }
+        then:
+            metrics.failedCounts == [(IOException): 2L]
+            metrics.exceptionCounts.isEmpty()
+    }
+
+    def 'count correctly when called concurrently'() {
+        when:
+            def threads = (1..8).collect {
+                Thread.start {
+                    1000.times { metrics.recordHandled(IOException, handler1, NOT_FOUND, 1, 1) }
+                }
+            }
+            threads*.join()
+        then:
+            metrics.exceptionCounts[IOException] == 8000
+            metrics.statusCounts[404] == 8000
+            metrics.handlingLatency.count == 8000
+    }
+}
@@ -0,0 +1,168 @@
+/*
+ * Copyright 2016 Jakub Jirutka <jakub@jirutka.cz>.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package cz.jirutka.spring.exhandler.support
+
+import org.springframework.context.NoSuchMessageException
+import org.springframework.context.support.DefaultMessageSourceResolvable
+import org.springframework.core.io.ByteArrayResource
+import org.springframework.core.io.Resource
+import org.springframework.core.io.support.ResourcePatternResolver
+import spock.lang.Specification
+import spock.lang.Unroll
+
+import java.nio.charset.Charset
+
+class PreloadedMessageSourceTest extends Specification {
+
+    static final UTF_8 = Charset.forName('UTF-8')
+
+    def dir = File.createTempDir()
+
+    void setup() {
+        writeMessages '',       [greeting: 'Hello', farewell: 'Bye', 'with.args': '{0} of {1}']
+        writeMessages '_cs',    [greeting: 'Ahoj', farewell: 'Čau']
+        writeMessages '_cs_CZ', [greeting: 'Nazdar']
+        writeMessages 'Other',  [greeting: 'Ignored']
+    }
+
+    void cleanup() {
+        dir.deleteDir()
+    }
+
+
+    @Unroll
+    def "getMessage: resolves '#code' for locale #locale as '#expected'"() {
+        setup:
+            def source = createSource()
+        expect:
+            source.getMessage(code, null, null, locale) == expected
+        where:
+            code       | locale                  || expected
+            'greeting' | null                    || 'Hello'
+            'greeting' | Locale.ENGLISH          || 'Hello'
+            'greeting' | new Locale('cs')        || 'Ahoj'
+            'greeting' | new Locale('cs', 'CZ')  || 'Nazdar'
+            'farewell' | new Locale('cs', 'CZ')  || 'Čau'
+            'farewell' | new Locale('cs', 'SK', 'x') || 'Čau'
+            'missing'  | new Locale('cs')        || null
+    }
+
+    def 'getMessage: formats message with the given arguments'() {
+        expect:
+            createSource().getMessage('with.args', [1, 2] as Object[], Locale.ENGLISH) == '1 of 2'
+    }
+
+    def 'getMessage: returns default message when the code is not found'() {
+        expect:
+            createSource().getMessage('missing', null, 'Default', null) == 'Default'
+    }
+
+    def 'getMessage: throws NoSuchMessageException when the code is not found'() {
+        when:
+            createSource().getMessage('missing', null, Locale.ENGLISH)
+        then:
+            thrown NoSuchMessageException
+    }
+
+    def 'getMessage: resolves the first found code of MessageSourceResolvable'() {
+        setup:
+            def resolvable = new DefaultMessageSourceResolvable(['missing', 'farewell', 'greeting'] as String[])
+        expect:
+            createSource().getMessage(resolvable, new Locale('cs')) == 'Čau'
+    }
+
+    def 'reload: replaces the messages table'() {
+        setup:
+            def source = createSource()
+            writeMessages '', [greeting: 'Hi']
+        expect:
+            source.getMessage('greeting', null, null, null) == 'Hello'
+        when:
+            source.reload()
+        then:
+            source.getMessage('greeting', null, null, null) == 'Hi'
+            source.getMessage('farewell', null, null, null) == null
+    }
+
+    def 'uses the given root messages instead of the root file, but loads the localized files'() {
+        setup:
+            def source = new PreloadedMessageSource("file:${dir.absolutePath}/messages", UTF_8, [greeting: 'Hi'])
+        expect:
+            source.getMessage('greeting', null, null, Locale.ENGLISH) == 'Hi'
+            source.getMessage('farewell', null, null, Locale.ENGLISH) == null
+            source.getMessage('greeting', null, null, new Locale('cs', 'CZ')) == 'Nazdar'
+        when:
+            writeMessages '_cs_CZ', [greeting: 'Zdar']
+            source.reload()
+        then:
+            source.getMessage('greeting', null, null, Locale.ENGLISH) == 'Hi'
+            source.getMessage('greeting', null, null, new Locale('cs', 'CZ')) == 'Zdar'
+    }
+
+    def 'loads only the first found file of the same name'() {
+        setup:
+            def resolver = Mock(ResourcePatternResolver)
+            resolver.getResources('classpath*:test.properties') >> resources('greeting=Hello')
+            resolver.getResources('classpath*:test_cs.properties') >> resources('greeting=Ahoj', 'farewell=Čau')
+            resolver.getResources(_) >> ([] as Resource[])
+        and:
+            def source = new PreloadedMessageSource('classpath*:test', UTF_8, resolver)
+        expect:
+            source.getMessage('greeting', null, null, new Locale('cs')) == 'Ahoj'
+            source.getMessage('farewell', null, null, new Locale('cs')) == null
+    }
+
+    def 'loads the localized files on the first lookup of their locale'() {
+        setup:
+            def resolver = Mock(ResourcePatternResolver)
+        when:
+            def source = new PreloadedMessageSource('classpath:test', UTF_8, resolver, [greeting: 'Hi'])
+        then:
+            0 * resolver._
+        when:
+            2.times { source.getMessage('greeting', null, null, new Locale('cs', 'CZ')) }
+        then:
+            1 * resolver.getResources('classpath:test_cs_CZ.properties') >> ([] as Resource[])
+            1 * resolver.getResources('classpath:test_cs.properties') >> resources('greeting=Ahoj')
+            0 * resolver._
+        when:
+            source.getMessage('greeting', null, null, null)
+        then:
+            0 * resolver._
+    }
+
+    def 'loads the built-in messages from the classpath'() {
+        setup:
+            def source = new PreloadedMessageSource('classpath:/cz/jirutka/spring/exhandler/messages', UTF_8)
+        expect:
+            source.getMessage('org.springframework.web.servlet.NoHandlerFoundException.title', null, null, Locale.ENGLISH) == 'Not Found'
+    }
+
+
+    def resources(String... contents) {
+        contents.collect { new ByteArrayResource(it.getBytes(UTF_8)) } as Resource[]
+    }
+
+    def createSource() {
+        new PreloadedMessageSource("file:${dir.absolutePath}/messages", UTF_8)
+    }
+
+    def writeMessages(String suffix, Map<String, String> messages) {
+        new File(dir, "messages${suffix}.properties").withWriter('UTF-8') { out ->
+            messages.each { key, value -> out << "${key}=${value}\n" }
+        }
+    }
+}
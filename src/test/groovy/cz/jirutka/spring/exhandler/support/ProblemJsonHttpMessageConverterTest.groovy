@@ -0,0 +1,137 @@
+/*
+ * Copyright 2016 Jakub Jirutka <jakub@jirutka.cz>.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package cz.jirutka.spring.exhandler.support
+
+import com.fasterxml.jackson.databind.ObjectMapper
+import cz.jirutka.spring.exhandler.messages.ErrorMessage
+import cz.jirutka.spring.exhandler.messages.ValidationErrorMessage
+import org.springframework.mock.http.MockHttpOutputMessage
+import spock.lang.Specification
+import spock.lang.Unroll
+
+import java.nio.charset.Charset
+
+import static org.springframework.http.HttpStatus.BAD_REQUEST
+import static org.springframework.http.MediaType.APPLICATION_JSON
+import static org.springframework.http.MediaType.APPLICATION_XML
+import static org.springframework.http.MediaType.parseMediaType
+
+class ProblemJsonHttpMessageConverterTest extends Specification {
+
+    static final UTF_8 = Charset.forName('UTF-8')
+
+    def converter = new ProblemJsonHttpMessageConverter()
+    def objectMapper = new ObjectMapper()
+
+
+    def 'support exactly ErrorMessage and ValidationErrorMessage'() {
+        expect:
+            converter.canWrite(ErrorMessage, APPLICATION_JSON)
+            converter.canWrite(ValidationErrorMessage, parseMediaType('application/problem+json'))
+        and:
+            ! converter.canWrite(ErrorMessage, APPLICATION_XML)
+            ! converter.canWrite(CustomErrorMessage, APPLICATION_JSON)
+            ! converter.canRead(ErrorMessage, APPLICATION_JSON)
+    }
+
+    @Unroll
+    def 'write the same JSON as Jackson: #desc'() {
+        when:
+            def output = write(message)
+        then:
+            output == objectMapper.writeValueAsString(message)
+        where:
+            desc                 | message
+            'empty message'      | new ErrorMessage()
+            'all properties'     | new ErrorMessage(type: URI.create('http://example.org/foo'), title: 'Foo', status: 400,
+                                                    detail: 'Foo is bar', instance: URI.create('/foo/1'))
+            'empty properties'   | new ErrorMessage(type: URI.create(''), title: '', detail: 'x', instance: null)
+            'validation message' | new ValidationErrorMessage(title: 'Invalid', status: 422)
+                                       .addError('name', 'Flynn', 'is taken')
+                                       .addError('age', 42, 'too old')
+                                       .addError('ratio', 0.5d, 'too low')
+                                       .addError('active', true, 'must be false')
+                                       .addError('tags', ['a', 'b'], 'too many')
+                                       .addError('opts', [a: 1, b: null], 'unknown')
+                                       .addError('ids', [1, 2] as long[], 'not found')
+                                       .addError('status', BAD_REQUEST, 'not allowed')
+                                       .addError('empty', '', 'must not be empty')
+                                       .addError('nothing', [], 'must not be empty')
+                                       .addError('global error')
+            'total errors'       | new ValidationErrorMessage(status: 400, totalErrors: 5).addError('a', null, 'b')
+            'no errors'          | new ValidationErrorMessage(status: 400)
+    }
+
+    @Unroll
+    def 'escape #desc'() {
+        when:
+            def output = write(new ErrorMessage(detail: detail))
+        then:
+            output == objectMapper.writeValueAsString(new ErrorMessage(detail: detail))
+        where:
+            desc                    | detail
+            'quotes and backslash'  | 'say "hi" \\ bye'
+            'control chars'         | 'a\nb\tc\rd\be\ff\u0001g\u001f'
+            'non-ASCII chars'       | 'Žluťoučký kůň ∑ 日本'
+            'surrogate pairs'       | 'smile 😀!'
+            'slash'                 | '</script>'
+    }
+
+    def 'write non-finite numbers as strings'() {
+        when:
+            def output = write(new ValidationErrorMessage().addError('x', Double.NaN, 'y'))
+        then:
+            output == '{"errors":[{"field":"x","rejected":"NaN","message":"y"}]}'
+    }
+
+    def 'write rejected value of unknown type as string'() {
+        setup:
+            def value = new Object() { String toString() { 'custom' } }
+        when:
+            def output = write(new ValidationErrorMessage().addError('x', value, 'y'))
+        then:
+            output == '{"errors":[{"field":"x","rejected":"custom","message":"y"}]}'
+    }
+
+    def 'write message longer than the buffer'() {
+        setup:
+            def message = new ValidationErrorMessage(detail: 'ž' * 1000)
+            500.times { message.addError("field$it", "value\n$it".toString(), "message") }
+        expect:
+            write(message) == objectMapper.writeValueAsString(message)
+    }
+
+    @Unroll
+    def 'write number longer than the buffer: #number.class.simpleName'() {
+        setup:
+            def message = new ValidationErrorMessage().addError('x', number, 'y')
+        expect:
+            write(message) == objectMapper.writeValueAsString(message)
+        where:
+            number << [new BigInteger('9' * 600), new BigDecimal('9' * 600 + '.5')]
+    }
+
+
+    def write(ErrorMessage message) {
+        def output = new MockHttpOutputMessage()
+        converter.write(message, APPLICATION_JSON, output)
+        output.getBodyAsString(UTF_8)
+    }
+
+    static class CustomErrorMessage extends ErrorMessage {
+        String extra
+    }
+}
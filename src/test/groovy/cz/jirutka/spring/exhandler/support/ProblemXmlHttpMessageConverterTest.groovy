@@ -0,0 +1,88 @@
+/*
+ * Copyright 2016 Jakub Jirutka <jakub@jirutka.cz>.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package cz.jirutka.spring.exhandler.support
+
+import cz.jirutka.spring.exhandler.messages.ErrorMessage
+import cz.jirutka.spring.exhandler.messages.ValidationErrorMessage
+import org.springframework.http.converter.xml.Jaxb2RootElementHttpMessageConverter
+import org.springframework.mock.http.MockHttpOutputMessage
+import spock.lang.Specification
+import spock.lang.Unroll
+
+import java.nio.charset.Charset
+
+import static org.springframework.http.MediaType.APPLICATION_JSON
+import static org.springframework.http.MediaType.APPLICATION_XML
+import static org.springframework.http.MediaType.TEXT_XML
+import static org.springframework.http.MediaType.parseMediaType
+
+class ProblemXmlHttpMessageConverterTest extends Specification {
+
+    static final UTF_8 = Charset.forName('UTF-8')
+    static final TEXT_XML_LATIN2 = parseMediaType('text/xml;charset=ISO-8859-2')
+    static final LATIN2_TEXT = '\u017dlu\u0165ou\u010dk\u00fd k\u016f\u0148'
+
+    def converter = new ProblemXmlHttpMessageConverter()
+
+
+    def 'support exactly ErrorMessage and ValidationErrorMessage'() {
+        expect:
+            converter.canWrite(ErrorMessage, APPLICATION_XML)
+            converter.canWrite(ValidationErrorMessage, TEXT_XML)
+        and:
+            ! converter.canWrite(ErrorMessage, APPLICATION_JSON)
+            ! converter.canWrite(CustomErrorMessage, APPLICATION_XML)
+            ! converter.canRead(ErrorMessage, APPLICATION_XML)
+    }
+
+    @Unroll
+    def 'write the same XML as JAXB: #desc'() {
+        expect:
+            write(converter, message) == write(new Jaxb2RootElementHttpMessageConverter(), message)
+        where:
+            desc                   | message
+            'empty message'        | new ErrorMessage()
+            'all properties'       | new ErrorMessage(type: URI.create('http://example.org/foo'), title: 'Foo', status: 400,
+                                                      detail: 'Foo is bar', instance: URI.create('/foo/1'))
+            'empty strings'        | new ErrorMessage(title: '', detail: 'x')
+            'special chars'        | new ErrorMessage(title: '<a href="x">&amp;</a>', detail: "it's > \n\t \u017e \ud83d\ude00")
+            'validation message'   | new ValidationErrorMessage(title: 'Invalid', status: 422, totalErrors: 10)
+            'empty validation msg' | new ValidationErrorMessage()
+            'validation errors'    | new ValidationErrorMessage(title: 'Invalid').addError('name', 'Flynn', 'is taken')
+                                                                               .addError('global error')
+    }
+
+    def 'write in the charset of the content type'() {
+        setup:
+            def output = new MockHttpOutputMessage()
+        when:
+            converter.write(new ErrorMessage(title: LATIN2_TEXT), TEXT_XML_LATIN2, output)
+        then:
+            output.getBodyAsString(Charset.forName('ISO-8859-2')) ==
+                    '<?xml version="1.0" encoding="ISO-8859-2" standalone="yes"?><problem><title>' + LATIN2_TEXT + '</title></problem>'
+    }
+
+
+    def write(converter, ErrorMessage message) {
+        def output = new MockHttpOutputMessage()
+        converter.write(message, APPLICATION_XML, output)
+        output.getBodyAsString(UTF_8)
+    }
+
+    static class CustomErrorMessage extends ErrorMessage {
+        String extra
+    }
+}
@@ -0,0 +1,208 @@
+/*
+ * Copyright 2016 Jakub Jirutka <jakub@jirutka.cz>.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package cz.jirutka.spring.exhandler.support
+
+import cz.jirutka.spring.exhandler.messages.ErrorMessage
+import groovy.json.JsonSlurper
+import org.springframework.http.HttpHeaders
+import org.springframework.http.HttpOutputMessage
+import org.springframework.http.MediaType
+import org.springframework.http.ResponseEntity
+import org.springframework.http.converter.HttpMessageConverter
+import org.springframework.http.converter.StringHttpMessageConverter
+import org.springframework.http.converter.json.MappingJackson2HttpMessageConverter
+import org.springframework.mock.web.MockHttpServletRequest
+import org.springframework.mock.web.MockHttpServletResponse
+import org.springframework.web.accept.ContentNegotiationManager
+import org.springframework.web.accept.ContentNegotiationStrategy
+import org.springframework.web.context.request.ServletWebRequest
+import spock.lang.Specification
+
+import static org.springframework.http.HttpStatus.NOT_FOUND
+import static org.springframework.http.MediaType.APPLICATION_JSON
+import static org.springframework.http.MediaType.APPLICATION_XML
+
+class ResponseEntityWriterTest extends Specification {
+
+    def converter = Spy(MappingJackson2HttpMessageConverter)
+    def converters = [new StringHttpMessageConverter(), converter] as List<HttpMessageConverter>
+
+    def writer = new ResponseEntityWriter(converters, new ContentNegotiationManager())
+
+    def request = new MockHttpServletRequest()
+    def response = new MockHttpServletResponse()
+    def webRequest = new ServletWebRequest(request, response)
+
+
+    def 'write status, headers and body using converter for the requested media type'() {
+        setup:
+            request.addHeader('Accept', 'text/html;q=0.9, application/json')
+            def headers = new HttpHeaders()
+            headers.set('X-Foo', 'bar')
+            def entity = new ResponseEntity(new ErrorMessage(title: 'Not Found'), headers, NOT_FOUND)
+        when:
+            def written = writer.write(entity, webRequest)
+        then:
+            written
+            response.status == 404
+            response.getHeader('X-Foo') == 'bar'
+            APPLICATION_JSON.isCompatibleWith(MediaType.valueOf(response.contentType))
+            new JsonSlurper().parseText(response.contentAsString) == [title: 'Not Found']
+    }
+
+    def 'select converter only once for the same requested media types and body type'() {
+        setup:
+            request.addHeader('Accept', 'application/json')
+        when:
+            3.times {
+                writer.write(new ResponseEntity(new ErrorMessage(), NOT_FOUND),
+                             new ServletWebRequest(request, new MockHttpServletResponse()))
+            }
+        then:
+            (1.._) * converter.canWrite(ErrorMessage, null)
+            1 * converter.canWrite(ErrorMessage, { APPLICATION_JSON.includes(it) })
+            3 * converter.writeInternal(_ as ErrorMessage, _ as HttpOutputMessage)
+    }
+
+    def 'write nothing and return false when no converter can write the body'() {
+        setup:
+            request.addHeader('Accept', 'image/png')
+        when:
+            def written = writer.write(new ResponseEntity(new ErrorMessage(), NOT_FOUND), webRequest)
+        then:
+            ! written
+            response.status == 200
+            response.contentAsByteArray.length == 0
+    }
+
+    def 'write only status and headers when body is null'() {
+        setup:
+            request.addHeader('Accept', 'image/png')
+        when:
+            def written = writer.write(new ResponseEntity(NOT_FOUND), webRequest)
+        then:
+            written
+            response.status == 404
+            response.contentAsByteArray.length == 0
+    }
+
+    def 'write body in fallback media type when requested one is #desc'() {
+        setup:
+            writer = new ResponseEntityWriter(converters, new ContentNegotiationManager(), APPLICATION_JSON)
+            request.addHeader('Accept', accept)
+        when:
+            def written = writer.write(new ResponseEntity(new ErrorMessage(title: 'Not Found'), NOT_FOUND), webRequest)
+        then:
+            written
+            APPLICATION_JSON.isCompatibleWith(MediaType.valueOf(response.contentType))
+            new JsonSlurper().parseText(response.contentAsString) == [title: 'Not Found']
+        where:
+            accept      | desc
+            'image/png' | 'not supported'
+            'foo'       | 'invalid'
+    }
+
+    def 'treat no requested media types as */*, the same as Spring'() {
+        setup:
+            def manager = new ContentNegotiationManager({ [] } as ContentNegotiationStrategy)
+            writer = new ResponseEntityWriter(converters, manager)
+        when:
+            def written = writer.write(new ResponseEntity(new ErrorMessage(title: 'Not Found'), NOT_FOUND), webRequest)
+        then:
+            written
+            APPLICATION_JSON.isCompatibleWith(MediaType.valueOf(response.contentType))
+    }
+
+    def 'canWriteRequested returns #expected for Accept: #accept'() {
+        setup:
+            writer = new ResponseEntityWriter(converters, new ContentNegotiationManager(), APPLICATION_JSON)
+            request.addHeader('Accept', accept)
+        expect:
+            writer.canWriteRequested(ErrorMessage, webRequest) == expected
+        where:
+            accept             | expected
+            'application/json' | true
+            'text/html'        | false
+            'foo'              | false
+    }
+
+    def 'resolve requested media types only once for the same Accept header when acceptHeaderOnly'() {
+        setup:
+            def manager = Spy(ContentNegotiationManager)
+            writer = new ResponseEntityWriter(converters, manager, APPLICATION_XML)
+            writer.acceptHeaderOnly = true
+        when:
+            ['application/json', 'application/json', 'image/png', 'image/png'].each { accept ->
+                def req = new MockHttpServletRequest()
+                req.addHeader('Accept', accept)
+                writer.negotiate(new ServletWebRequest(req), ErrorMessage)
+            }
+        then:
+            2 * manager.resolveMediaTypes(_)
+    }
+
+    def 'distinguish requests with multiple Accept headers when acceptHeaderOnly'() {
+        setup:
+            def manager = Spy(ContentNegotiationManager)
+            writer = new ResponseEntityWriter(converters, manager)
+            writer.acceptHeaderOnly = true
+        and:
+            def single = new MockHttpServletRequest()
+            single.addHeader('Accept', 'image/png')
+            def multiple = new MockHttpServletRequest()
+            multiple.addHeader('Accept', 'image/png')
+            multiple.addHeader('Accept', 'application/json')
+        when:
+            [single, multiple, multiple].each { writer.negotiate(new ServletWebRequest(it), ErrorMessage) }
+        then:
+            2 * manager.resolveMediaTypes(_)
+    }
+
+    def 'evict the least recently used Accept header when the cache is full'() {
+        setup:
+            def manager = Spy(ContentNegotiationManager)
+            writer = new ResponseEntityWriter(converters, manager)
+            writer.acceptHeaderOnly = true
+            def negotiate = { String accept ->
+                def req = new MockHttpServletRequest()
+                req.addHeader('Accept', accept)
+                writer.negotiate(new ServletWebRequest(req), ErrorMessage)
+            }
+        when:
+            (1..64).each { negotiate("application/x-$it+json") }
+            negotiate('application/x-1+json')
+            negotiate('application/x-65+json')
+            negotiate('application/x-1+json')
+        then:
+            65 * manager.resolveMediaTypes(_)
+        when:
+            negotiate('application/x-2+json')
+        then:
+            1 * manager.resolveMediaTypes(_)
+            writer.acceptCache.size() == 64
+    }
+
+    def 'resolve requested media types for each request when not acceptHeaderOnly'() {
+        setup:
+            def manager = Spy(ContentNegotiationManager)
+            writer = new ResponseEntityWriter(converters, manager)
+            request.addHeader('Accept', 'application/json')
+        when:
+            3.times { writer.negotiate(webRequest, ErrorMessage) }
+        then:
+            3 * manager.resolveMediaTypes(_)
+    }
+}